@@ -0,0 +1,379 @@
+package home.tong.card.bin.file.parser;
+
+import com.neovisionaries.i18n.CountryCode;
+import com.neovisionaries.i18n.CurrencyCode;
+import home.tong.card.bin.enums.AccountFundSource;
+import home.tong.card.bin.enums.AccountFundSourceSubType;
+import home.tong.card.bin.enums.CardClass;
+import home.tong.card.bin.enums.DetailCardIndicator;
+import home.tong.card.bin.enums.DetailCardProduct;
+import home.tong.card.bin.enums.FastFunds;
+import home.tong.card.bin.enums.FsaIndicator;
+import home.tong.card.bin.enums.IssuingNetwork;
+import home.tong.card.bin.enums.MoneySendIndicator;
+import home.tong.card.bin.enums.OriginalCreditIndicator;
+import home.tong.card.bin.enums.PrepaidIndicator;
+import home.tong.card.bin.enums.RegulatorIndicator;
+import home.tong.card.bin.enums.VisaLargeTicketIndicator;
+import home.tong.card.bin.enums.VisaProductSubType;
+import home.tong.card.bin.enums.YesNoAnswer;
+import home.tong.card.bin.file.parser.BinDetailRecord.BinFileDetailFieldInfo;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.lang.Nullable;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.function.Function;
+
+/**
+ * Decodes BIN detail records straight from the bytes of their lines, e.g. the records handed out by a
+ * {@link BinFileReader}, into the profiles of a {@link BinProfilePool}.
+ * <p>
+ * The fields are read at their fixed offsets in the line. The part of the line after the BINs is hashed and
+ * looked up in the pool first, and only a line with attributes the pool has not seen yet is decoded field by
+ * field: numbers are parsed from the digits, the codes of the enum attributes are looked up in tables indexed by
+ * their bytes, and the country and currency codes are cached by their bytes. A line with known attributes takes
+ * the record and the strings of its BINs, nothing else.
+ * <p>
+ * The attributes come out the same as the ones {@link BinDetailRecord#BinDetailRecord(String)} parses from the
+ * line as a Latin-1 string, except that a number field that is not all digits is a {@link ParseException}. A
+ * decoder is reused for the records it decodes and is not thread safe.
+ */
+public final class BinDetailDecoder {
+    // offsets of the fields in a detail line, laid out by the fields and fillers of BinFileDetailFieldInfo
+    private static final int LOW_BIN = BinFileDetailFieldInfo.LOW_BIN.getOffset();
+    private static final int HIGH_BIN = BinFileDetailFieldInfo.HIGH_BIN.getOffset();
+    private static final int BIN_LENGTH = BinFileDetailFieldInfo.BIN_LENGTH.getOffset();
+    private static final int BIN_DETAIL_PAN = BinFileDetailFieldInfo.BIN_DETAIL_PAN.getOffset();
+    private static final int ISSUER_BANK_NAME = BinFileDetailFieldInfo.ISSUER_BANK_NAME.getOffset();
+    private static final int COUNTRY_CODE = BinFileDetailFieldInfo.COUNTRY_CODE.getOffset();
+    private static final int DETAIL_CARD_PRODUCT = BinFileDetailFieldInfo.DETAIL_CARD_PRODUCT.getOffset();
+    private static final int DETAIL_CARD_INDICATOR = BinFileDetailFieldInfo.DETAIL_CARD_INDICATOR.getOffset();
+    private static final int ISSUER_UPDATE_YEAR = BinFileDetailFieldInfo.ISSUER_UPDATE_YEAR.getOffset();
+    private static final int ISSUER_UPDATE_MONTH = BinFileDetailFieldInfo.ISSUER_UPDATE_MONTH.getOffset();
+    private static final int ISSUER_UPDATE_DAY = BinFileDetailFieldInfo.ISSUER_UPDATE_DAY.getOffset();
+    private static final int DEBIT_NETWORK_PINLESS_INDICATOR = BinFileDetailFieldInfo.DEBIT_NETWORK_PINLESS_INDICATOR.getOffset();
+    private static final int EBT_STATE = BinFileDetailFieldInfo.EBT_STATE.getOffset();
+    private static final int DEBIT_SIGNATURE_NETWORK_PARTICIPANT = BinFileDetailFieldInfo.DEBIT_SIGNATURE_NETWORK_PARTICIPANT.getOffset();
+    private static final int FSA_INDICATOR = BinFileDetailFieldInfo.FSA_INDICATOR.getOffset();
+    private static final int PREPAID_INDICATOR = BinFileDetailFieldInfo.PREPAID_INDICATOR.getOffset();
+    private static final int PRODUCT_ID = BinFileDetailFieldInfo.PRODUCT_ID.getOffset();
+    private static final int REGULATOR_INDICATOR = BinFileDetailFieldInfo.REGULATOR_INDICATOR.getOffset();
+    private static final int VISA_PRODUCT_SUBTYPE = BinFileDetailFieldInfo.VISA_PRODUCT_SUBTYPE.getOffset();
+    private static final int VISA_LARGE_TICKET_INDICATOR = BinFileDetailFieldInfo.VISA_LARGE_TICKET_INDICATOR.getOffset();
+    private static final int ACCOUNT_LEVEL_PROCESSING_INDICATOR = BinFileDetailFieldInfo.ACCOUNT_LEVEL_PROCESSING_INDICATOR.getOffset();
+    private static final int ACCOUNT_FUND_SOURCE = BinFileDetailFieldInfo.ACCOUNT_FUND_SOURCE.getOffset();
+    private static final int CARD_CLASS = BinFileDetailFieldInfo.CARD_CLASS.getOffset();
+    private static final int PAN_LENGTH_MIN = BinFileDetailFieldInfo.PAN_LENGTH_MIN.getOffset();
+    private static final int PAN_LENGTH_MAX = BinFileDetailFieldInfo.PAN_LENGTH_MAX.getOffset();
+    private static final int TOKEN_INDICATOR = BinFileDetailFieldInfo.TOKEN_INDICATOR.getOffset();
+    private static final int ISSUING_NETWORK = BinFileDetailFieldInfo.ISSUING_NETWORK.getOffset();
+    private static final int CARDHOLDER_BILLING_CURRENCY = BinFileDetailFieldInfo.CARDHOLDER_BILLING_CURRENCY.getOffset();
+    private static final int ACCOUNT_FUND_SOURCE_SUB_TYPE = BinFileDetailFieldInfo.ACCOUNT_FUND_SOURCE_SUB_TYPE.getOffset();
+    private static final int MONEY_SEND_INDICATOR = BinFileDetailFieldInfo.MONEY_SEND_INDICATOR.getOffset();
+    private static final int ORIGINAL_CREDIT_MONEY_TRANSFER_INDICATOR =
+            BinFileDetailFieldInfo.ORIGINAL_CREDIT_MONEY_TRANSFER_INDICATOR.getOffset();
+    private static final int ORIGINAL_CREDIT_ONLINE_GAMBLING_INDICATOR =
+            BinFileDetailFieldInfo.ORIGINAL_CREDIT_ONLINE_GAMBLING_INDICATOR.getOffset();
+    private static final int FAST_FUNDS = BinFileDetailFieldInfo.FAST_FUNDS.getOffset();
+    private static final int ORIGINAL_CREDIT_TRANSACTION_INDICATOR =
+            BinFileDetailFieldInfo.ORIGINAL_CREDIT_TRANSACTION_INDICATOR.getOffset();
+    static final int LENGTH = BinFileDetailFieldInfo.LINE_LENGTH;
+
+    private static final int MAX_NUMERIC_BIN_LENGTH = 18;
+    // the codes of two bytes are looked up for printable ASCII
+    private static final int FIRST_PRINTABLE = 0x20;
+    private static final int PRINTABLES = 0x7F - FIRST_PRINTABLE;
+    private static final int CODE_CACHE_SIZE = 256;
+
+    // the field of one byte as it is parsed, stripped of a trailing space
+    private static final String[] ONE_BYTE = byByte(String.class, Function.identity());
+    private static final DetailCardProduct[] DETAIL_CARD_PRODUCTS = byByte(DetailCardProduct.class, DetailCardProduct::fromString);
+    private static final FsaIndicator[] FSA_INDICATORS = byByte(FsaIndicator.class, FsaIndicator::fromString);
+    private static final PrepaidIndicator[] PREPAID_INDICATORS = byByte(PrepaidIndicator.class, PrepaidIndicator::fromString);
+    private static final RegulatorIndicator[] REGULATOR_INDICATORS = byByte(RegulatorIndicator.class, RegulatorIndicator::fromString);
+    private static final VisaLargeTicketIndicator[] VISA_LARGE_TICKET_INDICATORS = byByte(VisaLargeTicketIndicator.class,
+            VisaLargeTicketIndicator::fromString);
+    private static final YesNoAnswer[] YES_NO_ANSWERS = byByte(YesNoAnswer.class, YesNoAnswer::fromString);
+    private static final AccountFundSource[] ACCOUNT_FUND_SOURCES = byByte(AccountFundSource.class, AccountFundSource::fromString);
+    private static final CardClass[] CARD_CLASSES = byByte(CardClass.class, CardClass::fromString);
+    private static final AccountFundSourceSubType[] ACCOUNT_FUND_SOURCE_SUB_TYPES = byByte(AccountFundSourceSubType.class,
+            AccountFundSourceSubType::fromString);
+    private static final MoneySendIndicator[] MONEY_SEND_INDICATORS = byByte(MoneySendIndicator.class, MoneySendIndicator::fromString);
+    private static final FastFunds[] FAST_FUNDS_VALUES = byByte(FastFunds.class, FastFunds::fromString);
+    private static final Function<String, DetailCardIndicator> DETAIL_CARD_INDICATOR_OF = value -> {
+        try {
+            return DetailCardIndicator.valueOf(value);
+        } catch (final Exception ex) {
+            return DetailCardIndicator.DEFAULT;
+        }
+    };
+    private static final DetailCardIndicator[] DETAIL_CARD_INDICATORS = byTwoBytes(DetailCardIndicator.class, DETAIL_CARD_INDICATOR_OF);
+    private static final VisaProductSubType[] VISA_PRODUCT_SUBTYPES = byTwoBytes(VisaProductSubType.class, VisaProductSubType::fromString);
+    private static final IssuingNetwork[] ISSUING_NETWORKS = byTwoBytes(IssuingNetwork.class, IssuingNetwork::fromString);
+
+    private final BinProfilePool pool;
+    private final CodeCache<CountryCode> countryCodes = new CodeCache<>(CountryCodeUtil::getCountryCode);
+    private final CodeCache<CurrencyCode> currencyCodes = new CodeCache<>(CurrencyCode::getByCodeIgnoreCase);
+    // the bytes of a string field are gathered here, a mapped buffer has no array to make the string from
+    private final byte[] field = new byte[BinFileDetailFieldInfo.ISSUER_BANK_NAME.getLength()];
+    @Nullable
+    private ByteBuffer wrapped;
+    private ByteBuffer line;
+    private int start;
+
+    /**
+     * @param pool the decoded records share its profiles
+     */
+    public BinDetailDecoder(final BinProfilePool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Decodes the detail line in the remaining bytes of the buffer, leaving its position as it is
+     *
+     * @throws ParseException if the bytes are not a detail line
+     */
+    public BinDetailRecord decode(final ByteBuffer record) throws ParseException {
+        return decode(record, record.position(), record.limit());
+    }
+
+    /**
+     * Decodes the detail line in {@code length} bytes of the array from {@code offset}
+     *
+     * @throws ParseException if the bytes are not a detail line
+     */
+    public BinDetailRecord decode(final byte[] bytes, final int offset, final int length) throws ParseException {
+        if (wrapped == null || wrapped.array() != bytes) {
+            wrapped = ByteBuffer.wrap(bytes);
+        }
+        return decode(wrapped, offset, offset + length);
+    }
+
+    private BinDetailRecord decode(final ByteBuffer buffer, final int from, final int to) throws ParseException {
+        line = buffer;
+        start = from;
+        if (to - from < LENGTH) {
+            throw new ParseException("Detail record of " + (to - from) + " bytes is shorter than " + LENGTH, 0);
+        }
+        if (buffer.get(from) != 'D') {
+            throw new ParseException("Invalid Record Type Indicator encountered. Expecting D", 0);
+        }
+        final int tail = from + BinDetailRecord.BOUNDS_LENGTH;
+        final int hash = BinProfilePool.hash(buffer, tail, to);
+        final BinProfile shared = pool.find(buffer, tail, to, hash);
+        final BinDetailRecord record = new BinDetailRecord(shared == null ? decodeProfile() : shared);
+        decodeBins(record);
+        if (shared == null) {
+            final BinProfile profile = pool.add(record, buffer, tail, to, hash);
+            if (profile != record.getProfile()) {
+                record.share(profile);
+            }
+        }
+        return record;
+    }
+
+    private void decodeBins(final BinDetailRecord record) {
+        final int lowLength = strippedLength(LOW_BIN, BinFileDetailFieldInfo.LOW_BIN.getLength());
+        final int highLength = strippedLength(HIGH_BIN, BinFileDetailFieldInfo.HIGH_BIN.getLength());
+        final String lowBin = string(LOW_BIN, lowLength);
+        final long lowBinValue = binValue(LOW_BIN, lowLength);
+        // most ranges are a single BIN
+        if (sameBytes(LOW_BIN, HIGH_BIN, BinFileDetailFieldInfo.LOW_BIN.getLength())) {
+            record.setBins(lowBin, lowBinValue, lowBin, lowBinValue);
+        } else {
+            record.setBins(lowBin, lowBinValue, string(HIGH_BIN, highLength), binValue(HIGH_BIN, highLength));
+        }
+    }
+
+    private BinProfile decodeProfile() throws ParseException {
+        final BinProfile profile = new BinProfile();
+        profile.binLength = number(BIN_LENGTH, BinFileDetailFieldInfo.BIN_LENGTH);
+        profile.binDetailPan = number(BIN_DETAIL_PAN, BinFileDetailFieldInfo.BIN_DETAIL_PAN);
+        profile.issuerBankName = string(ISSUER_BANK_NAME, BinFileDetailFieldInfo.ISSUER_BANK_NAME);
+        profile.countryCode = countryCodes.get(COUNTRY_CODE);
+        profile.detailCardProduct = DETAIL_CARD_PRODUCTS[byteAt(DETAIL_CARD_PRODUCT)];
+        profile.detailCardIndicator = code(DETAIL_CARD_INDICATORS, DETAIL_CARD_INDICATOR, DETAIL_CARD_INDICATOR_OF);
+        profile.issuerUpdateYear = string(ISSUER_UPDATE_YEAR, BinFileDetailFieldInfo.ISSUER_UPDATE_YEAR);
+        profile.issuerUpdateMonth = string(ISSUER_UPDATE_MONTH, BinFileDetailFieldInfo.ISSUER_UPDATE_MONTH);
+        profile.issuerUpdateDay = string(ISSUER_UPDATE_DAY, BinFileDetailFieldInfo.ISSUER_UPDATE_DAY);
+        profile.debitNetworkPinlessIndicator = string(DEBIT_NETWORK_PINLESS_INDICATOR,
+                BinFileDetailFieldInfo.DEBIT_NETWORK_PINLESS_INDICATOR);
+        profile.ebtState = string(EBT_STATE, BinFileDetailFieldInfo.EBT_STATE);
+        profile.debitSignatureNetworkParticipant = string(DEBIT_SIGNATURE_NETWORK_PARTICIPANT,
+                BinFileDetailFieldInfo.DEBIT_SIGNATURE_NETWORK_PARTICIPANT);
+        profile.fsaIndicator = FSA_INDICATORS[byteAt(FSA_INDICATOR)];
+        profile.prepaidIndicator = PREPAID_INDICATORS[byteAt(PREPAID_INDICATOR)];
+        profile.productId = string(PRODUCT_ID, BinFileDetailFieldInfo.PRODUCT_ID);
+        profile.regulatorIndicator = REGULATOR_INDICATORS[byteAt(REGULATOR_INDICATOR)];
+        profile.visaProductSubtype = code(VISA_PRODUCT_SUBTYPES, VISA_PRODUCT_SUBTYPE, VisaProductSubType::fromString);
+        profile.visaLargeTicketIndicator = VISA_LARGE_TICKET_INDICATORS[byteAt(VISA_LARGE_TICKET_INDICATOR)];
+        profile.accountLevelProcessingIndicator = YES_NO_ANSWERS[byteAt(ACCOUNT_LEVEL_PROCESSING_INDICATOR)];
+        profile.accountFundSource = ACCOUNT_FUND_SOURCES[byteAt(ACCOUNT_FUND_SOURCE)];
+        profile.cardClass = CARD_CLASSES[byteAt(CARD_CLASS)];
+        profile.panLengthMin = number(PAN_LENGTH_MIN, BinFileDetailFieldInfo.PAN_LENGTH_MIN);
+        profile.panLengthMax = number(PAN_LENGTH_MAX, BinFileDetailFieldInfo.PAN_LENGTH_MAX);
+        profile.tokenIndicator = YES_NO_ANSWERS[byteAt(TOKEN_INDICATOR)];
+        profile.issuingNetwork = code(ISSUING_NETWORKS, ISSUING_NETWORK, IssuingNetwork::fromString);
+        profile.cardholderBillingCurrency = currencyCodes.get(CARDHOLDER_BILLING_CURRENCY);
+        profile.accountFundSourceSubType = ACCOUNT_FUND_SOURCE_SUB_TYPES[byteAt(ACCOUNT_FUND_SOURCE_SUB_TYPE)];
+        profile.moneySendIndicator = MONEY_SEND_INDICATORS[byteAt(MONEY_SEND_INDICATOR)];
+        profile.originalCreditMoneyTransferIndicator = originalCredit(ORIGINAL_CREDIT_MONEY_TRANSFER_INDICATOR, profile);
+        profile.originalCreditOnlineGamblingIndicator = originalCredit(ORIGINAL_CREDIT_ONLINE_GAMBLING_INDICATOR, profile);
+        profile.fastFunds = FAST_FUNDS_VALUES[byteAt(FAST_FUNDS)];
+        profile.originalCreditTransactionIndicator = originalCredit(ORIGINAL_CREDIT_TRANSACTION_INDICATOR, profile);
+        profile.parsed = true;
+        return profile;
+    }
+
+    private OriginalCreditIndicator originalCredit(final int offset, final BinProfile profile) {
+        return OriginalCreditIndicator.fromString(ONE_BYTE[byteAt(offset)], profile.countryCode, profile.detailCardProduct);
+    }
+
+    private int byteAt(final int offset) {
+        return line.get(start + offset) & 0xFF;
+    }
+
+    /**
+     * Length of the field without the trailing whitespace that parsing strips
+     */
+    private int strippedLength(final int offset, final int length) {
+        int stripped = length;
+        while (stripped > 0 && Character.isWhitespace((char) byteAt(offset + stripped - 1))) {
+            stripped--;
+        }
+        return stripped;
+    }
+
+    private boolean sameBytes(final int offset, final int other, final int length) {
+        for (int i = 0; i < length; i++) {
+            if (line.get(start + offset + i) != line.get(start + other + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String string(final int offset, final BinFileDetailFieldInfo fieldInfo) {
+        return string(offset, strippedLength(offset, fieldInfo.getLength()));
+    }
+
+    private String string(final int offset, final int length) {
+        for (int i = 0; i < length; i++) {
+            field[i] = line.get(start + offset + i);
+        }
+        return new String(field, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private int number(final int offset, final BinFileDetailFieldInfo fieldInfo) throws ParseException {
+        final int length = strippedLength(offset, fieldInfo.getLength());
+        if (length == 0) {
+            throw new ParseException(fieldInfo.getDescription() + " is empty", offset);
+        }
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            final int digit = byteAt(offset + i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new ParseException(fieldInfo.getDescription() + " is not a number", offset + i);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Numeric value of a BIN, -1 when it is not numeric
+     */
+    private long binValue(final int offset, final int length) {
+        if (length == 0 || length > MAX_NUMERIC_BIN_LENGTH) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            final int digit = byteAt(offset + i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * The enum of a code of two bytes, from the table for printable codes and parsed for the others
+     */
+    private <E> E code(final E[] table, final int offset, final Function<String, E> fromString) {
+        final int first = byteAt(offset) - FIRST_PRINTABLE;
+        final int second = byteAt(offset + 1) - FIRST_PRINTABLE;
+        if (first >= 0 && first < PRINTABLES && second >= 0 && second < PRINTABLES) {
+            return table[first * PRINTABLES + second];
+        }
+        return fromString.apply(string(offset, strippedLength(offset, 2)));
+    }
+
+    /**
+     * The enums of all codes of one byte
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> E[] byByte(final Class<E> type, final Function<String, E> fromString) {
+        final E[] table = (E[]) Array.newInstance(type, 256);
+        for (int b = 0; b < table.length; b++) {
+            table[b] = fromString.apply(StringUtils.stripEnd(String.valueOf((char) b), null));
+        }
+        return table;
+    }
+
+    /**
+     * The enums of all printable codes of two bytes
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> E[] byTwoBytes(final Class<E> type, final Function<String, E> fromString) {
+        final E[] table = (E[]) Array.newInstance(type, PRINTABLES * PRINTABLES);
+        final char[] code = new char[2];
+        for (int first = 0; first < PRINTABLES; first++) {
+            for (int second = 0; second < PRINTABLES; second++) {
+                code[0] = (char) (FIRST_PRINTABLE + first);
+                code[1] = (char) (FIRST_PRINTABLE + second);
+                table[first * PRINTABLES + second] = fromString.apply(StringUtils.stripEnd(new String(code), null));
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Codes of three bytes, e.g. country codes, parsed once and then found by their bytes
+     */
+    private final class CodeCache<T> {
+        private final Function<String, T> parse;
+        // the three bytes of a code, with a bit set to tell them from an empty slot
+        private final int[] keys = new int[CODE_CACHE_SIZE];
+        private final Object[] values = new Object[CODE_CACHE_SIZE];
+        private int size;
+
+        private CodeCache(final Function<String, T> parse) {
+            this.parse = parse;
+        }
+
+        @SuppressWarnings("unchecked")
+        private T get(final int offset) {
+            final int key = 1 << 24 | byteAt(offset) << 16 | byteAt(offset + 1) << 8 | byteAt(offset + 2);
+            int index = (key * 0x9E3779B9 >>> 24) & (CODE_CACHE_SIZE - 1);
+            while (keys[index] != 0) {
+                if (keys[index] == key) {
+                    return (T) values[index];
+                }
+                index = (index + 1) & (CODE_CACHE_SIZE - 1);
+            }
+            final T value = parse.apply(string(offset, strippedLength(offset, 3)));
+            // codes past the size of the cache are parsed every time
+            if (size * 2 < CODE_CACHE_SIZE) {
+                keys[index] = key;
+                values[index] = value;
+                size++;
+            }
+            return value;
+        }
+    }
+}
@@ -18,6 +18,8 @@ import home.tong.card.bin.enums.RegulatorIndicator;
 import home.tong.card.bin.enums.VisaLargeTicketIndicator;
 import home.tong.card.bin.enums.VisaProductSubType;
 import home.tong.card.bin.enums.YesNoAnswer;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.lang.Nullable;
 
 import java.text.ParseException;
 
@@ -25,45 +27,22 @@ public class BinDetailRecord extends BinRecord {
     private static final RecordTypeIndicator RECORD_TYPE_INDICATOR = RecordTypeIndicator.DETAIL;
     private String lowBin;
     private String highBin;
-    private int binLength;
-    private int binDetailPan;
-    private String issuerBankName;
-    private CountryCode countryCode;
-    private DetailCardProduct detailCardProduct = DetailCardProduct.DEFAULT;
-    private DetailCardIndicator detailCardIndicator = DetailCardIndicator.DEFAULT;
-    private String issuerUpdateYear;
-    private String issuerUpdateMonth;
-    private String issuerUpdateDay;
-    private String debitNetworkPinlessIndicator;
-    private String ebtState;
-    private String debitSignatureNetworkParticipant;
-    private FsaIndicator fsaIndicator = FsaIndicator.DEFAULT;
-    private PrepaidIndicator prepaidIndicator = PrepaidIndicator.DEFAULT;
-    private String productId;
-    private RegulatorIndicator regulatorIndicator = RegulatorIndicator.ISS_NONREGULATED;
-    private VisaProductSubType visaProductSubtype = VisaProductSubType.DEFAULT;
-    private VisaLargeTicketIndicator visaLargeTicketIndicator = VisaLargeTicketIndicator.DEFAULT;
-    private YesNoAnswer accountLevelProcessingIndicator = YesNoAnswer.NEITHER;
-    private AccountFundSource accountFundSource = AccountFundSource.DEFAULT;
-    private CardClass cardClass = CardClass.DEFAULT;
-    private int panLengthMin;
-    private int panLengthMax;
-    private YesNoAnswer tokenIndicator = YesNoAnswer.NEITHER;
-    private IssuingNetwork issuingNetwork = IssuingNetwork.DEFAULT;
-    private CurrencyCode cardholderBillingCurrency;
-    private AccountFundSourceSubType accountFundSourceSubType = AccountFundSourceSubType.NOT_APPLICABLE;
-    private MoneySendIndicator moneySendIndicator = MoneySendIndicator.DEFAULT;
-    private OriginalCreditIndicator originalCreditMoneyTransferIndicator = OriginalCreditIndicator.DEFAULT;
-    private OriginalCreditIndicator originalCreditOnlineGamblingIndicator = OriginalCreditIndicator.DEFAULT;
-    private FastFunds fastFunds = FastFunds.NO_PARTICIPATION;
-    private OriginalCreditIndicator originalCreditTransactionIndicator = OriginalCreditIndicator.DEFAULT;
-
-    private static final int FILLER_LENGTH_2 = 2;
-    private static final int FILLER_LENGTH_4 = 4;
-    private static final int FILLER_LENGTH_5 = 5;
-    private static final int FILLER_LENGTH_6 = 6;
-    private static final int FILLER_LENGTH_18 = 18;
-
+    // numeric values of the BINs, -1 when a BIN is not numeric
+    private long lowBinValue = -1;
+    private long highBinValue = -1;
+    // all other attributes, shared with other records once interned by a BinProfilePool
+    @Nullable
+    private BinProfile profile;
+
+    private static final int MAX_NUMERIC_BIN_LENGTH = 19;
+    // the line up to and including the high BIN
+    static final int BOUNDS_LENGTH = BinFileDetailFieldInfo.RECORD_TYPE.getLength()
+            + BinFileDetailFieldInfo.LOW_BIN.getLength() + BinFileDetailFieldInfo.HIGH_BIN.getLength();
+
+    /**
+     * The fields of a detail line in the order they are laid out, fillers included, which gives the offsets of
+     * the fields for {@link BinDetailDecoder}
+     */
     enum BinFileDetailFieldInfo implements FieldInfo {
         RECORD_TYPE("Record Type", 1),
         LOW_BIN("Low BIN", 16),
@@ -74,6 +53,7 @@ public class BinDetailRecord extends BinRecord {
         COUNTRY_CODE("Country Code", 3),
         DETAIL_CARD_PRODUCT("Detail Card Product", 1),
         DETAIL_CARD_INDICATOR("Detail Card Indicator", 2),
+        FILLER_1("Filler", 2),
         ISSUER_UPDATE_YEAR("Issuer Update Year", 2),
         ISSUER_UPDATE_MONTH("Issuer Update Month", 2),
         ISSUER_UPDATE_DAY("Issuer Update Day", 2),
@@ -81,6 +61,7 @@ public class BinDetailRecord extends BinRecord {
         EBT_STATE("EBT-State", 2),
         DEBIT_SIGNATURE_NETWORK_PARTICIPANT("Debit Signature Network Participant", 2),
         FSA_INDICATOR("FSA Indicator", 1),
+        FILLER_2("Filler", 18),
         PREPAID_INDICATOR("Prepaid Indicator", 1),
         PRODUCT_ID("Product ID", 3),
         REGULATOR_INDICATOR("Regulator Indicator", 1),
@@ -94,15 +75,32 @@ public class BinDetailRecord extends BinRecord {
         TOKEN_INDICATOR("Token Indicator", 1),
         ISSUING_NETWORK("Issuing Network", 2),
         CARDHOLDER_BILLING_CURRENCY("Cardholder Billing Currency", 3),
+        FILLER_3("Filler", 4),
         ACCOUNT_FUND_SOURCE_SUB_TYPE("Account Fund Source Sub-Type", 1),
+        FILLER_4("Filler", 18),
         MONEY_SEND_INDICATOR("Money Send Indicator", 1),
         ORIGINAL_CREDIT_MONEY_TRANSFER_INDICATOR("Original Credit Money Transfer (MT) Indicator", 1),
         ORIGINAL_CREDIT_ONLINE_GAMBLING_INDICATOR("Original Credit Online Gambling (OG) Indicator", 1),
         FAST_FUNDS("Fast Funds", 1),
-        ORIGINAL_CREDIT_TRANSACTION_INDICATOR("Original Credit Transaction (OCT) Indicator", 1);
+        FILLER_5("Filler", 5),
+        ORIGINAL_CREDIT_TRANSACTION_INDICATOR("Original Credit Transaction (OCT) Indicator", 1),
+        RESERVED("Reserved Field", 2);
+
+        // length of a detail line, all fields up to and including the reserved one
+        static final int LINE_LENGTH;
+
+        static {
+            int offset = 0;
+            for (final BinFileDetailFieldInfo field : values()) {
+                field.offset = offset;
+                offset += field.length;
+            }
+            LINE_LENGTH = offset;
+        }
 
         private final String description;
         private final int length;
+        private int offset;
 
         BinFileDetailFieldInfo(final String description, final int length) {
             this.description = "Global BIN File Detail: " + description;
@@ -118,15 +116,33 @@ public class BinDetailRecord extends BinRecord {
         public int getLength() {
             return length;
         }
+
+        /**
+         * Offset of the field in a detail line
+         */
+        int getOffset() {
+            return offset;
+        }
     }
 
     public BinDetailRecord() {
         super();
+        profile = new BinProfile();
     }
 
     public BinDetailRecord(final String record) throws ParseException {
         super(record);
+        profile = new BinProfile();
         parse();
+        profile.parsed = true;
+    }
+
+    /**
+     * A record without attributes of its own, see {@link BinRecordView}
+     */
+    BinDetailRecord(@Nullable final BinProfile profile) {
+        super();
+        this.profile = profile;
     }
 
     @Override
@@ -144,7 +160,7 @@ public class BinDetailRecord extends BinRecord {
         setCountryCode(getNextField(BinFileDetailFieldInfo.COUNTRY_CODE));
         setDetailCardProduct(getNextField(BinFileDetailFieldInfo.DETAIL_CARD_PRODUCT));
         setDetailCardIndicator(getNextField(BinFileDetailFieldInfo.DETAIL_CARD_INDICATOR));
-        getNextField(FILLER_LENGTH_2); // Filler
+        getNextField(BinFileDetailFieldInfo.FILLER_1);
         setIssuerUpdateYear(getNextField(BinFileDetailFieldInfo.ISSUER_UPDATE_YEAR));
         setIssuerUpdateMonth(getNextField(BinFileDetailFieldInfo.ISSUER_UPDATE_MONTH));
         setIssuerUpdateDay(getNextField(BinFileDetailFieldInfo.ISSUER_UPDATE_DAY));
@@ -152,9 +168,7 @@ public class BinDetailRecord extends BinRecord {
         setEbtState(getNextField(BinFileDetailFieldInfo.EBT_STATE));
         setDebitSignatureNetworkParticipant(getNextField(BinFileDetailFieldInfo.DEBIT_SIGNATURE_NETWORK_PARTICIPANT));
         setFsaIndicator(getNextField(BinFileDetailFieldInfo.FSA_INDICATOR));
-        getNextField(FILLER_LENGTH_6); // Filler
-        getNextField(FILLER_LENGTH_6); // Filler
-        getNextField(FILLER_LENGTH_6); // Filler
+        getNextField(BinFileDetailFieldInfo.FILLER_2);
         setPrepaidIndicator(getNextField(BinFileDetailFieldInfo.PREPAID_INDICATOR));
         setProductId(getNextField(BinFileDetailFieldInfo.PRODUCT_ID));
         setRegulatorIndicator(getNextField(BinFileDetailFieldInfo.REGULATOR_INDICATOR));
@@ -168,16 +182,82 @@ public class BinDetailRecord extends BinRecord {
         setTokenIndicator(YesNoAnswer.fromString(getNextField(BinFileDetailFieldInfo.TOKEN_INDICATOR)));
         setIssuingNetwork(getNextField(BinFileDetailFieldInfo.ISSUING_NETWORK));
         setCardholderBillingCurrency(getNextField(BinFileDetailFieldInfo.CARDHOLDER_BILLING_CURRENCY));
-        getNextField(FILLER_LENGTH_4); // Filler
+        getNextField(BinFileDetailFieldInfo.FILLER_3);
         setAccountFundSourceSubType(getNextField(BinFileDetailFieldInfo.ACCOUNT_FUND_SOURCE_SUB_TYPE));
-        getNextField(FILLER_LENGTH_18); // Filler
+        getNextField(BinFileDetailFieldInfo.FILLER_4);
         setMoneySendIndicator(getNextField(BinFileDetailFieldInfo.MONEY_SEND_INDICATOR));
         setOriginalCreditMoneyTransferIndicator(getNextField(BinFileDetailFieldInfo.ORIGINAL_CREDIT_MONEY_TRANSFER_INDICATOR));
         setOriginalCreditOnlineGamblingIndicator(getNextField(BinFileDetailFieldInfo.ORIGINAL_CREDIT_ONLINE_GAMBLING_INDICATOR));
         setFastFunds(getNextField(BinFileDetailFieldInfo.FAST_FUNDS));
-        getNextField(FILLER_LENGTH_5); // Filler
+        getNextField(BinFileDetailFieldInfo.FILLER_5);
         setOriginalCreditTransactionIndicator(getNextField(BinFileDetailFieldInfo.ORIGINAL_CREDIT_TRANSACTION_INDICATOR));
-        getNextField(FILLER_LENGTH_2); // Reserved Field
+        getNextField(BinFileDetailFieldInfo.RESERVED);
+    }
+
+    /**
+     * The line the record was parsed from. The line of a record interned by a {@link BinProfilePool} is put
+     * together again from the BINs and the part of the line kept by the profile.
+     */
+    @Override
+    public String getRecord() {
+        final String record = super.getRecord();
+        if (record != null) {
+            return record;
+        }
+        final String tail = profile.tail();
+        return tail == null ? null : bounds() + tail;
+    }
+
+    /**
+     * The start of the line up to and including the high BIN, as it is laid out in the BIN file
+     */
+    String bounds() {
+        return RECORD_TYPE_INDICATOR + FormatUtil.formatKeepCase(StringUtils.defaultString(lowBin), BinFileDetailFieldInfo.LOW_BIN)
+                + FormatUtil.formatKeepCase(StringUtils.defaultString(highBin), BinFileDetailFieldInfo.HIGH_BIN);
+    }
+
+    /**
+     * Attributes of the record other than its BIN range
+     */
+    public BinProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Replaces the attributes and the line of the record by the shared profile
+     */
+    void share(final BinProfile shared) {
+        profile = shared;
+        setRecord(null);
+        if (highBin != null && highBin.equals(lowBin)) {
+            // most ranges are a single BIN
+            highBin = lowBin;
+        }
+    }
+
+    /**
+     * The enum attributes of the record packed into one long, see {@link BinFlag}. Computed once for the records
+     * sharing a profile.
+     */
+    public long getFlags() {
+        long flags = profile.flags;
+        if (flags < 0) {
+            flags = BinFlag.flags(this);
+            profile.flags = flags;
+        }
+        return flags;
+    }
+
+    private BinProfile mutableProfile() {
+        if (profile == null) {
+            throw new UnsupportedOperationException("BIN record view is read only");
+        }
+        if (profile.shared) {
+            profile = profile.copy();
+        }
+        profile.parsed = false;
+        profile.flags = -1;
+        return profile;
     }
 
     public String getLowBin() {
@@ -186,6 +266,11 @@ public class BinDetailRecord extends BinRecord {
 
     public void setLowBin(final String lowBin) {
         this.lowBin = FormatUtil.optionalField(lowBin, BinFileDetailFieldInfo.LOW_BIN);
+        this.lowBinValue = toBinValue(this.lowBin);
+    }
+
+    public long getLowBinValue() {
+        return lowBinValue;
     }
 
     public String getHighBin() {
@@ -194,112 +279,148 @@ public class BinDetailRecord extends BinRecord {
 
     public void setHighBin(final String highBin) {
         this.highBin = FormatUtil.optionalField(highBin, BinFileDetailFieldInfo.HIGH_BIN);
+        this.highBinValue = toBinValue(this.highBin);
+    }
+
+    public long getHighBinValue() {
+        return highBinValue;
+    }
+
+    /**
+     * Sets the BINs a {@link BinDetailDecoder} read from the fields of a detail line, which need no checks
+     */
+    void setBins(final String lowBin, final long lowBinValue, final String highBin, final long highBinValue) {
+        this.lowBin = lowBin;
+        this.lowBinValue = lowBinValue;
+        this.highBin = highBin;
+        this.highBinValue = highBinValue;
+    }
+
+    /**
+     * Compares two detail lines of a BIN file by their low BIN field as it is written, padded with spaces, which is
+     * the order the records of a BIN file are sorted in
+     */
+    public static int compareLowBin(final String line, final String other) {
+        final int from = BinFileDetailFieldInfo.RECORD_TYPE.getLength();
+        final int to = from + BinFileDetailFieldInfo.LOW_BIN.getLength();
+        for (int i = from; i < to; i++) {
+            final char c = i < line.length() ? line.charAt(i) : ' ';
+            final char d = i < other.length() ? other.charAt(i) : ' ';
+            if (c != d) {
+                return c - d;
+            }
+        }
+        return 0;
+    }
+
+    private static long toBinValue(final String bin) {
+        return StringUtils.isNumeric(bin) && bin.length() < MAX_NUMERIC_BIN_LENGTH ? Long.parseLong(bin) : -1;
     }
 
     public int getBinLength() {
-        return binLength;
+        return profile.binLength;
     }
 
     public void setBinLength(final int binLength) {
-        this.binLength = FormatUtil.optionalField(binLength, BinFileDetailFieldInfo.BIN_LENGTH);
+        mutableProfile().binLength = FormatUtil.optionalField(binLength, BinFileDetailFieldInfo.BIN_LENGTH);
     }
 
     public int getBinDetailPan() {
-        return binDetailPan;
+        return profile.binDetailPan;
     }
 
     public void setBinDetailPan(final int binDetailPan) {
-        this.binDetailPan = FormatUtil.optionalField(binDetailPan, BinFileDetailFieldInfo.BIN_DETAIL_PAN);
+        mutableProfile().binDetailPan = FormatUtil.optionalField(binDetailPan, BinFileDetailFieldInfo.BIN_DETAIL_PAN);
     }
 
     public String getIssuerBankName() {
-        return issuerBankName;
+        return profile.issuerBankName;
     }
 
     public void setIssuerBankName(final String issuerBankName) {
-        this.issuerBankName = FormatUtil.optionalField(issuerBankName, BinFileDetailFieldInfo.ISSUER_BANK_NAME);
+        mutableProfile().issuerBankName = FormatUtil.optionalField(issuerBankName, BinFileDetailFieldInfo.ISSUER_BANK_NAME);
     }
 
     public CountryCode getCountryCode() {
-        return countryCode;
+        return profile.countryCode;
     }
 
     public void setCountryCode(final String sCountryCode) {
-        this.countryCode = CountryCodeUtil.getCountryCode(sCountryCode);
+        mutableProfile().countryCode = CountryCodeUtil.getCountryCode(sCountryCode);
     }
 
     public DetailCardProduct getDetailCardProduct() {
-        return detailCardProduct;
+        return profile.detailCardProduct;
     }
 
     public void setDetailCardProduct(final String detailCardProduct) {
-        this.detailCardProduct = DetailCardProduct.fromString(detailCardProduct);
+        mutableProfile().detailCardProduct = DetailCardProduct.fromString(detailCardProduct);
     }
 
     public DetailCardIndicator getDetailCardIndicator() {
-        return detailCardIndicator;
+        return profile.detailCardIndicator;
     }
 
     public void setDetailCardIndicator(final String detailCardIndicator) {
         try {
-            this.detailCardIndicator = DetailCardIndicator.valueOf(detailCardIndicator);
+            mutableProfile().detailCardIndicator = DetailCardIndicator.valueOf(detailCardIndicator);
         } catch (final Exception ex) {
-            this.detailCardIndicator = DetailCardIndicator.DEFAULT;
+            mutableProfile().detailCardIndicator = DetailCardIndicator.DEFAULT;
         }
     }
 
     public String getIssuerUpdateYear() {
-        return issuerUpdateYear;
+        return profile.issuerUpdateYear;
     }
 
     public void setIssuerUpdateYear(final String issuerUpdateYear) {
-        this.issuerUpdateYear = FormatUtil.optionalField(issuerUpdateYear, BinFileDetailFieldInfo.ISSUER_UPDATE_YEAR);
+        mutableProfile().issuerUpdateYear = FormatUtil.optionalField(issuerUpdateYear, BinFileDetailFieldInfo.ISSUER_UPDATE_YEAR);
     }
 
     public String getIssuerUpdateMonth() {
-        return issuerUpdateMonth;
+        return profile.issuerUpdateMonth;
     }
 
     public void setIssuerUpdateMonth(final String issuerUpdateMonth) {
-        this.issuerUpdateMonth = FormatUtil.optionalField(issuerUpdateMonth, BinFileDetailFieldInfo.ISSUER_UPDATE_MONTH);
+        mutableProfile().issuerUpdateMonth = FormatUtil.optionalField(issuerUpdateMonth, BinFileDetailFieldInfo.ISSUER_UPDATE_MONTH);
     }
 
     public String getIssuerUpdateDay() {
-        return issuerUpdateDay;
+        return profile.issuerUpdateDay;
     }
 
     public void setIssuerUpdateDay(final String issuerUpdateDay) {
-        this.issuerUpdateDay = FormatUtil.optionalField(issuerUpdateDay, BinFileDetailFieldInfo.ISSUER_UPDATE_DAY);
+        mutableProfile().issuerUpdateDay = FormatUtil.optionalField(issuerUpdateDay, BinFileDetailFieldInfo.ISSUER_UPDATE_DAY);
     }
 
     public String getDebitNetworkPinlessIndicator() {
-        return debitNetworkPinlessIndicator;
+        return profile.debitNetworkPinlessIndicator;
     }
 
     public void setDebitNetworkPinlessIndicator(final String debitNetworkPinlessIndicator) {
-        this.debitNetworkPinlessIndicator =
+        mutableProfile().debitNetworkPinlessIndicator =
                 FormatUtil.optionalField(debitNetworkPinlessIndicator, BinFileDetailFieldInfo.DEBIT_NETWORK_PINLESS_INDICATOR);
     }
 
     public String getEbtState() {
-        return ebtState;
+        return profile.ebtState;
     }
 
     public void setEbtState(final String ebtState) {
-        this.ebtState = FormatUtil.optionalField(ebtState, BinFileDetailFieldInfo.EBT_STATE);
+        mutableProfile().ebtState = FormatUtil.optionalField(ebtState, BinFileDetailFieldInfo.EBT_STATE);
     }
 
     public String getDebitSignatureNetworkParticipant() {
-        return debitSignatureNetworkParticipant;
+        return profile.debitSignatureNetworkParticipant;
     }
 
     public void setDebitSignatureNetworkParticipant(final String debitSignatureNetworkParticipant) {
-        this.debitSignatureNetworkParticipant =
+        mutableProfile().debitSignatureNetworkParticipant =
                 FormatUtil.optionalField(debitSignatureNetworkParticipant, BinFileDetailFieldInfo.DEBIT_SIGNATURE_NETWORK_PARTICIPANT);
     }
 
     public FsaIndicator getFsaIndicator() {
-        return fsaIndicator;
+        return profile.fsaIndicator;
     }
 
     public void setFsaIndicator(final String fsaIndicator) {
@@ -307,11 +428,11 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setFsaIndicator(final FsaIndicator fsaIndicator) {
-        this.fsaIndicator = fsaIndicator;
+        mutableProfile().fsaIndicator = fsaIndicator;
     }
 
     public PrepaidIndicator getPrepaidIndicator() {
-        return prepaidIndicator;
+        return profile.prepaidIndicator;
     }
 
     public void setPrepaidIndicator(final String prepaidIndicator) {
@@ -319,19 +440,19 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setPrepaidIndicator(final PrepaidIndicator prepaidIndicator) {
-        this.prepaidIndicator = prepaidIndicator;
+        mutableProfile().prepaidIndicator = prepaidIndicator;
     }
 
     public String getProductId() {
-        return productId;
+        return profile.productId;
     }
 
     public void setProductId(final String productId) {
-        this.productId = FormatUtil.optionalField(productId, BinFileDetailFieldInfo.PRODUCT_ID);
+        mutableProfile().productId = FormatUtil.optionalField(productId, BinFileDetailFieldInfo.PRODUCT_ID);
     }
 
     public RegulatorIndicator getRegulatorIndicator() {
-        return regulatorIndicator;
+        return profile.regulatorIndicator;
     }
 
     public void setRegulatorIndicator(final String regulatorIndicator) {
@@ -339,11 +460,11 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setRegulatorIndicator(final RegulatorIndicator regulatorIndicator) {
-        this.regulatorIndicator = regulatorIndicator;
+        mutableProfile().regulatorIndicator = regulatorIndicator;
     }
 
     public VisaProductSubType getVisaProductSubtype() {
-        return visaProductSubtype;
+        return profile.visaProductSubtype;
     }
 
     public void setVisaProductSubtype(final String visaProductSubtype) {
@@ -351,11 +472,11 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setVisaProductSubtype(final VisaProductSubType visaProductSubtype) {
-        this.visaProductSubtype = visaProductSubtype;
+        mutableProfile().visaProductSubtype = visaProductSubtype;
     }
 
     public VisaLargeTicketIndicator getVisaLargeTicketIndicator() {
-        return visaLargeTicketIndicator;
+        return profile.visaLargeTicketIndicator;
     }
 
     public void setVisaLargeTicketIndicator(final String visaLargeTicketIndicator) {
@@ -363,11 +484,11 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setVisaLargeTicketIndicator(final VisaLargeTicketIndicator visaLargeTicketIndicator) {
-        this.visaLargeTicketIndicator = visaLargeTicketIndicator;
+        mutableProfile().visaLargeTicketIndicator = visaLargeTicketIndicator;
     }
 
     public YesNoAnswer getAccountLevelProcessingIndicator() {
-        return accountLevelProcessingIndicator;
+        return profile.accountLevelProcessingIndicator;
     }
 
     public void setAccountLevelProcessingIndicator(final String accountLevelProcessingIndicator) {
@@ -375,11 +496,11 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setAccountLevelProcessingIndicator(final YesNoAnswer accountLevelProcessingIndicator) {
-        this.accountLevelProcessingIndicator = accountLevelProcessingIndicator;
+        mutableProfile().accountLevelProcessingIndicator = accountLevelProcessingIndicator;
     }
 
     public AccountFundSource getAccountFundSource() {
-        return accountFundSource;
+        return profile.accountFundSource;
     }
 
     public void setAccountFundSource(final String accountFundSource) {
@@ -387,11 +508,11 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setAccountFundSource(final AccountFundSource accountFundSource) {
-        this.accountFundSource = accountFundSource;
+        mutableProfile().accountFundSource = accountFundSource;
     }
 
     public CardClass getCardClass() {
-        return cardClass;
+        return profile.cardClass;
     }
 
     public void setCardClass(final String cardClass) {
@@ -399,35 +520,35 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setCardClass(final CardClass cardClass) {
-        this.cardClass = cardClass;
+        mutableProfile().cardClass = cardClass;
     }
 
     public int getPanLengthMin() {
-        return panLengthMin;
+        return profile.panLengthMin;
     }
 
     public void setPanLengthMin(final int panLengthMin) {
-        this.panLengthMin = FormatUtil.optionalField(panLengthMin, BinFileDetailFieldInfo.PAN_LENGTH_MIN);
+        mutableProfile().panLengthMin = FormatUtil.optionalField(panLengthMin, BinFileDetailFieldInfo.PAN_LENGTH_MIN);
     }
 
     public int getPanLengthMax() {
-        return panLengthMax;
+        return profile.panLengthMax;
     }
 
     public void setPanLengthMax(final int panLengthMax) {
-        this.panLengthMax = FormatUtil.optionalField(panLengthMax, BinFileDetailFieldInfo.PAN_LENGTH_MAX);
+        mutableProfile().panLengthMax = FormatUtil.optionalField(panLengthMax, BinFileDetailFieldInfo.PAN_LENGTH_MAX);
     }
 
     public YesNoAnswer getTokenIndicator() {
-        return tokenIndicator;
+        return profile.tokenIndicator;
     }
 
     public void setTokenIndicator(final YesNoAnswer tokenIndicator) {
-        this.tokenIndicator = tokenIndicator;
+        mutableProfile().tokenIndicator = tokenIndicator;
     }
 
     public IssuingNetwork getIssuingNetwork() {
-        return issuingNetwork;
+        return profile.issuingNetwork;
     }
 
     public void setIssuingNetwork(final String issuingNetwork) {
@@ -435,20 +556,20 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setIssuingNetwork(final IssuingNetwork issuingNetwork) {
-        this.issuingNetwork = issuingNetwork;
+        mutableProfile().issuingNetwork = issuingNetwork;
     }
 
     public CurrencyCode getCardholderBillingCurrency() {
-        return cardholderBillingCurrency;
+        return profile.cardholderBillingCurrency;
     }
 
     public void setCardholderBillingCurrency(final String cardholderBillingCurrency) {
-        this.cardholderBillingCurrency = CurrencyCode.getByCodeIgnoreCase(
+        mutableProfile().cardholderBillingCurrency = CurrencyCode.getByCodeIgnoreCase(
                 FormatUtil.optionalField(cardholderBillingCurrency, BinFileDetailFieldInfo.CARDHOLDER_BILLING_CURRENCY));
     }
 
     public AccountFundSourceSubType getAccountFundSourceSubType() {
-        return accountFundSourceSubType;
+        return profile.accountFundSourceSubType;
     }
 
     public void setAccountFundSourceSubType(final String accountFundSourceSubType) {
@@ -456,11 +577,11 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setAccountFundSourceSubType(final AccountFundSourceSubType accountFundSourceSubType) {
-        this.accountFundSourceSubType = accountFundSourceSubType;
+        mutableProfile().accountFundSourceSubType = accountFundSourceSubType;
     }
 
     public MoneySendIndicator getMoneySendIndicator() {
-        return moneySendIndicator;
+        return profile.moneySendIndicator;
     }
 
     public void setMoneySendIndicator(final String moneySendIndicator) {
@@ -468,11 +589,11 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setMoneySendIndicator(final MoneySendIndicator moneySendIndicator) {
-        this.moneySendIndicator = moneySendIndicator;
+        mutableProfile().moneySendIndicator = moneySendIndicator;
     }
 
     public OriginalCreditIndicator getOriginalCreditMoneyTransferIndicator() {
-        return originalCreditMoneyTransferIndicator;
+        return profile.originalCreditMoneyTransferIndicator;
     }
 
     public void setOriginalCreditMoneyTransferIndicator(final String originalCreditMoneyTransferIndicator) {
@@ -482,11 +603,11 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setOriginalCreditMoneyTransferIndicator(final OriginalCreditIndicator originalCreditMoneyTransferIndicator) {
-        this.originalCreditMoneyTransferIndicator = originalCreditMoneyTransferIndicator;
+        mutableProfile().originalCreditMoneyTransferIndicator = originalCreditMoneyTransferIndicator;
     }
 
     public OriginalCreditIndicator getOriginalCreditOnlineGamblingIndicator() {
-        return originalCreditOnlineGamblingIndicator;
+        return profile.originalCreditOnlineGamblingIndicator;
     }
 
     public void setOriginalCreditOnlineGamblingIndicator(final String originalCreditOnlineGamblingIndicator) {
@@ -496,11 +617,11 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setOriginalCreditOnlineGamblingIndicator(final OriginalCreditIndicator originalCreditOnlineGamblingIndicator) {
-        this.originalCreditOnlineGamblingIndicator = originalCreditOnlineGamblingIndicator;
+        mutableProfile().originalCreditOnlineGamblingIndicator = originalCreditOnlineGamblingIndicator;
     }
 
     public FastFunds getFastFunds() {
-        return fastFunds;
+        return profile.fastFunds;
     }
 
     public void setFastFunds(final String fastFunds) {
@@ -508,11 +629,11 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setFastFunds(final FastFunds fastFunds) {
-        this.fastFunds = fastFunds;
+        mutableProfile().fastFunds = fastFunds;
     }
 
     public OriginalCreditIndicator getOriginalCreditTransactionIndicator() {
-        return originalCreditTransactionIndicator;
+        return profile.originalCreditTransactionIndicator;
     }
 
     public void setOriginalCreditTransactionIndicator(final String originalCreditTransactionIndicator) {
@@ -522,6 +643,6 @@ public class BinDetailRecord extends BinRecord {
     }
 
     public void setOriginalCreditTransactionIndicator(final OriginalCreditIndicator originalCreditTransactionIndicator) {
-        this.originalCreditTransactionIndicator = originalCreditTransactionIndicator;
+        mutableProfile().originalCreditTransactionIndicator = originalCreditTransactionIndicator;
     }
 }
@@ -0,0 +1,169 @@
+package home.tong.card.bin.file.parser;
+
+import home.tong.card.bin.enums.RecordTypeIndicator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Walks the records of a BIN file in its bytes, mapped into memory.
+ * <p>
+ * A BIN file is ASCII with a record a line, so a record is found by looking for the end of its line in the mapped
+ * bytes and its type is the first byte, without anything being decoded. {@link #record()} hands out the bytes of
+ * the current record as a view of the mapping, and only {@link #line()} makes a string of them.
+ * <p>
+ * The file is mapped a window at a time, the next window starting at the first record the last one did not hold
+ * whole, so a large file does not take address space for all of it at once. Mapped windows are unmapped by the
+ * garbage collector once nothing refers to them, so a record handed out stays valid after the reader moved on.
+ * A reader is not thread safe.
+ */
+public final class BinFileReader implements Closeable {
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private MappedByteBuffer window;
+    // offset of the window in the file
+    private long windowStart;
+    // offsets in the window of the current record and of the next one
+    private int recordStart;
+    private int recordEnd;
+    private int next;
+
+    private BinFileReader(final FileChannel channel, final int windowSize) throws IOException {
+        this.channel = channel;
+        this.windowSize = windowSize;
+        size = channel.size();
+        map(0);
+    }
+
+    public static BinFileReader open(final Path file) throws IOException {
+        return open(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize bytes of the file mapped at a time, at least the length of the longest record
+     */
+    public static BinFileReader open(final Path file, final int windowSize) throws IOException {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive, not " + windowSize);
+        }
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new BinFileReader(channel, windowSize);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to the next record, passing over empty lines
+     *
+     * @return false at the end of the file
+     * @throws IOException if a record is longer than the window
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            int end = indexOfLineFeed(next);
+            if (end < 0 && windowStart + window.limit() < size) {
+                // the record goes on past the window, map the next window from its start
+                map(windowStart + next);
+                end = indexOfLineFeed(0);
+                if (end < 0 && windowStart + window.limit() < size) {
+                    throw new IOException("BIN file record at byte " + windowStart + " is longer than the window of "
+                            + windowSize + " bytes");
+                }
+            }
+            if (end < 0) {
+                if (next == window.limit()) {
+                    recordStart = next;
+                    recordEnd = next;
+                    return false;
+                }
+                // the last record of a file that does not end with a line feed
+                end = window.limit();
+            }
+            recordStart = next;
+            next = end < window.limit() ? end + 1 : end;
+            recordEnd = end > recordStart && window.get(end - 1) == CARRIAGE_RETURN ? end - 1 : end;
+            if (recordEnd > recordStart) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Type of the current record by its first byte
+     */
+    public RecordTypeIndicator recordType() {
+        return recordEnd > recordStart ? RecordTypeIndicator.fromChar((char) window.get(recordStart)) : RecordTypeIndicator.DEFAULT;
+    }
+
+    public int recordLength() {
+        return recordEnd - recordStart;
+    }
+
+    /**
+     * The bytes of the current record without its line end, a read only view of the mapped file
+     */
+    public ByteBuffer record() {
+        final ByteBuffer record = window.asReadOnlyBuffer();
+        record.limit(recordEnd);
+        record.position(recordStart);
+        return record.slice();
+    }
+
+    /**
+     * The current record as a string, for the parsers that take one
+     */
+    public String line() {
+        final ByteBuffer record = record();
+        final byte[] bytes = new byte[record.remaining()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Bytes of the file up to the end of the current record
+     */
+    public long position() {
+        return windowStart + next;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void map(final long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+        recordStart = 0;
+        recordEnd = 0;
+        next = 0;
+    }
+
+    private int indexOfLineFeed(final int from) {
+        final int limit = window.limit();
+        for (int i = from; i < limit; i++) {
+            if (window.get(i) == LINE_FEED) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,118 @@
+package home.tong.card.bin.file.parser;
+
+import home.tong.card.bin.enums.AccountFundSource;
+import home.tong.card.bin.enums.AccountFundSourceSubType;
+import home.tong.card.bin.enums.CardClass;
+import home.tong.card.bin.enums.DetailCardIndicator;
+import home.tong.card.bin.enums.DetailCardProduct;
+import home.tong.card.bin.enums.FastFunds;
+import home.tong.card.bin.enums.FsaIndicator;
+import home.tong.card.bin.enums.IssuingNetwork;
+import home.tong.card.bin.enums.MoneySendIndicator;
+import home.tong.card.bin.enums.OriginalCreditIndicator;
+import home.tong.card.bin.enums.PrepaidIndicator;
+import home.tong.card.bin.enums.RegulatorIndicator;
+import home.tong.card.bin.enums.VisaLargeTicketIndicator;
+import home.tong.card.bin.enums.VisaProductSubType;
+import home.tong.card.bin.enums.YesNoAnswer;
+import org.springframework.lang.Nullable;
+
+import java.util.function.Function;
+
+/**
+ * Enum attributes of a BIN detail record packed into one long, see {@link BinDetailRecord#getFlags()}.
+ * <p>
+ * Every attribute takes the bits it needs for its ordinal plus one, 0 standing for null. A rule asking several
+ * yes or no questions about a record is then one compare of the flags, masked with the masks of the attributes,
+ * with the bits of the values it expects:
+ * <pre>
+ * final long mask = BinFlag.PREPAID_INDICATOR.mask() | BinFlag.FAST_FUNDS.mask();
+ * final long expected = BinFlag.PREPAID_INDICATOR.bits(PrepaidIndicator.PREPAID_CARD) | BinFlag.FAST_FUNDS.bits(FastFunds.DOMESTIC);
+ * tree.get(pan, mask, expected);
+ * </pre>
+ */
+public enum BinFlag {
+    DETAIL_CARD_PRODUCT(DetailCardProduct.values(), BinDetailRecord::getDetailCardProduct),
+    DETAIL_CARD_INDICATOR(DetailCardIndicator.values(), BinDetailRecord::getDetailCardIndicator),
+    FSA_INDICATOR(FsaIndicator.values(), BinDetailRecord::getFsaIndicator),
+    PREPAID_INDICATOR(PrepaidIndicator.values(), BinDetailRecord::getPrepaidIndicator),
+    REGULATOR_INDICATOR(RegulatorIndicator.values(), BinDetailRecord::getRegulatorIndicator),
+    VISA_PRODUCT_SUBTYPE(VisaProductSubType.values(), BinDetailRecord::getVisaProductSubtype),
+    VISA_LARGE_TICKET_INDICATOR(VisaLargeTicketIndicator.values(), BinDetailRecord::getVisaLargeTicketIndicator),
+    ACCOUNT_LEVEL_PROCESSING_INDICATOR(YesNoAnswer.values(), BinDetailRecord::getAccountLevelProcessingIndicator),
+    ACCOUNT_FUND_SOURCE(AccountFundSource.values(), BinDetailRecord::getAccountFundSource),
+    CARD_CLASS(CardClass.values(), BinDetailRecord::getCardClass),
+    TOKEN_INDICATOR(YesNoAnswer.values(), BinDetailRecord::getTokenIndicator),
+    ISSUING_NETWORK(IssuingNetwork.values(), BinDetailRecord::getIssuingNetwork),
+    ACCOUNT_FUND_SOURCE_SUB_TYPE(AccountFundSourceSubType.values(), BinDetailRecord::getAccountFundSourceSubType),
+    MONEY_SEND_INDICATOR(MoneySendIndicator.values(), BinDetailRecord::getMoneySendIndicator),
+    ORIGINAL_CREDIT_MONEY_TRANSFER_INDICATOR(OriginalCreditIndicator.values(), BinDetailRecord::getOriginalCreditMoneyTransferIndicator),
+    ORIGINAL_CREDIT_ONLINE_GAMBLING_INDICATOR(OriginalCreditIndicator.values(), BinDetailRecord::getOriginalCreditOnlineGamblingIndicator),
+    FAST_FUNDS(FastFunds.values(), BinDetailRecord::getFastFunds),
+    ORIGINAL_CREDIT_TRANSACTION_INDICATOR(OriginalCreditIndicator.values(), BinDetailRecord::getOriginalCreditTransactionIndicator);
+
+    private final Enum<?>[] values;
+    private final Function<BinDetailRecord, Enum<?>> getter;
+    private int shift;
+    private int width;
+
+    static {
+        int shift = 0;
+        for (final BinFlag flag : values()) {
+            flag.shift = shift;
+            flag.width = Integer.SIZE - Integer.numberOfLeadingZeros(flag.values.length);
+            shift += flag.width;
+        }
+        // the sign bit stays clear, a negative word means the flags of a record are not computed yet
+        if (shift >= Long.SIZE) {
+            throw new IllegalStateException("BIN flags take " + shift + " bits, more than fit in a long");
+        }
+    }
+
+    BinFlag(final Enum<?>[] values, final Function<BinDetailRecord, Enum<?>> getter) {
+        this.values = values;
+        this.getter = getter;
+    }
+
+    /**
+     * The bits of the attribute in the flags
+     */
+    public long mask() {
+        return ((1L << width) - 1) << shift;
+    }
+
+    /**
+     * The bits of the attribute having the value
+     *
+     * @param value a value of the enum of the attribute, null for none
+     */
+    public long bits(@Nullable final Enum<?> value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value.getDeclaringClass() != values.getClass().getComponentType()) {
+            throw new IllegalArgumentException(value.getDeclaringClass().getSimpleName() + " is not a value of " + this);
+        }
+        return (value.ordinal() + 1L) << shift;
+    }
+
+    /**
+     * The value of the attribute in the flags, null if it has none
+     */
+    @Nullable
+    public Enum<?> valueOf(final long flags) {
+        final int ordinal = (int) ((flags & mask()) >>> shift) - 1;
+        return ordinal < 0 ? null : values[ordinal];
+    }
+
+    /**
+     * Packs the enum attributes of the record
+     */
+    public static long flags(final BinDetailRecord record) {
+        long flags = 0;
+        for (final BinFlag flag : values()) {
+            flags |= flag.bits(flag.getter.apply(record));
+        }
+        return flags;
+    }
+}
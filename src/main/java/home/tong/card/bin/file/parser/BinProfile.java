@@ -0,0 +1,262 @@
+package home.tong.card.bin.file.parser;
+
+import com.neovisionaries.i18n.CountryCode;
+import com.neovisionaries.i18n.CurrencyCode;
+import home.tong.card.bin.enums.AccountFundSource;
+import home.tong.card.bin.enums.AccountFundSourceSubType;
+import home.tong.card.bin.enums.CardClass;
+import home.tong.card.bin.enums.DetailCardIndicator;
+import home.tong.card.bin.enums.DetailCardProduct;
+import home.tong.card.bin.enums.FastFunds;
+import home.tong.card.bin.enums.FsaIndicator;
+import home.tong.card.bin.enums.IssuingNetwork;
+import home.tong.card.bin.enums.MoneySendIndicator;
+import home.tong.card.bin.enums.OriginalCreditIndicator;
+import home.tong.card.bin.enums.PrepaidIndicator;
+import home.tong.card.bin.enums.RegulatorIndicator;
+import home.tong.card.bin.enums.VisaLargeTicketIndicator;
+import home.tong.card.bin.enums.VisaProductSubType;
+import home.tong.card.bin.enums.YesNoAnswer;
+import org.springframework.lang.Nullable;
+
+/**
+ * Attributes of a {@link BinDetailRecord} other than its BIN range.
+ * <p>
+ * Thousands of ranges of a BIN file have the same attributes. {@link BinProfilePool} gives the records parsed
+ * from lines with the same attributes a single shared profile, which also keeps the part of the line after the
+ * BINs so the line can be put together again. A shared profile is never changed, the setters of a record copy it
+ * first.
+ */
+public final class BinProfile {
+    int binLength;
+    int binDetailPan;
+    String issuerBankName;
+    CountryCode countryCode;
+    DetailCardProduct detailCardProduct = DetailCardProduct.DEFAULT;
+    DetailCardIndicator detailCardIndicator = DetailCardIndicator.DEFAULT;
+    String issuerUpdateYear;
+    String issuerUpdateMonth;
+    String issuerUpdateDay;
+    String debitNetworkPinlessIndicator;
+    String ebtState;
+    String debitSignatureNetworkParticipant;
+    FsaIndicator fsaIndicator = FsaIndicator.DEFAULT;
+    PrepaidIndicator prepaidIndicator = PrepaidIndicator.DEFAULT;
+    String productId;
+    RegulatorIndicator regulatorIndicator = RegulatorIndicator.ISS_NONREGULATED;
+    VisaProductSubType visaProductSubtype = VisaProductSubType.DEFAULT;
+    VisaLargeTicketIndicator visaLargeTicketIndicator = VisaLargeTicketIndicator.DEFAULT;
+    YesNoAnswer accountLevelProcessingIndicator = YesNoAnswer.NEITHER;
+    AccountFundSource accountFundSource = AccountFundSource.DEFAULT;
+    CardClass cardClass = CardClass.DEFAULT;
+    int panLengthMin;
+    int panLengthMax;
+    YesNoAnswer tokenIndicator = YesNoAnswer.NEITHER;
+    IssuingNetwork issuingNetwork = IssuingNetwork.DEFAULT;
+    CurrencyCode cardholderBillingCurrency;
+    AccountFundSourceSubType accountFundSourceSubType = AccountFundSourceSubType.NOT_APPLICABLE;
+    MoneySendIndicator moneySendIndicator = MoneySendIndicator.DEFAULT;
+    OriginalCreditIndicator originalCreditMoneyTransferIndicator = OriginalCreditIndicator.DEFAULT;
+    OriginalCreditIndicator originalCreditOnlineGamblingIndicator = OriginalCreditIndicator.DEFAULT;
+    FastFunds fastFunds = FastFunds.NO_PARTICIPATION;
+    OriginalCreditIndicator originalCreditTransactionIndicator = OriginalCreditIndicator.DEFAULT;
+
+    // the enum attributes packed by BinFlag, negative until computed
+    long flags = -1;
+    // set while the attributes are the ones parsed from the line of the record
+    boolean parsed;
+    // set once the profile is shared by the records of a pool
+    boolean shared;
+    // the part of the BIN file line after the BINs, kept in the Latin-1 store of the pool
+    @Nullable
+    BinProfilePool pool;
+    int tailOffset;
+    int tailLength;
+
+    BinProfile() {
+    }
+
+    /**
+     * A profile the record owns, with the same attributes and line
+     */
+    BinProfile copy() {
+        final BinProfile copy = new BinProfile();
+        copy.binLength = binLength;
+        copy.binDetailPan = binDetailPan;
+        copy.issuerBankName = issuerBankName;
+        copy.countryCode = countryCode;
+        copy.detailCardProduct = detailCardProduct;
+        copy.detailCardIndicator = detailCardIndicator;
+        copy.issuerUpdateYear = issuerUpdateYear;
+        copy.issuerUpdateMonth = issuerUpdateMonth;
+        copy.issuerUpdateDay = issuerUpdateDay;
+        copy.debitNetworkPinlessIndicator = debitNetworkPinlessIndicator;
+        copy.ebtState = ebtState;
+        copy.debitSignatureNetworkParticipant = debitSignatureNetworkParticipant;
+        copy.fsaIndicator = fsaIndicator;
+        copy.prepaidIndicator = prepaidIndicator;
+        copy.productId = productId;
+        copy.regulatorIndicator = regulatorIndicator;
+        copy.visaProductSubtype = visaProductSubtype;
+        copy.visaLargeTicketIndicator = visaLargeTicketIndicator;
+        copy.accountLevelProcessingIndicator = accountLevelProcessingIndicator;
+        copy.accountFundSource = accountFundSource;
+        copy.cardClass = cardClass;
+        copy.panLengthMin = panLengthMin;
+        copy.panLengthMax = panLengthMax;
+        copy.tokenIndicator = tokenIndicator;
+        copy.issuingNetwork = issuingNetwork;
+        copy.cardholderBillingCurrency = cardholderBillingCurrency;
+        copy.accountFundSourceSubType = accountFundSourceSubType;
+        copy.moneySendIndicator = moneySendIndicator;
+        copy.originalCreditMoneyTransferIndicator = originalCreditMoneyTransferIndicator;
+        copy.originalCreditOnlineGamblingIndicator = originalCreditOnlineGamblingIndicator;
+        copy.fastFunds = fastFunds;
+        copy.originalCreditTransactionIndicator = originalCreditTransactionIndicator;
+        copy.flags = flags;
+        copy.pool = pool;
+        copy.tailOffset = tailOffset;
+        copy.tailLength = tailLength;
+        return copy;
+    }
+
+    /**
+     * The part of the BIN file line after the BINs, null if the profile was not interned from a line
+     */
+    @Nullable
+    String tail() {
+        return pool == null ? null : pool.tail(tailOffset, tailLength);
+    }
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    public int getBinLength() {
+        return binLength;
+    }
+
+    public int getBinDetailPan() {
+        return binDetailPan;
+    }
+
+    public String getIssuerBankName() {
+        return issuerBankName;
+    }
+
+    public CountryCode getCountryCode() {
+        return countryCode;
+    }
+
+    public DetailCardProduct getDetailCardProduct() {
+        return detailCardProduct;
+    }
+
+    public DetailCardIndicator getDetailCardIndicator() {
+        return detailCardIndicator;
+    }
+
+    public String getIssuerUpdateYear() {
+        return issuerUpdateYear;
+    }
+
+    public String getIssuerUpdateMonth() {
+        return issuerUpdateMonth;
+    }
+
+    public String getIssuerUpdateDay() {
+        return issuerUpdateDay;
+    }
+
+    public String getDebitNetworkPinlessIndicator() {
+        return debitNetworkPinlessIndicator;
+    }
+
+    public String getEbtState() {
+        return ebtState;
+    }
+
+    public String getDebitSignatureNetworkParticipant() {
+        return debitSignatureNetworkParticipant;
+    }
+
+    public FsaIndicator getFsaIndicator() {
+        return fsaIndicator;
+    }
+
+    public PrepaidIndicator getPrepaidIndicator() {
+        return prepaidIndicator;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public RegulatorIndicator getRegulatorIndicator() {
+        return regulatorIndicator;
+    }
+
+    public VisaProductSubType getVisaProductSubtype() {
+        return visaProductSubtype;
+    }
+
+    public VisaLargeTicketIndicator getVisaLargeTicketIndicator() {
+        return visaLargeTicketIndicator;
+    }
+
+    public YesNoAnswer getAccountLevelProcessingIndicator() {
+        return accountLevelProcessingIndicator;
+    }
+
+    public AccountFundSource getAccountFundSource() {
+        return accountFundSource;
+    }
+
+    public CardClass getCardClass() {
+        return cardClass;
+    }
+
+    public int getPanLengthMin() {
+        return panLengthMin;
+    }
+
+    public int getPanLengthMax() {
+        return panLengthMax;
+    }
+
+    public YesNoAnswer getTokenIndicator() {
+        return tokenIndicator;
+    }
+
+    public IssuingNetwork getIssuingNetwork() {
+        return issuingNetwork;
+    }
+
+    public CurrencyCode getCardholderBillingCurrency() {
+        return cardholderBillingCurrency;
+    }
+
+    public AccountFundSourceSubType getAccountFundSourceSubType() {
+        return accountFundSourceSubType;
+    }
+
+    public MoneySendIndicator getMoneySendIndicator() {
+        return moneySendIndicator;
+    }
+
+    public OriginalCreditIndicator getOriginalCreditMoneyTransferIndicator() {
+        return originalCreditMoneyTransferIndicator;
+    }
+
+    public OriginalCreditIndicator getOriginalCreditOnlineGamblingIndicator() {
+        return originalCreditOnlineGamblingIndicator;
+    }
+
+    public FastFunds getFastFunds() {
+        return fastFunds;
+    }
+
+    public OriginalCreditIndicator getOriginalCreditTransactionIndicator() {
+        return originalCreditTransactionIndicator;
+    }
+}
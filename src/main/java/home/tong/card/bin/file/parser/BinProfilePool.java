@@ -0,0 +1,335 @@
+package home.tong.card.bin.file.parser;
+
+import org.springframework.lang.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interns the attributes of BIN detail records into shared {@link BinProfile}s.
+ * <p>
+ * Records parsed from lines that are the same after the BINs get the same profile, and their lines are dropped.
+ * The part of the line after the BINs is kept once per profile, in a store of Latin-1 bytes, and the strings of
+ * the profiles are deduplicated. A record then takes little more than its BINs and a reference to its profile.
+ * Records that were not parsed from a line, or were changed since, and lines with characters that are not Latin-1
+ * are left as they are.
+ * <p>
+ * A pool is meant for the records of one BIN file. It is thread safe. The profiles are split into stripes by hash,
+ * each with a lock of its own, so the threads parsing the chunks of a file seldom wait for each other. The store is
+ * only ever appended to, in chunks that are never moved, so the lines of interned records are read back without
+ * taking a lock.
+ */
+public final class BinProfilePool {
+    private static final int INITIAL_CAPACITY = 1024;
+    // stripes of the profiles, picked by the highest bits of the hash, the lowest bits index the stripe
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    // a part of a line is kept in one chunk, its offset is the index of the chunk and the offset in the chunk
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    // Latin-1 bytes of the part of the lines after the BINs, one per profile. The bytes of a part are written once,
+    // before its profile is shared, and a new chunk is published by replacing the array
+    private volatile byte[][] chunks = {new byte[CHUNK_SIZE]};
+    // guards the end of the store, a part is written after its bytes are taken
+    private final Object storeLock = new Object();
+    // offset of the next part in the store
+    private int storeEnd;
+    private int storeSize;
+    private final ConcurrentMap<String, String> strings = new ConcurrentHashMap<>();
+    private final LongAdder interned = new LongAdder();
+
+    public BinProfilePool() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Gives the record the shared profile of its attributes, returns the record
+     */
+    public BinDetailRecord intern(final BinDetailRecord record) {
+        if (!record.getProfile().parsed || record.getProfile().shared) {
+            return record;
+        }
+        final String line = record.getRecord();
+        final int from = BinDetailRecord.BOUNDS_LENGTH;
+        if (line == null || line.length() < from || !isLatin1(line, from) || !line.startsWith(record.bounds())) {
+            return record;
+        }
+        final int hash = hash(line, from);
+        final Stripe stripe = stripe(hash);
+        final BinProfile profile;
+        synchronized (stripe) {
+            int index = hash & (stripe.profiles.length - 1);
+            BinProfile found;
+            while ((found = stripe.profiles[index]) != null && (stripe.hashes[index] != hash || !tailEquals(found, line, from))) {
+                index = (index + 1) & (stripe.profiles.length - 1);
+            }
+            profile = found == null ? stripe.put(index, hash, add(record, line, from)) : found;
+        }
+        record.share(profile);
+        interned.increment();
+        return record;
+    }
+
+    /**
+     * Number of distinct profiles
+     */
+    public int size() {
+        int size = 0;
+        for (final Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Number of records given a profile of the pool
+     */
+    public long interned() {
+        return interned.sum();
+    }
+
+    /**
+     * Bytes taken by the parts of the lines kept by the profiles
+     */
+    public int storeSize() {
+        synchronized (storeLock) {
+            return storeSize;
+        }
+    }
+
+    /**
+     * The profile of the attributes in bytes {@code from} to {@code to} of a detail line, the part after the BINs,
+     * null if the pool has none yet. Used by a {@link BinDetailDecoder} to skip decoding attributes it has seen.
+     *
+     * @param hash {@link #hash(ByteBuffer, int, int)} of the bytes
+     */
+    @Nullable
+    BinProfile find(final ByteBuffer line, final int from, final int to, final int hash) {
+        final Stripe stripe = stripe(hash);
+        final BinProfile profile;
+        synchronized (stripe) {
+            profile = stripe.profiles[stripe.indexOf(this, line, from, to, hash)];
+        }
+        if (profile != null) {
+            interned.increment();
+        }
+        return profile;
+    }
+
+    /**
+     * Shares the profile of a record decoded from the bytes of a detail line by a {@link BinDetailDecoder}
+     *
+     * @return the profile of the record, or the one of the same attributes that another thread added first
+     */
+    BinProfile add(final BinDetailRecord record, final ByteBuffer line, final int from, final int to, final int hash) {
+        final Stripe stripe = stripe(hash);
+        BinProfile profile;
+        synchronized (stripe) {
+            final int index = stripe.indexOf(this, line, from, to, hash);
+            profile = stripe.profiles[index];
+            if (profile == null) {
+                final int length = to - from;
+                final int offset = reserve(length);
+                final byte[] chunk = chunks[offset >>> CHUNK_SHIFT];
+                for (int i = 0; i < length; i++) {
+                    chunk[(offset & CHUNK_SIZE - 1) + i] = line.get(from + i);
+                }
+                profile = stripe.put(index, hash, share(record, offset, length));
+            }
+        }
+        interned.increment();
+        return profile;
+    }
+
+    /**
+     * Hash of the bytes of the part of a detail line after the BINs, the same as the hash of its Latin-1 string
+     */
+    static int hash(final ByteBuffer line, final int from, final int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + (line.get(i) & 0xFF);
+        }
+        // spread the higher bits into the index
+        return hash ^ hash >>> 16;
+    }
+
+    /**
+     * The part of a line kept for a profile. Not synchronized: the bytes were written before the profile was shared,
+     * and the record of the profile was safely published to the caller after that.
+     */
+    String tail(final int offset, final int length) {
+        return new String(chunks[offset >>> CHUNK_SHIFT], offset & CHUNK_SIZE - 1, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private Stripe stripe(final int hash) {
+        return stripes[hash >>> Integer.SIZE - STRIPE_BITS];
+    }
+
+    private BinProfile add(final BinDetailRecord record, final String line, final int from) {
+        final int length = line.length() - from;
+        final int offset = reserve(length);
+        final byte[] chunk = chunks[offset >>> CHUNK_SHIFT];
+        for (int i = 0; i < length; i++) {
+            chunk[(offset & CHUNK_SIZE - 1) + i] = (byte) line.charAt(from + i);
+        }
+        return share(record, offset, length);
+    }
+
+    /**
+     * Takes the bytes for a part at the end of the store, in a new chunk if the last one has no room for it.
+     * Nobody else writes to them, so the part is written after the lock of the store is released.
+     *
+     * @return offset of the part
+     */
+    private int reserve(final int length) {
+        synchronized (storeLock) {
+            int offset = storeEnd;
+            if ((offset & CHUNK_SIZE - 1) != 0 && (offset & CHUNK_SIZE - 1) + length > CHUNK_SIZE) {
+                offset = (offset >>> CHUNK_SHIFT) + 1 << CHUNK_SHIFT;
+            }
+            final int index = offset >>> CHUNK_SHIFT;
+            if (index == chunks.length) {
+                final byte[][] grown = Arrays.copyOf(chunks, index + 1);
+                // a part longer than a chunk gets one of its own
+                grown[index] = new byte[Math.max(CHUNK_SIZE, length)];
+                chunks = grown;
+            }
+            storeEnd = length > CHUNK_SIZE ? index + 1 << CHUNK_SHIFT : offset + length;
+            storeSize += length;
+            return offset;
+        }
+    }
+
+    /**
+     * Makes the profile of the record the shared one of the part of its line just put in the store
+     */
+    private BinProfile share(final BinDetailRecord record, final int offset, final int length) {
+        final BinProfile profile = record.getProfile();
+        profile.pool = this;
+        profile.tailOffset = offset;
+        profile.tailLength = length;
+
+        profile.issuerBankName = canonical(profile.issuerBankName);
+        profile.issuerUpdateYear = canonical(profile.issuerUpdateYear);
+        profile.issuerUpdateMonth = canonical(profile.issuerUpdateMonth);
+        profile.issuerUpdateDay = canonical(profile.issuerUpdateDay);
+        profile.debitNetworkPinlessIndicator = canonical(profile.debitNetworkPinlessIndicator);
+        profile.ebtState = canonical(profile.ebtState);
+        profile.debitSignatureNetworkParticipant = canonical(profile.debitSignatureNetworkParticipant);
+        profile.productId = canonical(profile.productId);
+        profile.flags = BinFlag.flags(record);
+        profile.shared = true;
+        return profile;
+    }
+
+    private String canonical(final String value) {
+        if (value == null) {
+            return null;
+        }
+        final String canonical = strings.putIfAbsent(value, value);
+        return canonical == null ? value : canonical;
+    }
+
+    private boolean tailEquals(final BinProfile profile, final String line, final int from) {
+        if (profile.tailLength != line.length() - from) {
+            return false;
+        }
+        final byte[] chunk = chunks[profile.tailOffset >>> CHUNK_SHIFT];
+        final int offset = profile.tailOffset & CHUNK_SIZE - 1;
+        for (int i = 0; i < profile.tailLength; i++) {
+            if ((chunk[offset + i] & 0xFF) != line.charAt(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean tailEquals(final BinProfile profile, final ByteBuffer line, final int from, final int to) {
+        if (profile.tailLength != to - from) {
+            return false;
+        }
+        final byte[] chunk = chunks[profile.tailOffset >>> CHUNK_SHIFT];
+        final int offset = profile.tailOffset & CHUNK_SIZE - 1;
+        for (int i = 0; i < profile.tailLength; i++) {
+            if (chunk[offset + i] != line.get(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(final String line, final int from) {
+        int hash = 0;
+        for (int i = from; i < line.length(); i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        // spread the higher bits into the index
+        return hash ^ hash >>> 16;
+    }
+
+    private static boolean isLatin1(final String line, final int from) {
+        for (int i = from; i < line.length(); i++) {
+            if (line.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Open addressing table of the profiles whose hashes have the same highest bits, guarded by its own monitor
+     */
+    private static final class Stripe {
+        private BinProfile[] profiles = new BinProfile[INITIAL_CAPACITY / STRIPES];
+        private int[] hashes = new int[INITIAL_CAPACITY / STRIPES];
+        private int size;
+
+        /**
+         * Index of the profile of the bytes, or of the empty slot where it goes
+         */
+        private int indexOf(final BinProfilePool pool, final ByteBuffer line, final int from, final int to, final int hash) {
+            int index = hash & (profiles.length - 1);
+            BinProfile profile;
+            while ((profile = profiles[index]) != null && (hashes[index] != hash || !pool.tailEquals(profile, line, from, to))) {
+                index = (index + 1) & (profiles.length - 1);
+            }
+            return index;
+        }
+
+        private BinProfile put(final int index, final int hash, final BinProfile profile) {
+            profiles[index] = profile;
+            hashes[index] = hash;
+            if (++size * 2 > profiles.length) {
+                rehash();
+            }
+            return profile;
+        }
+
+        private void rehash() {
+            final BinProfile[] oldProfiles = profiles;
+            final int[] oldHashes = hashes;
+            profiles = new BinProfile[oldProfiles.length * 2];
+            hashes = new int[oldHashes.length * 2];
+            for (int i = 0; i < oldProfiles.length; i++) {
+                if (oldProfiles[i] != null) {
+                    int index = oldHashes[i] & (profiles.length - 1);
+                    while (profiles[index] != null) {
+                        index = (index + 1) & (profiles.length - 1);
+                    }
+                    profiles[index] = oldProfiles[i];
+                    hashes[index] = oldHashes[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package home.tong.card.bin.file.parser;
+
+import com.neovisionaries.i18n.CountryCode;
+import com.neovisionaries.i18n.CurrencyCode;
+import home.tong.card.bin.enums.AccountFundSource;
+import home.tong.card.bin.enums.AccountFundSourceSubType;
+import home.tong.card.bin.enums.CardClass;
+import home.tong.card.bin.enums.DetailCardIndicator;
+import home.tong.card.bin.enums.DetailCardProduct;
+import home.tong.card.bin.enums.FastFunds;
+import home.tong.card.bin.enums.FsaIndicator;
+import home.tong.card.bin.enums.IssuingNetwork;
+import home.tong.card.bin.enums.MoneySendIndicator;
+import home.tong.card.bin.enums.OriginalCreditIndicator;
+import home.tong.card.bin.enums.PrepaidIndicator;
+import home.tong.card.bin.enums.RegulatorIndicator;
+import home.tong.card.bin.enums.VisaLargeTicketIndicator;
+import home.tong.card.bin.enums.VisaProductSubType;
+import home.tong.card.bin.enums.YesNoAnswer;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * BIN detail records stored column by column and addressed by row number.
+ * <p>
+ * Every attribute is kept in an array of its own: enums as byte ordinals, country and currency codes as short
+ * ordinals, small numbers as bytes and strings as ids into a dictionary of the distinct strings. A caller that
+ * only needs a few attributes, e.g. the prepaid indicator and the issuing network on the authorization path,
+ * reads them by row without a record being put together. The BINs are kept as strings and numbers, which is what
+ * lookups compare.
+ * <p>
+ * A search tree loaded with the {@link #views()} of the columns holds one small {@link BinRecordView} a row
+ * instead of a record, and {@link #row(BinDetailRecord)} turns what a lookup returns into the row. The views
+ * have the getters of a record, so code written against records keeps working.
+ */
+public final class BinRecordColumns {
+    private static final int NULL = -1;
+    private static final CountryCode[] COUNTRY_CODE_VALUES = CountryCode.values();
+    private static final DetailCardProduct[] DETAIL_CARD_PRODUCT_VALUES = DetailCardProduct.values();
+    private static final DetailCardIndicator[] DETAIL_CARD_INDICATOR_VALUES = DetailCardIndicator.values();
+    private static final FsaIndicator[] FSA_INDICATOR_VALUES = FsaIndicator.values();
+    private static final PrepaidIndicator[] PREPAID_INDICATOR_VALUES = PrepaidIndicator.values();
+    private static final RegulatorIndicator[] REGULATOR_INDICATOR_VALUES = RegulatorIndicator.values();
+    private static final VisaProductSubType[] VISA_PRODUCT_SUB_TYPE_VALUES = VisaProductSubType.values();
+    private static final VisaLargeTicketIndicator[] VISA_LARGE_TICKET_INDICATOR_VALUES = VisaLargeTicketIndicator.values();
+    private static final YesNoAnswer[] YES_NO_ANSWER_VALUES = YesNoAnswer.values();
+    private static final AccountFundSource[] ACCOUNT_FUND_SOURCE_VALUES = AccountFundSource.values();
+    private static final CardClass[] CARD_CLASS_VALUES = CardClass.values();
+    private static final IssuingNetwork[] ISSUING_NETWORK_VALUES = IssuingNetwork.values();
+    private static final CurrencyCode[] CURRENCY_CODE_VALUES = CurrencyCode.values();
+    private static final AccountFundSourceSubType[] ACCOUNT_FUND_SOURCE_SUB_TYPE_VALUES = AccountFundSourceSubType.values();
+    private static final MoneySendIndicator[] MONEY_SEND_INDICATOR_VALUES = MoneySendIndicator.values();
+    private static final OriginalCreditIndicator[] ORIGINAL_CREDIT_INDICATOR_VALUES = OriginalCreditIndicator.values();
+    private static final FastFunds[] FAST_FUNDS_VALUES = FastFunds.values();
+
+    private final int size;
+    private final String[] lowBins;
+    private final String[] highBins;
+    private final long[] lowBinValues;
+    private final long[] highBinValues;
+    private final long[] flags;
+    private final byte[] binLengths;
+    private final byte[] binDetailPans;
+    private final int[] issuerBankNames;
+    private final short[] countryCodes;
+    private final byte[] detailCardProducts;
+    private final byte[] detailCardIndicators;
+    private final int[] issuerUpdateYears;
+    private final int[] issuerUpdateMonths;
+    private final int[] issuerUpdateDays;
+    private final int[] debitNetworkPinlessIndicators;
+    private final int[] ebtStates;
+    private final int[] debitSignatureNetworkParticipants;
+    private final byte[] fsaIndicators;
+    private final byte[] prepaidIndicators;
+    private final int[] productIds;
+    private final byte[] regulatorIndicators;
+    private final byte[] visaProductSubtypes;
+    private final byte[] visaLargeTicketIndicators;
+    private final byte[] accountLevelProcessingIndicators;
+    private final byte[] accountFundSources;
+    private final byte[] cardClass;
+    private final byte[] panLengthMins;
+    private final byte[] panLengthMaxs;
+    private final byte[] tokenIndicators;
+    private final byte[] issuingNetworks;
+    private final short[] cardholderBillingCurrencies;
+    private final byte[] accountFundSourceSubTypes;
+    private final byte[] moneySendIndicators;
+    private final byte[] originalCreditMoneyTransferIndicators;
+    private final byte[] originalCreditOnlineGamblingIndicators;
+    private final byte[] fastFunds;
+    private final byte[] originalCreditTransactionIndicators;
+    // distinct strings of all string columns
+    private final String[] strings;
+
+    private BinRecordColumns(final List<BinDetailRecord> records) {
+        size = records.size();
+        lowBins = new String[size];
+        highBins = new String[size];
+        lowBinValues = new long[size];
+        highBinValues = new long[size];
+        flags = new long[size];
+        binLengths = new byte[size];
+        binDetailPans = new byte[size];
+        issuerBankNames = new int[size];
+        countryCodes = new short[size];
+        detailCardProducts = new byte[size];
+        detailCardIndicators = new byte[size];
+        issuerUpdateYears = new int[size];
+        issuerUpdateMonths = new int[size];
+        issuerUpdateDays = new int[size];
+        debitNetworkPinlessIndicators = new int[size];
+        ebtStates = new int[size];
+        debitSignatureNetworkParticipants = new int[size];
+        fsaIndicators = new byte[size];
+        prepaidIndicators = new byte[size];
+        productIds = new int[size];
+        regulatorIndicators = new byte[size];
+        visaProductSubtypes = new byte[size];
+        visaLargeTicketIndicators = new byte[size];
+        accountLevelProcessingIndicators = new byte[size];
+        accountFundSources = new byte[size];
+        cardClass = new byte[size];
+        panLengthMins = new byte[size];
+        panLengthMaxs = new byte[size];
+        tokenIndicators = new byte[size];
+        issuingNetworks = new byte[size];
+        cardholderBillingCurrencies = new short[size];
+        accountFundSourceSubTypes = new byte[size];
+        moneySendIndicators = new byte[size];
+        originalCreditMoneyTransferIndicators = new byte[size];
+        originalCreditOnlineGamblingIndicators = new byte[size];
+        fastFunds = new byte[size];
+        originalCreditTransactionIndicators = new byte[size];
+
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<String> dictionary = new ArrayList<>();
+        for (int row = 0; row < size; row++) {
+            final BinDetailRecord record = records.get(row);
+            lowBins[row] = record.getLowBin();
+            // most ranges are a single BIN
+            highBins[row] = record.getLowBin() != null && record.getLowBin().equals(record.getHighBin()) ? lowBins[row] : record.getHighBin();
+            lowBinValues[row] = record.getLowBinValue();
+            highBinValues[row] = record.getHighBinValue();
+            flags[row] = record.getFlags();
+            binLengths[row] = (byte) record.getBinLength();
+            binDetailPans[row] = (byte) record.getBinDetailPan();
+            issuerBankNames[row] = id(record.getIssuerBankName(), ids, dictionary);
+            countryCodes[row] = (short) ordinal(record.getCountryCode());
+            detailCardProducts[row] = (byte) ordinal(record.getDetailCardProduct());
+            detailCardIndicators[row] = (byte) ordinal(record.getDetailCardIndicator());
+            issuerUpdateYears[row] = id(record.getIssuerUpdateYear(), ids, dictionary);
+            issuerUpdateMonths[row] = id(record.getIssuerUpdateMonth(), ids, dictionary);
+            issuerUpdateDays[row] = id(record.getIssuerUpdateDay(), ids, dictionary);
+            debitNetworkPinlessIndicators[row] = id(record.getDebitNetworkPinlessIndicator(), ids, dictionary);
+            ebtStates[row] = id(record.getEbtState(), ids, dictionary);
+            debitSignatureNetworkParticipants[row] = id(record.getDebitSignatureNetworkParticipant(), ids, dictionary);
+            fsaIndicators[row] = (byte) ordinal(record.getFsaIndicator());
+            prepaidIndicators[row] = (byte) ordinal(record.getPrepaidIndicator());
+            productIds[row] = id(record.getProductId(), ids, dictionary);
+            regulatorIndicators[row] = (byte) ordinal(record.getRegulatorIndicator());
+            visaProductSubtypes[row] = (byte) ordinal(record.getVisaProductSubtype());
+            visaLargeTicketIndicators[row] = (byte) ordinal(record.getVisaLargeTicketIndicator());
+            accountLevelProcessingIndicators[row] = (byte) ordinal(record.getAccountLevelProcessingIndicator());
+            accountFundSources[row] = (byte) ordinal(record.getAccountFundSource());
+            cardClass[row] = (byte) ordinal(record.getCardClass());
+            panLengthMins[row] = (byte) record.getPanLengthMin();
+            panLengthMaxs[row] = (byte) record.getPanLengthMax();
+            tokenIndicators[row] = (byte) ordinal(record.getTokenIndicator());
+            issuingNetworks[row] = (byte) ordinal(record.getIssuingNetwork());
+            cardholderBillingCurrencies[row] = (short) ordinal(record.getCardholderBillingCurrency());
+            accountFundSourceSubTypes[row] = (byte) ordinal(record.getAccountFundSourceSubType());
+            moneySendIndicators[row] = (byte) ordinal(record.getMoneySendIndicator());
+            originalCreditMoneyTransferIndicators[row] = (byte) ordinal(record.getOriginalCreditMoneyTransferIndicator());
+            originalCreditOnlineGamblingIndicators[row] = (byte) ordinal(record.getOriginalCreditOnlineGamblingIndicator());
+            fastFunds[row] = (byte) ordinal(record.getFastFunds());
+            originalCreditTransactionIndicators[row] = (byte) ordinal(record.getOriginalCreditTransactionIndicator());
+        }
+        strings = dictionary.toArray(new String[0]);
+    }
+
+    /**
+     * Copies the records into columns, the row of a record is its index in the list
+     */
+    public static BinRecordColumns of(final List<BinDetailRecord> records) {
+        return new BinRecordColumns(records);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * A read-only record reading the row
+     */
+    public BinRecordView view(final int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return new BinRecordView(this, row);
+    }
+
+    /**
+     * The views of all rows in row order, e.g. to load a search tree with
+     */
+    public Stream<BinDetailRecord> views() {
+        return IntStream.range(0, size).mapToObj(this::view);
+    }
+
+    /**
+     * The row of a view of these columns, -1 for null and for any other record
+     */
+    public int row(@Nullable final BinDetailRecord record) {
+        if (record instanceof BinRecordView && ((BinRecordView) record).columns == this) {
+            return ((BinRecordView) record).row;
+        }
+        return NULL;
+    }
+
+    /**
+     * Number of distinct strings in the string columns
+     */
+    public int dictionarySize() {
+        return strings.length;
+    }
+
+    public String getLowBin(final int row) {
+        return lowBins[row];
+    }
+
+    public String getHighBin(final int row) {
+        return highBins[row];
+    }
+
+    public long getLowBinValue(final int row) {
+        return lowBinValues[row];
+    }
+
+    public long getHighBinValue(final int row) {
+        return highBinValues[row];
+    }
+
+    /**
+     * The enum attributes of the row packed into one long, see {@link BinFlag}
+     */
+    public long getFlags(final int row) {
+        return flags[row];
+    }
+
+    public int getBinLength(final int row) {
+        return binLengths[row];
+    }
+
+    public int getBinDetailPan(final int row) {
+        return binDetailPans[row];
+    }
+
+    public String getIssuerBankName(final int row) {
+        return string(issuerBankNames[row]);
+    }
+
+    public CountryCode getCountryCode(final int row) {
+        return valueOf(COUNTRY_CODE_VALUES, countryCodes[row]);
+    }
+
+    public DetailCardProduct getDetailCardProduct(final int row) {
+        return valueOf(DETAIL_CARD_PRODUCT_VALUES, detailCardProducts[row]);
+    }
+
+    public DetailCardIndicator getDetailCardIndicator(final int row) {
+        return valueOf(DETAIL_CARD_INDICATOR_VALUES, detailCardIndicators[row]);
+    }
+
+    public String getIssuerUpdateYear(final int row) {
+        return string(issuerUpdateYears[row]);
+    }
+
+    public String getIssuerUpdateMonth(final int row) {
+        return string(issuerUpdateMonths[row]);
+    }
+
+    public String getIssuerUpdateDay(final int row) {
+        return string(issuerUpdateDays[row]);
+    }
+
+    public String getDebitNetworkPinlessIndicator(final int row) {
+        return string(debitNetworkPinlessIndicators[row]);
+    }
+
+    public String getEbtState(final int row) {
+        return string(ebtStates[row]);
+    }
+
+    public String getDebitSignatureNetworkParticipant(final int row) {
+        return string(debitSignatureNetworkParticipants[row]);
+    }
+
+    public FsaIndicator getFsaIndicator(final int row) {
+        return valueOf(FSA_INDICATOR_VALUES, fsaIndicators[row]);
+    }
+
+    public PrepaidIndicator getPrepaidIndicator(final int row) {
+        return valueOf(PREPAID_INDICATOR_VALUES, prepaidIndicators[row]);
+    }
+
+    public String getProductId(final int row) {
+        return string(productIds[row]);
+    }
+
+    public RegulatorIndicator getRegulatorIndicator(final int row) {
+        return valueOf(REGULATOR_INDICATOR_VALUES, regulatorIndicators[row]);
+    }
+
+    public VisaProductSubType getVisaProductSubtype(final int row) {
+        return valueOf(VISA_PRODUCT_SUB_TYPE_VALUES, visaProductSubtypes[row]);
+    }
+
+    public VisaLargeTicketIndicator getVisaLargeTicketIndicator(final int row) {
+        return valueOf(VISA_LARGE_TICKET_INDICATOR_VALUES, visaLargeTicketIndicators[row]);
+    }
+
+    public YesNoAnswer getAccountLevelProcessingIndicator(final int row) {
+        return valueOf(YES_NO_ANSWER_VALUES, accountLevelProcessingIndicators[row]);
+    }
+
+    public AccountFundSource getAccountFundSource(final int row) {
+        return valueOf(ACCOUNT_FUND_SOURCE_VALUES, accountFundSources[row]);
+    }
+
+    public CardClass getCardClass(final int row) {
+        return valueOf(CARD_CLASS_VALUES, cardClass[row]);
+    }
+
+    public int getPanLengthMin(final int row) {
+        return panLengthMins[row];
+    }
+
+    public int getPanLengthMax(final int row) {
+        return panLengthMaxs[row];
+    }
+
+    public YesNoAnswer getTokenIndicator(final int row) {
+        return valueOf(YES_NO_ANSWER_VALUES, tokenIndicators[row]);
+    }
+
+    public IssuingNetwork getIssuingNetwork(final int row) {
+        return valueOf(ISSUING_NETWORK_VALUES, issuingNetworks[row]);
+    }
+
+    public CurrencyCode getCardholderBillingCurrency(final int row) {
+        return valueOf(CURRENCY_CODE_VALUES, cardholderBillingCurrencies[row]);
+    }
+
+    public AccountFundSourceSubType getAccountFundSourceSubType(final int row) {
+        return valueOf(ACCOUNT_FUND_SOURCE_SUB_TYPE_VALUES, accountFundSourceSubTypes[row]);
+    }
+
+    public MoneySendIndicator getMoneySendIndicator(final int row) {
+        return valueOf(MONEY_SEND_INDICATOR_VALUES, moneySendIndicators[row]);
+    }
+
+    public OriginalCreditIndicator getOriginalCreditMoneyTransferIndicator(final int row) {
+        return valueOf(ORIGINAL_CREDIT_INDICATOR_VALUES, originalCreditMoneyTransferIndicators[row]);
+    }
+
+    public OriginalCreditIndicator getOriginalCreditOnlineGamblingIndicator(final int row) {
+        return valueOf(ORIGINAL_CREDIT_INDICATOR_VALUES, originalCreditOnlineGamblingIndicators[row]);
+    }
+
+    public FastFunds getFastFunds(final int row) {
+        return valueOf(FAST_FUNDS_VALUES, fastFunds[row]);
+    }
+
+    public OriginalCreditIndicator getOriginalCreditTransactionIndicator(final int row) {
+        return valueOf(ORIGINAL_CREDIT_INDICATOR_VALUES, originalCreditTransactionIndicators[row]);
+    }
+
+    /**
+     * The attributes of the row put together in a profile of their own
+     */
+    BinProfile profile(final int row) {
+        final BinProfile profile = new BinProfile();
+        profile.binLength = getBinLength(row);
+        profile.binDetailPan = getBinDetailPan(row);
+        profile.issuerBankName = getIssuerBankName(row);
+        profile.countryCode = getCountryCode(row);
+        profile.detailCardProduct = getDetailCardProduct(row);
+        profile.detailCardIndicator = getDetailCardIndicator(row);
+        profile.issuerUpdateYear = getIssuerUpdateYear(row);
+        profile.issuerUpdateMonth = getIssuerUpdateMonth(row);
+        profile.issuerUpdateDay = getIssuerUpdateDay(row);
+        profile.debitNetworkPinlessIndicator = getDebitNetworkPinlessIndicator(row);
+        profile.ebtState = getEbtState(row);
+        profile.debitSignatureNetworkParticipant = getDebitSignatureNetworkParticipant(row);
+        profile.fsaIndicator = getFsaIndicator(row);
+        profile.prepaidIndicator = getPrepaidIndicator(row);
+        profile.productId = getProductId(row);
+        profile.regulatorIndicator = getRegulatorIndicator(row);
+        profile.visaProductSubtype = getVisaProductSubtype(row);
+        profile.visaLargeTicketIndicator = getVisaLargeTicketIndicator(row);
+        profile.accountLevelProcessingIndicator = getAccountLevelProcessingIndicator(row);
+        profile.accountFundSource = getAccountFundSource(row);
+        profile.cardClass = getCardClass(row);
+        profile.panLengthMin = getPanLengthMin(row);
+        profile.panLengthMax = getPanLengthMax(row);
+        profile.tokenIndicator = getTokenIndicator(row);
+        profile.issuingNetwork = getIssuingNetwork(row);
+        profile.cardholderBillingCurrency = getCardholderBillingCurrency(row);
+        profile.accountFundSourceSubType = getAccountFundSourceSubType(row);
+        profile.moneySendIndicator = getMoneySendIndicator(row);
+        profile.originalCreditMoneyTransferIndicator = getOriginalCreditMoneyTransferIndicator(row);
+        profile.originalCreditOnlineGamblingIndicator = getOriginalCreditOnlineGamblingIndicator(row);
+        profile.fastFunds = getFastFunds(row);
+        profile.originalCreditTransactionIndicator = getOriginalCreditTransactionIndicator(row);
+        return profile;
+    }
+
+    @Nullable
+    private String string(final int id) {
+        return id == NULL ? null : strings[id];
+    }
+
+    @Nullable
+    private static <E> E valueOf(final E[] values, final int ordinal) {
+        return ordinal == NULL ? null : values[ordinal];
+    }
+
+    private static int ordinal(@Nullable final Enum<?> value) {
+        return value == null ? NULL : value.ordinal();
+    }
+
+    private static int id(@Nullable final String value, final Map<String, Integer> ids, final List<String> dictionary) {
+        if (value == null) {
+            return NULL;
+        }
+        return ids.computeIfAbsent(value, v -> {
+            dictionary.add(v);
+            return dictionary.size() - 1;
+        });
+    }
+}
@@ -0,0 +1,245 @@
+package home.tong.card.bin.file.parser;
+
+import com.neovisionaries.i18n.CountryCode;
+import com.neovisionaries.i18n.CurrencyCode;
+import home.tong.card.bin.enums.AccountFundSource;
+import home.tong.card.bin.enums.AccountFundSourceSubType;
+import home.tong.card.bin.enums.CardClass;
+import home.tong.card.bin.enums.DetailCardIndicator;
+import home.tong.card.bin.enums.DetailCardProduct;
+import home.tong.card.bin.enums.FastFunds;
+import home.tong.card.bin.enums.FsaIndicator;
+import home.tong.card.bin.enums.IssuingNetwork;
+import home.tong.card.bin.enums.MoneySendIndicator;
+import home.tong.card.bin.enums.OriginalCreditIndicator;
+import home.tong.card.bin.enums.PrepaidIndicator;
+import home.tong.card.bin.enums.RegulatorIndicator;
+import home.tong.card.bin.enums.VisaLargeTicketIndicator;
+import home.tong.card.bin.enums.VisaProductSubType;
+import home.tong.card.bin.enums.YesNoAnswer;
+
+/**
+ * Read-only {@link BinDetailRecord} that reads one row of {@link BinRecordColumns}.
+ * <p>
+ * A view only holds the columns and its row. The setters throw {@link UnsupportedOperationException}, a view has
+ * no BIN file line and {@link #getProfile()} puts the attributes of the row together in a new profile.
+ */
+public final class BinRecordView extends BinDetailRecord {
+    final BinRecordColumns columns;
+    final int row;
+
+    BinRecordView(final BinRecordColumns columns, final int row) {
+        super((BinProfile) null);
+        this.columns = columns;
+        this.row = row;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    @Override
+    public String getRecord() {
+        return null;
+    }
+
+    @Override
+    public BinProfile getProfile() {
+        return columns.profile(row);
+    }
+
+    @Override
+    public long getFlags() {
+        return columns.getFlags(row);
+    }
+
+    @Override
+    public String getLowBin() {
+        return columns.getLowBin(row);
+    }
+
+    @Override
+    public void setLowBin(final String lowBin) {
+        throw new UnsupportedOperationException("BIN record view is read only");
+    }
+
+    @Override
+    public long getLowBinValue() {
+        return columns.getLowBinValue(row);
+    }
+
+    @Override
+    public String getHighBin() {
+        return columns.getHighBin(row);
+    }
+
+    @Override
+    public void setHighBin(final String highBin) {
+        throw new UnsupportedOperationException("BIN record view is read only");
+    }
+
+    @Override
+    public long getHighBinValue() {
+        return columns.getHighBinValue(row);
+    }
+
+    @Override
+    public int getBinLength() {
+        return columns.getBinLength(row);
+    }
+
+    @Override
+    public int getBinDetailPan() {
+        return columns.getBinDetailPan(row);
+    }
+
+    @Override
+    public String getIssuerBankName() {
+        return columns.getIssuerBankName(row);
+    }
+
+    @Override
+    public CountryCode getCountryCode() {
+        return columns.getCountryCode(row);
+    }
+
+    @Override
+    public DetailCardProduct getDetailCardProduct() {
+        return columns.getDetailCardProduct(row);
+    }
+
+    @Override
+    public DetailCardIndicator getDetailCardIndicator() {
+        return columns.getDetailCardIndicator(row);
+    }
+
+    @Override
+    public String getIssuerUpdateYear() {
+        return columns.getIssuerUpdateYear(row);
+    }
+
+    @Override
+    public String getIssuerUpdateMonth() {
+        return columns.getIssuerUpdateMonth(row);
+    }
+
+    @Override
+    public String getIssuerUpdateDay() {
+        return columns.getIssuerUpdateDay(row);
+    }
+
+    @Override
+    public String getDebitNetworkPinlessIndicator() {
+        return columns.getDebitNetworkPinlessIndicator(row);
+    }
+
+    @Override
+    public String getEbtState() {
+        return columns.getEbtState(row);
+    }
+
+    @Override
+    public String getDebitSignatureNetworkParticipant() {
+        return columns.getDebitSignatureNetworkParticipant(row);
+    }
+
+    @Override
+    public FsaIndicator getFsaIndicator() {
+        return columns.getFsaIndicator(row);
+    }
+
+    @Override
+    public PrepaidIndicator getPrepaidIndicator() {
+        return columns.getPrepaidIndicator(row);
+    }
+
+    @Override
+    public String getProductId() {
+        return columns.getProductId(row);
+    }
+
+    @Override
+    public RegulatorIndicator getRegulatorIndicator() {
+        return columns.getRegulatorIndicator(row);
+    }
+
+    @Override
+    public VisaProductSubType getVisaProductSubtype() {
+        return columns.getVisaProductSubtype(row);
+    }
+
+    @Override
+    public VisaLargeTicketIndicator getVisaLargeTicketIndicator() {
+        return columns.getVisaLargeTicketIndicator(row);
+    }
+
+    @Override
+    public YesNoAnswer getAccountLevelProcessingIndicator() {
+        return columns.getAccountLevelProcessingIndicator(row);
+    }
+
+    @Override
+    public AccountFundSource getAccountFundSource() {
+        return columns.getAccountFundSource(row);
+    }
+
+    @Override
+    public CardClass getCardClass() {
+        return columns.getCardClass(row);
+    }
+
+    @Override
+    public int getPanLengthMin() {
+        return columns.getPanLengthMin(row);
+    }
+
+    @Override
+    public int getPanLengthMax() {
+        return columns.getPanLengthMax(row);
+    }
+
+    @Override
+    public YesNoAnswer getTokenIndicator() {
+        return columns.getTokenIndicator(row);
+    }
+
+    @Override
+    public IssuingNetwork getIssuingNetwork() {
+        return columns.getIssuingNetwork(row);
+    }
+
+    @Override
+    public CurrencyCode getCardholderBillingCurrency() {
+        return columns.getCardholderBillingCurrency(row);
+    }
+
+    @Override
+    public AccountFundSourceSubType getAccountFundSourceSubType() {
+        return columns.getAccountFundSourceSubType(row);
+    }
+
+    @Override
+    public MoneySendIndicator getMoneySendIndicator() {
+        return columns.getMoneySendIndicator(row);
+    }
+
+    @Override
+    public OriginalCreditIndicator getOriginalCreditMoneyTransferIndicator() {
+        return columns.getOriginalCreditMoneyTransferIndicator(row);
+    }
+
+    @Override
+    public OriginalCreditIndicator getOriginalCreditOnlineGamblingIndicator() {
+        return columns.getOriginalCreditOnlineGamblingIndicator(row);
+    }
+
+    @Override
+    public FastFunds getFastFunds() {
+        return columns.getFastFunds(row);
+    }
+
+    @Override
+    public OriginalCreditIndicator getOriginalCreditTransactionIndicator() {
+        return columns.getOriginalCreditTransactionIndicator(row);
+    }
+}
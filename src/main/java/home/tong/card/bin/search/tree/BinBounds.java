@@ -0,0 +1,61 @@
+package home.tong.card.bin.search.tree;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Reads the BIN range of a value kept in a search tree. Range checks, the expansion of a range to its keys and
+ * the prefix filter go through it rather than the getters of {@link BinDetailRecord}, so a tree can be given
+ * values whose bounds are kept elsewhere, e.g. in a shared table of ranges by record id.
+ *
+ * @param <T> type of the values
+ */
+public interface BinBounds<T> {
+    /**
+     * Reads the bounds with the getters of the record
+     */
+    BinBounds<BinDetailRecord> DETAIL_RECORD = new BinBounds<BinDetailRecord>() {
+        @Override
+        public String lowBin(final BinDetailRecord value) {
+            return value.getLowBin();
+        }
+
+        @Override
+        public String highBin(final BinDetailRecord value) {
+            return value.getHighBin();
+        }
+
+        @Override
+        public long lowBinValue(final BinDetailRecord value) {
+            return value.getLowBinValue();
+        }
+
+        @Override
+        public long highBinValue(final BinDetailRecord value) {
+            return value.getHighBinValue();
+        }
+    };
+
+    String lowBin(T value);
+
+    String highBin(T value);
+
+    /**
+     * The low BIN as a number, -1 if it is not numeric or too long for a long. Implementations are encouraged to
+     * return a value computed once, it is read on every range check.
+     */
+    default long lowBinValue(final T value) {
+        return toValue(lowBin(value));
+    }
+
+    /**
+     * The high BIN as a number, see {@link #lowBinValue(Object)}
+     */
+    default long highBinValue(final T value) {
+        return toValue(highBin(value));
+    }
+
+    static long toValue(final String bin) {
+        return StringUtils.isNumeric(bin) && bin.length() < PanDigits.MAX_DIGITS ? Long.parseLong(bin) : -1;
+    }
+}
@@ -0,0 +1,262 @@
+package home.tong.card.bin.search.tree;
+
+import home.tong.card.bin.enums.RecordTypeIndicator;
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.file.parser.BinProfilePool;
+import home.tong.card.bin.file.parser.BinRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.time.StopWatch;
+import org.springframework.lang.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Difference between two versions of a BIN file, applied to a tree loaded from the old version instead of loading
+ * the new version into a new tree.
+ * <p>
+ * The detail records of both files are read side by side and merged by their low BIN field, which is the order
+ * a BIN file is sorted in. Lines that are the same in both files are passed over without being parsed, so working
+ * out the difference costs reading the two files, and applying it costs parsing and editing the ranges that
+ * changed. A CRC32 of each file is taken on the way, so a caller can check that the tree was loaded from the old file.
+ * <p>
+ * The ranges of the records whose low BIN is not in the new file are deleted first, so a range that moves from one
+ * of them to another record is not rejected as a duplicate. Then the records of the new file are applied in file
+ * order: a record whose line changed has its old range replaced by its new one in one step, see
+ * {@link SearchTree#replaceBinRange}, so its BINs do not go missing on a tree that serves lookups while it is
+ * edited, and the range of an added record is inserted. A key that two ranges are expanded to goes to the range
+ * that is inserted first, in a full load the one that comes first in the file.
+ */
+@Slf4j
+public final class BinFileDelta {
+    private final List<BinDetailRecord> removed;
+    private final List<Edit> edits;
+    private final int changed;
+    private final int unchanged;
+    private final long oldChecksum;
+    private final long newChecksum;
+
+    private BinFileDelta(final List<BinDetailRecord> removed, final List<Edit> edits, final int changed,
+                         final int unchanged, final long oldChecksum, final long newChecksum) {
+        this.removed = removed;
+        this.edits = edits;
+        this.changed = changed;
+        this.unchanged = unchanged;
+        this.oldChecksum = oldChecksum;
+        this.newChecksum = newChecksum;
+    }
+
+    /**
+     * Reads both files to the end and works out the records that were removed, added and changed
+     *
+     * @throws IOException if a file is not sorted by low BIN or has a detail record that cannot be parsed
+     */
+    public static BinFileDelta compare(final InputStream oldFile, final InputStream newFile) throws IOException {
+        final StopWatch stopWatch = StopWatch.createStarted();
+        final List<BinDetailRecord> removed = new ArrayList<>();
+        final List<Edit> edits = new ArrayList<>();
+        // the added records share their attributes like the records of a full load
+        final BinProfilePool profiles = new BinProfilePool();
+        int changed = 0;
+        int unchanged = 0;
+        final DetailLines olds = new DetailLines(oldFile, "old");
+        final DetailLines news = new DetailLines(newFile, "new");
+        String oldLine = olds.next();
+        String newLine = news.next();
+        while (oldLine != null || newLine != null) {
+            final int order = oldLine == null ? 1 : newLine == null ? -1 : BinDetailRecord.compareLowBin(oldLine, newLine);
+            if (order == 0) {
+                if (!oldLine.equals(newLine)) {
+                    edits.add(new Edit(olds.parse(oldLine), profiles.intern(news.parse(newLine))));
+                    changed++;
+                } else {
+                    unchanged++;
+                }
+                oldLine = olds.next();
+                newLine = news.next();
+            } else if (order < 0) {
+                removed.add(olds.parse(oldLine));
+                oldLine = olds.next();
+            } else {
+                edits.add(new Edit(null, profiles.intern(news.parse(newLine))));
+                newLine = news.next();
+            }
+        }
+        stopWatch.stop();
+        log.info("Compared BIN files in {} ms, {} records removed, {} added, {} changed and {} unchanged", stopWatch.getTime(),
+                removed.size(), edits.size() - changed, changed, unchanged);
+        return new BinFileDelta(removed, edits, changed, unchanged, olds.checksum(), news.checksum());
+    }
+
+    /**
+     * Deletes the ranges of the removed records from the tree, then replaces the ranges of the changed records and
+     * inserts the ranges of the added records in file order
+     *
+     * @param tree loaded from the old file, see the class comment
+     * @return number of ranges that could not be deleted, replaced or inserted, which are logged. The tree does not
+     * match the new file if any failed.
+     */
+    public int applyTo(final SearchTree tree) {
+        final StopWatch stopWatch = StopWatch.createStarted();
+        final int compressFactor = SearchTreeLoader.getCompressFactor(tree.compressExponent);
+        int failed = 0;
+        for (final BinDetailRecord record : removed) {
+            if (!tree.deleteBinRange(compressFactor, record)) {
+                failed++;
+            }
+        }
+        for (final Edit edit : edits) {
+            if (edit.before == null) {
+                if (!tree.insertBinRange(compressFactor, edit.after)) {
+                    log.warn("Failed to insert {} into search tree", edit.after);
+                    failed++;
+                }
+            } else if (!tree.replaceBinRange(compressFactor, edit.before, edit.after)) {
+                log.warn("Failed to replace {} in search tree", edit.after);
+                failed++;
+            }
+        }
+        stopWatch.stop();
+        log.info("Applied {} deletes, {} replaces and {} inserts to {} in {} ms, {} failed. Tree size is {}", removed.size(),
+                changed, edits.size() - changed, tree.getClass().getSimpleName(), stopWatch.getTime(), failed, tree.size());
+        return failed;
+    }
+
+    public boolean isEmpty() {
+        return removed.isEmpty() && edits.isEmpty();
+    }
+
+    /**
+     * Records of the old file with a low BIN that is not in the new file
+     */
+    public int getRemovedCount() {
+        return removed.size();
+    }
+
+    /**
+     * Records of the new file with a low BIN that is not in the old file
+     */
+    public int getAddedCount() {
+        return edits.size() - changed;
+    }
+
+    /**
+     * Records with a low BIN in both files and a different line in each
+     */
+    public int getChangedCount() {
+        return changed;
+    }
+
+    public int getUnchangedCount() {
+        return unchanged;
+    }
+
+    /**
+     * CRC32 of the bytes of the old file
+     */
+    public long getOldChecksum() {
+        return oldChecksum;
+    }
+
+    /**
+     * CRC32 of the bytes of the new file
+     */
+    public long getNewChecksum() {
+        return newChecksum;
+    }
+
+    /**
+     * Records whose ranges are deleted, the removed records and the old versions of the changed ones
+     */
+    public List<BinDetailRecord> getDeletes() {
+        final List<BinDetailRecord> deletes = new ArrayList<>(removed);
+        for (final Edit edit : edits) {
+            if (edit.before != null) {
+                deletes.add(edit.before);
+            }
+        }
+        return Collections.unmodifiableList(deletes);
+    }
+
+    /**
+     * Records whose ranges are inserted, the added records and the new versions of the changed ones, in file order
+     */
+    public List<BinDetailRecord> getInserts() {
+        final List<BinDetailRecord> inserts = new ArrayList<>(edits.size());
+        for (final Edit edit : edits) {
+            inserts.add(edit.after);
+        }
+        return Collections.unmodifiableList(inserts);
+    }
+
+    /**
+     * A record of the new file, with the record of the same low BIN in the old file if it changed
+     */
+    private static final class Edit {
+        @Nullable
+        private final BinDetailRecord before;
+        private final BinDetailRecord after;
+
+        private Edit(@Nullable final BinDetailRecord before, final BinDetailRecord after) {
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    /**
+     * The detail lines of a BIN file in order, checking that they are sorted by low BIN
+     */
+    private static final class DetailLines {
+        private final BufferedReader reader;
+        private final CRC32 crc = new CRC32();
+        private final String name;
+        @Nullable
+        private String previous;
+        private int lineNumber;
+
+        private DetailLines(final InputStream inputStream, final String name) {
+            reader = new BufferedReader(new InputStreamReader(new CheckedInputStream(inputStream, crc), StandardCharsets.ISO_8859_1));
+            this.name = name;
+        }
+
+        @Nullable
+        private String next() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (BinRecord.getRecordIndicator(line) == RecordTypeIndicator.DETAIL) {
+                    if (previous != null && BinDetailRecord.compareLowBin(previous, line) >= 0) {
+                        throw new IOException("The " + name + " BIN file is not sorted by low BIN without duplicates at line " + lineNumber);
+                    }
+                    previous = line;
+                    return line;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * CRC32 of the bytes read, of the whole file once {@link #next()} returned null
+         */
+        private long checksum() {
+            return crc.getValue();
+        }
+
+        private BinDetailRecord parse(final String line) throws IOException {
+            try {
+                return new BinDetailRecord(line);
+            } catch (ParseException e) {
+                throw new IOException("Invalid detail record in the " + name + " BIN file at line " + lineNumber, e);
+            }
+        }
+    }
+}
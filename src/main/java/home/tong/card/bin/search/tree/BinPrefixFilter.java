@@ -0,0 +1,175 @@
+package home.tong.card.bin.search.tree;
+
+import org.springframework.lang.Nullable;
+
+import java.nio.LongBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bitmap over all 6 digit prefixes, with a bit set for every prefix some BIN range of the tree covers.
+ * <p>
+ * A key of 6 or more digits can only match a range whose BINs are at least as long as the key, so its first
+ * 6 digits lie between the first 6 digits of the low and the high BIN of the range. A key whose prefix bit is
+ * not set has no match, and the lookup returns before the tree is touched. Shorter keys and keys that are not
+ * digits are always passed on to the tree. There are no false negatives, but ranges that were deleted leave
+ * their bits set until the tree is loaded again.
+ * <p>
+ * Bits are set with compare-and-set before the range is published in the tree, so lookups running concurrently
+ * with an insert never miss it. The bitmap takes 125 KB, allocated by the first range that sets a bit, so a tree
+ * that is never filled or is built without a filter ({@link #NONE}) does not pay for it.
+ */
+final class BinPrefixFilter {
+    static final int PREFIX_LENGTH = 6;
+    static final int WORDS = (int) ((PanDigits.powerOfTen(PREFIX_LENGTH) + Long.SIZE - 1) / Long.SIZE);
+
+    /**
+     * Passes every key on and ignores the ranges added to it, for a tree that answers misses as fast on its own
+     */
+    static final BinPrefixFilter NONE = new BinPrefixFilter(null, true);
+
+    // null until the first bit is set, no bit is set then
+    @Nullable
+    private volatile AtomicLongArray words;
+    // set once a range whose BINs are not digits was added, every key is passed on from then on
+    private volatile boolean matchAll;
+
+    BinPrefixFilter() {
+        this(null, false);
+    }
+
+    private BinPrefixFilter(@Nullable final AtomicLongArray words, final boolean matchAll) {
+        this.words = words;
+        this.matchAll = matchAll;
+    }
+
+    /**
+     * Reads a filter written with {@link #writeTo(LongBuffer)}
+     */
+    static BinPrefixFilter of(final LongBuffer buffer, final boolean matchAll) {
+        if (matchAll) {
+            return new BinPrefixFilter(null, true);
+        }
+        final AtomicLongArray words = new AtomicLongArray(WORDS);
+        for (int i = 0; i < WORDS; i++) {
+            words.set(i, buffer.get(i));
+        }
+        return new BinPrefixFilter(words, matchAll);
+    }
+
+    BinPrefixFilter copy() {
+        final AtomicLongArray words = this.words;
+        if (words == null) {
+            return new BinPrefixFilter(null, matchAll);
+        }
+        final AtomicLongArray copy = new AtomicLongArray(WORDS);
+        for (int i = 0; i < WORDS; i++) {
+            copy.set(i, words.get(i));
+        }
+        return new BinPrefixFilter(copy, matchAll);
+    }
+
+    void writeTo(final LongBuffer buffer) {
+        final AtomicLongArray words = this.words;
+        for (int i = 0; i < WORDS; i++) {
+            buffer.put(words == null ? 0 : words.get(i));
+        }
+    }
+
+    /**
+     * Bytes the bitmap takes, none before a bit is set
+     */
+    long bytes() {
+        return words == null ? 0 : SearchTreeStats.arrayBytes(WORDS, Long.BYTES);
+    }
+
+    boolean isMatchAll() {
+        return matchAll;
+    }
+
+    /**
+     * Sets the bits of the prefixes between the first 6 digits of the low and the high BIN of the range
+     */
+    void add(@Nullable final String lowBin, @Nullable final String highBin) {
+        if (matchAll || lowBin == null || lowBin.length() < PREFIX_LENGTH) {
+            // every key is passed on anyway, or no key with a prefix of 6 digits matches it
+            return;
+        }
+        final int low = prefix(lowBin);
+        final int high = highBin == null ? -1 : prefix(highBin);
+        if (low < 0 || high < 0) {
+            matchAll = true;
+            return;
+        }
+        setRange(Math.min(low, high), Math.max(low, high));
+    }
+
+    /**
+     * Returns false if no range of the tree matches the key
+     */
+    boolean mightMatch(final CharSequence key) {
+        if (key.length() < PREFIX_LENGTH) {
+            return true;
+        }
+        final int prefix = prefix(key);
+        return prefix < 0 || isSet(prefix);
+    }
+
+    /**
+     * Same as {@link #mightMatch(CharSequence)} for a key held as a number, see {@link SearchTree#get(long, int)}
+     */
+    boolean mightMatch(final long panPrefix, final int digits) {
+        if (digits < PREFIX_LENGTH) {
+            return true;
+        }
+        return isSet((int) (panPrefix / PanDigits.powerOfTen(digits - PREFIX_LENGTH)));
+    }
+
+    private boolean isSet(final int prefix) {
+        final AtomicLongArray words = this.words;
+        return matchAll || words != null && (words.get(prefix >>> 6) & 1L << prefix) != 0;
+    }
+
+    private void setRange(final int from, final int to) {
+        AtomicLongArray words = this.words;
+        if (words == null) {
+            words = allocate();
+        }
+        final int first = from >>> 6;
+        final int last = to >>> 6;
+        for (int i = first; i <= last; i++) {
+            // the shifts only use the lower 6 bits of the prefix
+            final long mask = (i == first ? -1L << from : -1L) & (i == last ? -1L >>> (63 - (to & 63)) : -1L);
+            long word;
+            do {
+                word = words.get(i);
+            } while ((word & mask) != mask && !words.compareAndSet(i, word, word | mask));
+        }
+    }
+
+    private synchronized AtomicLongArray allocate() {
+        AtomicLongArray w = words;
+        if (w == null) {
+            w = new AtomicLongArray(WORDS);
+            words = w;
+        }
+        return w;
+    }
+
+    /**
+     * The first 6 characters as a number, -1 if they are not all digits
+     */
+    private static int prefix(final CharSequence key) {
+        if (key.length() < PREFIX_LENGTH) {
+            return -1;
+        }
+        int prefix = 0;
+        for (int i = 0; i < PREFIX_LENGTH; i++) {
+            final int digit = key.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            prefix = prefix * 10 + digit;
+        }
+        return prefix;
+    }
+}
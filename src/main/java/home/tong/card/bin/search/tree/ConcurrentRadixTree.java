@@ -0,0 +1,647 @@
+package home.tong.card.bin.search.tree;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Radix tree for live edits while lookups are running.
+ * <p>
+ * The subtrees under the ten digits of the root are kept in an {@link AtomicReferenceArray}. Published nodes are
+ * never changed. A write copies the path from the top of the subtree down to the node it changes, and publishes
+ * the new subtree with a compare-and-set on its slot, retrying on a fresh copy if another write came first.
+ * Lookups take no locks and never wait. They see every subtree either before or after a write, never a
+ * half done split or merge. Writes to different top-level digits do not get in the way of each other.
+ * <p>
+ * The keys under one digit of a BIN range are inserted or deleted together, so a lookup sees either none or all
+ * of them. A range that is replaced by a new version of its record is deleted and inserted in the same write, so a
+ * lookup finds the old or the new record, never none. Lookups give the same answers as {@link RadixTree}.
+ * <p>
+ * The project compiles with source and target 8 (see the compiler plugin in the pom), so the slots are read and
+ * swapped through {@link AtomicReferenceArray} rather than a VarHandle. Every write is published by a
+ * compare-and-set, which is a full fence either way.
+ */
+@Slf4j
+public class ConcurrentRadixTree extends SearchTree {
+    // marks a node that is removed by a delete
+    private static final RadixTreeNode REMOVED = new RadixTreeNode("");
+
+    // stands for the root on the lookup path, its children are the slots
+    private final RadixTreeNode root = new RadixTreeNode("");
+    private final AtomicReferenceArray<RadixTreeNode> slots = new AtomicReferenceArray<>(TrieNode.RADIX);
+    private final AtomicInteger nodes = new AtomicInteger(1); // root node
+
+    public ConcurrentRadixTree(final int compressExponent) {
+        super(compressExponent);
+    }
+
+    /**
+     * @param bounds reads the BIN ranges of the records, see {@link BinBounds}
+     */
+    public ConcurrentRadixTree(final int compressExponent, final BinBounds<BinDetailRecord> bounds) {
+        super(compressExponent, bounds);
+    }
+
+    @Override
+    public int size() {
+        return nodes.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (int i = 0; i < TrieNode.RADIX; i++) {
+            if (slots.get(i) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Not synchronized, a slot that is replaced during the walk is counted as it was before or after
+     */
+    @Override
+    protected void collectStats(final SearchTreeStats.Builder stats) {
+        int fanOut = 0;
+        for (int i = 0; i < TrieNode.RADIX; i++) {
+            final RadixTreeNode slot = slots.get(i);
+            if (slot != null) {
+                fanOut++;
+                slot.collectStats(1, stats);
+            }
+        }
+        stats.node(0, fanOut, 0)
+                .bytes("slots", SearchTreeStats.objectBytes(SearchTreeStats.REFERENCE) + SearchTreeStats.arrayBytes(TrieNode.RADIX, SearchTreeStats.REFERENCE));
+    }
+
+    @Override
+    public boolean insert(final String key, final BinDetailRecord record) {
+        if (key.isEmpty() || !StringUtils.isNumeric(key)) {
+            log.error("Invalid key {} is ignored", key);
+            return false;
+        }
+        if (insertAll(key.charAt(0) - '0', Collections.singletonList(key), record) == 0) {
+            log.warn("Duplicate key {}", record);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Inserts the keys of the range like {@link SearchTree#insertBinRange}, but publishes all keys under the same
+     * top-level digit at once. Not synchronized, see the class comment.
+     */
+    @Override
+    public boolean insertBinRange(final int compressFactor, final BinDetailRecord data) {
+        final String lowBin = bounds.lowBin(data);
+        final String highBin = bounds.highBin(data);
+        if (lowBin.isEmpty() || !StringUtils.isNumeric(lowBin) || !StringUtils.isNumeric(highBin)) {
+            log.error("Invalid BIN range [{}, {}] is ignored", lowBin, highBin);
+            return false;
+        }
+        final List<String> keys = keys(compressFactor, lowBin, highBin);
+
+        // the keys are sorted, so the keys under a digit are a run of them
+        int from = 0;
+        while (from < keys.size()) {
+            final char digit = keys.get(from).charAt(0);
+            int to = from + 1;
+            while (to < keys.size() && keys.get(to).charAt(0) == digit) {
+                to++;
+            }
+            final int inserted = insertAll(digit - '0', keys.subList(from, to), data);
+            if (from + inserted == 0) {
+                log.warn("There is an existing BIN range with low BIN: {}", lowBin);
+                return false;
+            }
+            if (inserted < to - from) {
+                log.warn("Duplicate bin record: {}", data);
+                return false;
+            }
+            from = to;
+        }
+        if (keys.size() > 1000) { // to reduce logging
+            log.info("Inserted {} nodes in search tree for BIN range [{}, {}]", keys.size(), lowBin, highBin);
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the keys of the range like {@link SearchTree#deleteBinRange}, but removes all keys under the same
+     * top-level digit at once. Not synchronized, see the class comment.
+     */
+    @Override
+    public boolean deleteBinRange(final int compressFactor, final BinDetailRecord data) {
+        final String lowBin = bounds.lowBin(data);
+        final String highBin = bounds.highBin(data);
+        if (lowBin.isEmpty() || !StringUtils.isNumeric(lowBin) || !StringUtils.isNumeric(highBin)) {
+            log.warn("There is no BIN range [{}, {}] to delete", lowBin, highBin);
+            return false;
+        }
+        final List<String> keys = keys(compressFactor, lowBin, highBin);
+
+        int from = 0;
+        while (from < keys.size()) {
+            final char digit = keys.get(from).charAt(0);
+            int to = from + 1;
+            while (to < keys.size() && keys.get(to).charAt(0) == digit) {
+                to++;
+            }
+            if (deleteAll(digit - '0', keys.subList(from, to), lowBin, highBin, from == 0) == 0 && from == 0) {
+                log.warn("There is no BIN range [{}, {}] to delete", lowBin, highBin);
+                return false;
+            }
+            from = to;
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the range of a record with the range of a new version of it. The keys of the old range under a
+     * top-level digit are deleted and the keys of the new range under it are inserted in one write, see the class
+     * comment. Not synchronized.
+     *
+     * @return false if the tree has no entry for the old range at its low BIN or a key of the new range is taken by
+     * another range, the keys of the new range before that key are inserted
+     */
+    @Override
+    public boolean replaceBinRange(final int compressFactor, final BinDetailRecord oldData, final BinDetailRecord newData) {
+        final String oldLowBin = bounds.lowBin(oldData);
+        final String oldHighBin = bounds.highBin(oldData);
+        final String lowBin = bounds.lowBin(newData);
+        final String highBin = bounds.highBin(newData);
+        if (oldLowBin.isEmpty() || !StringUtils.isNumeric(oldLowBin) || !StringUtils.isNumeric(oldHighBin)) {
+            log.warn("There is no BIN range [{}, {}] to delete", oldLowBin, oldHighBin);
+            insertBinRange(compressFactor, newData);
+            return false;
+        }
+        if (lowBin.isEmpty() || !StringUtils.isNumeric(lowBin) || !StringUtils.isNumeric(highBin)) {
+            log.error("Invalid BIN range [{}, {}] is ignored", lowBin, highBin);
+            deleteBinRange(compressFactor, oldData);
+            return false;
+        }
+        final List<String> oldKeys = keys(compressFactor, oldLowBin, oldHighBin);
+        final List<String> keys = keys(compressFactor, lowBin, highBin);
+        final boolean found = isRange(recordAt(oldLowBin), oldLowBin, oldHighBin);
+        if (!found) {
+            log.warn("There is no BIN range [{}, {}] to delete", oldLowBin, oldHighBin);
+        }
+
+        boolean inserted = true;
+        for (char digit = '0'; digit <= '9'; digit++) {
+            final List<String> deletes = keysUnder(oldKeys, digit);
+            // the keys after a duplicate are not inserted, like insertBinRange does
+            final List<String> inserts = inserted ? keysUnder(keys, digit) : Collections.emptyList();
+            if (deletes.isEmpty() && inserts.isEmpty()) {
+                continue;
+            }
+            final int count = replaceAll(digit - '0', deletes, oldLowBin, oldHighBin, inserts, newData);
+            if (count < inserts.size()) {
+                if (count == 0 && inserts.get(0).equals(lowBin)) {
+                    log.warn("There is an existing BIN range with low BIN: {}", lowBin);
+                } else {
+                    log.warn("Duplicate bin record: {}", newData);
+                }
+                inserted = false;
+            }
+        }
+        return found && inserted;
+    }
+
+    @Override
+    public boolean delete(final String key) {
+        if (key.isEmpty() || !StringUtils.isNumeric(key)) {
+            log.warn("BIN {} does not exists in search tree", key);
+            return false;
+        }
+        final int digit = key.charAt(0) - '0';
+        while (true) {
+            final RadixTreeNode current = slots.get(digit);
+            final int[] nodeCount = {0};
+            final RadixTreeNode updated = current == null ? null : delete(current, key, 0, nodeCount);
+            if (updated == null) {
+                log.warn("BIN {} does not exists in search tree", key);
+                return false;
+            }
+            if (slots.compareAndSet(digit, current, updated == REMOVED ? null : updated)) {
+                nodes.addAndGet(nodeCount[0]);
+                modified();
+                return true;
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    protected BinDetailRecord recordAt(final String key) {
+        return key.isEmpty() ? null : recordAt(slots.get(key.charAt(0) - '0'), key);
+    }
+
+    /**
+     * The record at exactly the key in the subtree under the first digit of the key
+     */
+    @Nullable
+    private static BinDetailRecord recordAt(@Nullable RadixTreeNode node, final String key) {
+        int i = 0;
+        while (node != null && key.startsWith(node.label, i)) {
+            i += node.label.length();
+            if (i == key.length()) {
+                return node.record;
+            }
+            node = node.getChild(key.charAt(i));
+        }
+        return null;
+    }
+
+    /**
+     * Inserts the keys, which all start with the digit, in one write
+     *
+     * @return number of keys inserted, the keys after a duplicate key are not inserted
+     */
+    private int insertAll(final int digit, final List<String> keys, final BinDetailRecord record) {
+        return replaceAll(digit, Collections.emptyList(), null, null, keys, record);
+    }
+
+    /**
+     * Deletes the keys that are entries of the old range and then inserts the keys of the record, which all start
+     * with the digit, in one write
+     *
+     * @return number of keys inserted, the keys after a duplicate key are not inserted
+     */
+    private int replaceAll(final int digit, final List<String> deletes, @Nullable final String lowBin,
+                           @Nullable final String highBin, final List<String> inserts, final BinDetailRecord record) {
+        if (!inserts.isEmpty()) {
+            // before the keys are published, so a lookup that finds them passes the filter
+            prefixFilter.add(bounds.lowBin(record), bounds.highBin(record));
+        }
+        while (true) {
+            final RadixTreeNode current = slots.get(digit);
+            final int[] nodeCount = {0};
+            RadixTreeNode updated = current;
+            for (final String key : deletes) {
+                // keys another range got first are left to it
+                if (updated != null && isRange(recordAt(updated, key), lowBin, highBin)) {
+                    final RadixTreeNode next = delete(updated, key, 0, nodeCount);
+                    updated = next == REMOVED ? null : next;
+                }
+            }
+            int inserted = 0;
+            for (final String key : inserts) {
+                final RadixTreeNode next;
+                if (updated == null) {
+                    next = leaf(key, record);
+                    nodeCount[0]++;
+                } else {
+                    next = insert(updated, key, 0, record, nodeCount);
+                }
+                if (next == null) {
+                    break;
+                }
+                updated = next;
+                inserted++;
+            }
+            if (updated == current) {
+                return 0;
+            }
+            if (slots.compareAndSet(digit, current, updated)) {
+                nodes.addAndGet(nodeCount[0]);
+                modified();
+                return inserted;
+            }
+        }
+    }
+
+    /**
+     * Deletes the keys, which all start with the digit, that are entries of the range, in one write
+     *
+     * @param first only delete anything if the first key is an entry of the range
+     * @return number of keys deleted
+     */
+    private int deleteAll(final int digit, final List<String> keys, final String lowBin, final String highBin, final boolean first) {
+        while (true) {
+            final RadixTreeNode current = slots.get(digit);
+            final int[] nodeCount = {0};
+            RadixTreeNode updated = current;
+            int deleted = 0;
+            for (int i = 0; i < keys.size() && updated != null; i++) {
+                final String key = keys.get(i);
+                if (!isRange(recordAt(updated, key), lowBin, highBin)) {
+                    // keys another range got first are left to it
+                    if (i == 0 && first) {
+                        return 0;
+                    }
+                    continue;
+                }
+                final RadixTreeNode next = delete(updated, key, 0, nodeCount);
+                updated = next == REMOVED ? null : next;
+                deleted++;
+            }
+            if (deleted == 0) {
+                return 0;
+            }
+            if (slots.compareAndSet(digit, current, updated)) {
+                nodes.addAndGet(nodeCount[0]);
+                modified();
+                return deleted;
+            }
+        }
+    }
+
+    /**
+     * The low BIN of the range and the keys it is expanded to, in order
+     */
+    private static List<String> keys(final int compressFactor, final String lowBin, final String highBin) {
+        final List<String> keys = new ArrayList<>();
+        keys.add(lowBin);
+        forEachExpandedKey(compressFactor, lowBin, highBin, keys::add);
+        return keys;
+    }
+
+    /**
+     * The run of the sorted keys that start with the digit
+     */
+    private static List<String> keysUnder(final List<String> keys, final char digit) {
+        int from = 0;
+        while (from < keys.size() && keys.get(from).charAt(0) < digit) {
+            from++;
+        }
+        int to = from;
+        while (to < keys.size() && keys.get(to).charAt(0) == digit) {
+            to++;
+        }
+        return keys.subList(from, to);
+    }
+
+    /**
+     * Returns a copy of the subtree of the node with the key inserted, null if the key is already there.
+     * The key from the offset on starts with the first digit of the label of the node.
+     */
+    @Nullable
+    private static RadixTreeNode insert(final RadixTreeNode node, final String key, final int offset,
+                                        final BinDetailRecord record, final int[] nodeCount) {
+        final String label = node.label;
+        if (key.startsWith(label, offset)) {
+            final int end = offset + label.length();
+            if (end == key.length()) {
+                if (node.record != null) {
+                    return null;
+                }
+                final RadixTreeNode copy = copy(node, label);
+                copy.record = record;
+                return copy;
+            }
+            final RadixTreeNode child = node.getChild(key.charAt(end));
+            final RadixTreeNode newChild;
+            if (child == null) {
+                newChild = leaf(key.substring(end), record);
+                nodeCount[0]++;
+            } else {
+                newChild = insert(child, key, end, record, nodeCount);
+                if (newChild == null) {
+                    return null;
+                }
+            }
+            final RadixTreeNode copy = copy(node, label);
+            setChild(copy, newChild);
+            return copy;
+        }
+
+        // the key leaves the label in the middle, split the label
+        int j = 0;
+        while (j < label.length() && offset + j < key.length() && label.charAt(j) == key.charAt(offset + j)) {
+            j++;
+        }
+        final RadixTreeNode innerNode = new RadixTreeNode(label.substring(0, j));
+        setChild(innerNode, copy(node, label.substring(j)));
+        nodeCount[0]++;
+        if (offset + j == key.length()) {
+            innerNode.record = record;
+        } else {
+            setChild(innerNode, leaf(key.substring(offset + j), record));
+            nodeCount[0]++;
+        }
+        return innerNode;
+    }
+
+    /**
+     * Returns a copy of the subtree of the node without the key, {@link #REMOVED} if nothing is left of the
+     * subtree, null if the key is not there. A node that is left with no record and a single child is merged
+     * with the child, so that the tree stays the same as if the key had never been inserted.
+     */
+    @Nullable
+    private static RadixTreeNode delete(final RadixTreeNode node, final String key, final int offset, final int[] nodeCount) {
+        if (!key.startsWith(node.label, offset)) {
+            return null;
+        }
+        final int end = offset + node.label.length();
+        final RadixTreeNode copy;
+        if (end == key.length()) {
+            if (node.record == null) {
+                return null;
+            }
+            copy = copy(node, node.label);
+            copy.record = null;
+        } else {
+            final RadixTreeNode child = node.getChild(key.charAt(end));
+            final RadixTreeNode newChild = child == null ? null : delete(child, key, end, nodeCount);
+            if (newChild == null) {
+                return null;
+            }
+            copy = copy(node, node.label);
+            if (newChild == REMOVED) {
+                copy.removeChild(child);
+            } else {
+                setChild(copy, newChild);
+            }
+        }
+
+        if (copy.record == null) {
+            final List<RadixTreeNode> children = copy.getChildren();
+            if (children.isEmpty()) {
+                nodeCount[0]--;
+                return REMOVED;
+            }
+            if (children.size() == 1) {
+                nodeCount[0]--;
+                return copy(children.get(0), copy.label + children.get(0).label);
+            }
+        }
+        return copy;
+    }
+
+    private static RadixTreeNode leaf(final String label, final BinDetailRecord record) {
+        final RadixTreeNode leaf = new RadixTreeNode(label);
+        leaf.record = record;
+        return leaf;
+    }
+
+    private static RadixTreeNode copy(final RadixTreeNode node, final String label) {
+        final RadixTreeNode copy = new RadixTreeNode(label);
+        copy.record = node.record;
+        // the array of a published node is never written, the copy gets its own
+        copy.children = node.children == null ? null : node.children.clone();
+        copy.bitmap = node.bitmap;
+        copy.refresh();
+        return copy;
+    }
+
+    /**
+     * Only for nodes that are not published yet
+     */
+    private static void setChild(final RadixTreeNode node, final RadixTreeNode child) {
+        node.putChild(TrieNode.getIndex(child.label.charAt(0)), child);
+        node.refresh();
+    }
+
+    @Override
+    @Nullable
+    public BinDetailRecord get(final CharSequence key) {
+        if (!prefixFilter.mightMatch(key)) {
+            return null;
+        }
+        final NodeStack stack = NodeStack.get();
+        try {
+            return get(key, stack);
+        } finally {
+            stack.clear();
+        }
+    }
+
+    /**
+     * Same as {@link RadixTree#get(CharSequence)}, with the children of the root read from the slots
+     */
+    @Nullable
+    private BinDetailRecord get(final CharSequence key, final NodeStack stack) {
+        RadixTreeNode node = root;
+        // start of the remainder of the key that is compared with the label of the node
+        int remainder = 0;
+        int index = 0;
+        boolean brokenOut = false;
+        while (index < key.length()) {
+            final char c = key.charAt(index);
+            stack.push(node);
+            node = child(node, TrieNode.getIndex(c));
+            if (node == null) {
+                brokenOut = true;
+                break;
+            }
+            remainder = index;
+            if (regionMatches(key, index, node.label, node.label.length())) {
+                index += node.label.length();
+            } else if (regionMatches(key, index, node.label, key.length() - index)) {
+                index = key.length();
+            } else {
+                brokenOut = true;
+                break;
+            }
+        }
+
+        if (!brokenOut) {
+            index = remainder;
+        }
+
+        if (node != null) {
+            TrieNode leaf = node;
+            if (!isLeaf(node)) {
+                leaf = compareRemainder(key, remainder, node.label) <= 0 ? getLeastLeaf(node) : getGreatestLeaf(node);
+            }
+            return leaf == null ? null : getData(key, stack, index, leaf);
+        }
+
+        return backtrack(stack, key, index);
+    }
+
+    /**
+     * Same as {@link RadixTree#backtrack}, with the children of the root read from the slots
+     */
+    @Override
+    @Nullable
+    protected BinDetailRecord backtrack(final NodeStack stack, final CharSequence key, final int index) {
+        int tries = Math.min(index - 1, compressExponent);
+        int i = index;
+        while (tries > 0 && !stack.isEmpty()) {
+            final RadixTreeNode node = (RadixTreeNode) stack.pop();
+            if (isLeaf(node) || node.record != null) {
+                if (node.record != null && isInRange(key, node.record)) {
+                    return node.record;
+                }
+                if (isLeaf(node)) {
+                    return null;
+                }
+            }
+
+            tries--;
+            final char c = key.charAt(i);
+            i -= node.label.length();
+            int j = c - '1'; // don't repeat previous path
+            while (j >= 0) {
+                final RadixTreeNode child = child(node, j);
+                if (child != null) {
+                    if ((child.isLeaf() || child.record != null) &&
+                        (isInRange(key, child.record) || isPrefix(key, child.record))) {
+                        return child.record;
+                    }
+                    if (!child.isLeaf()) {
+                        final TrieNode greatest = child.getGreatestLeaf();
+                        if (greatest != null && (isInRange(key, greatest.record) || isPrefix(key, greatest.record))) {
+                            return greatest.record;
+                        }
+                    }
+                    return null;
+                }
+                j--;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private RadixTreeNode child(final RadixTreeNode node, final int digit) {
+        if (digit < 0 || digit >= TrieNode.RADIX) {
+            return null;
+        }
+        if (node == root) {
+            return slots.get(digit);
+        }
+        return (RadixTreeNode) node.child(digit);
+    }
+
+    private boolean isLeaf(final RadixTreeNode node) {
+        return node == root ? isEmpty() : node.isLeaf();
+    }
+
+    @Nullable
+    private TrieNode getLeastLeaf(final RadixTreeNode node) {
+        if (node != root) {
+            return node.getLeastLeaf();
+        }
+        for (int i = 0; i < TrieNode.RADIX; i++) {
+            final RadixTreeNode child = slots.get(i);
+            if (child != null) {
+                return child.isLeaf() ? child : child.getLeastLeaf();
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private TrieNode getGreatestLeaf(final RadixTreeNode node) {
+        if (node != root) {
+            return node.getGreatestLeaf();
+        }
+        for (int i = TrieNode.RADIX - 1; i >= 0; i--) {
+            final RadixTreeNode child = slots.get(i);
+            if (child != null) {
+                return child.isLeaf() ? child : child.getGreatestLeaf();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,255 @@
+package home.tong.card.bin.search.tree;
+
+import home.tong.card.bin.enums.RecordTypeIndicator;
+import home.tong.card.bin.file.parser.BinDetailDecoder;
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.file.parser.BinFileReader;
+import home.tong.card.bin.file.parser.BinProfilePool;
+import home.tong.card.bin.file.parser.BinRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parses the detail records of a BIN file on a fork-join pool, handing them out in the order of the file.
+ * <p>
+ * The thread reading the records reads the lines and cuts them into chunks of whole records, which are parsed
+ * in parallel. A few chunks per thread of the pool are read ahead, so the reading, the parsing and whatever the
+ * records are read for overlap, and the memory taken stays bounded. The time spent in each stage is kept for
+ * the load log.
+ */
+@Slf4j
+final class DetailRecordParser implements Iterator<BinDetailRecord> {
+    static final int CHUNK_SIZE = 2048;
+    // chunks read ahead for every thread of the pool
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    @Nullable
+    private final LineReader reader;
+    @Nullable
+    private final BinFileReader file;
+    private final ForkJoinPool pool;
+    private final BinProfilePool profiles;
+    private final Runnable onChunkRead;
+    private final int maxChunks;
+    private final Deque<ForkJoinTask<BinDetailRecord[]>> chunks = new ArrayDeque<>();
+    private BinDetailRecord[] chunk = new BinDetailRecord[0];
+    private int next;
+    private boolean endOfFile;
+    @Nullable
+    private String trailer;
+    private int chunkCount;
+    private long records;
+    private long readNanos;
+    private long waitNanos;
+    private final AtomicLong parseNanos = new AtomicLong();
+
+    /**
+     * @param profiles    the parsed records are interned into it
+     * @param onChunkRead run on the thread reading the records after each chunk was read
+     */
+    DetailRecordParser(final LineReader reader, final ForkJoinPool pool, final BinProfilePool profiles,
+                       final Runnable onChunkRead) {
+        this(reader, null, pool, profiles, onChunkRead);
+    }
+
+    /**
+     * Parses the records of a mapped BIN file from their bytes with a {@link BinDetailDecoder}, the reader only
+     * hands out views of the records it finds
+     */
+    DetailRecordParser(final BinFileReader file, final ForkJoinPool pool, final BinProfilePool profiles,
+                       final Runnable onChunkRead) {
+        this(null, file, pool, profiles, onChunkRead);
+    }
+
+    private DetailRecordParser(@Nullable final LineReader reader, @Nullable final BinFileReader file,
+                               final ForkJoinPool pool, final BinProfilePool profiles, final Runnable onChunkRead) {
+        this.reader = reader;
+        this.file = file;
+        this.pool = pool;
+        this.profiles = profiles;
+        this.onChunkRead = onChunkRead;
+        maxChunks = Math.max(1, pool.getParallelism() * CHUNKS_PER_THREAD);
+    }
+
+    Stream<BinDetailRecord> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == chunk.length) {
+            readAhead();
+            if (chunks.isEmpty()) {
+                return false;
+            }
+            final long start = System.nanoTime();
+            chunk = chunks.poll().join();
+            waitNanos += System.nanoTime() - start;
+            next = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public BinDetailRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        records++;
+        return chunk[next++];
+    }
+
+    private void readAhead() {
+        final long start = System.nanoTime();
+        try {
+            while (!endOfFile && chunks.size() < maxChunks) {
+                final long first = (long) chunkCount * CHUNK_SIZE;
+                final ForkJoinTask<BinDetailRecord[]> chunk = file == null ? readLines(first) : readRecords(first);
+                if (chunk != null) {
+                    chunks.add(pool.submit(chunk));
+                    chunkCount++;
+                }
+                onChunkRead.run();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            readNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Nullable
+    private ForkJoinTask<BinDetailRecord[]> readLines(final long first) throws IOException {
+        final String[] lines = new String[CHUNK_SIZE];
+        int size = 0;
+        String line;
+        while (size < CHUNK_SIZE && (line = reader.readLine()) != null) {
+            final RecordTypeIndicator indicator = BinRecord.getRecordIndicator(line);
+            if (indicator == RecordTypeIndicator.DETAIL) {
+                lines[size++] = line;
+            } else if (indicator == RecordTypeIndicator.TRAILER) {
+                trailer = line;
+            }
+        }
+        endOfFile = size < CHUNK_SIZE;
+        final int length = size;
+        return size == 0 ? null : ForkJoinTask.adapt(() -> parse(lines, length, first));
+    }
+
+    @Nullable
+    private ForkJoinTask<BinDetailRecord[]> readRecords(final long first) throws IOException {
+        final ByteBuffer[] records = new ByteBuffer[CHUNK_SIZE];
+        int size = 0;
+        while (size < CHUNK_SIZE && file.next()) {
+            final RecordTypeIndicator indicator = file.recordType();
+            if (indicator == RecordTypeIndicator.DETAIL) {
+                records[size++] = file.record();
+            } else if (indicator == RecordTypeIndicator.TRAILER) {
+                trailer = file.line();
+            }
+        }
+        endOfFile = size < CHUNK_SIZE;
+        final int length = size;
+        return size == 0 ? null : ForkJoinTask.adapt(() -> decode(records, length, first));
+    }
+
+    private BinDetailRecord[] parse(final String[] lines, final int size, final long first) {
+        final long start = System.nanoTime();
+        final BinDetailRecord[] parsed = new BinDetailRecord[size];
+        for (int i = 0; i < size; i++) {
+            try {
+                parsed[i] = profiles.intern(new BinDetailRecord(lines[i]));
+            } catch (ParseException e) {
+                log.error("Aborted loading at detail record {} due to exception", first + i + 1, e);
+                throw new RuntimeException(e);
+            }
+        }
+        parseNanos.addAndGet(System.nanoTime() - start);
+        return parsed;
+    }
+
+    private BinDetailRecord[] decode(final ByteBuffer[] records, final int size, final long first) {
+        final long start = System.nanoTime();
+        // one decoder for the chunk, it keeps no state between records but its caches
+        final BinDetailDecoder decoder = new BinDetailDecoder(profiles);
+        final BinDetailRecord[] decoded = new BinDetailRecord[size];
+        for (int i = 0; i < size; i++) {
+            try {
+                decoded[i] = decoder.decode(records[i]);
+            } catch (ParseException e) {
+                log.error("Aborted loading at detail record {} due to exception", first + i + 1, e);
+                throw new RuntimeException(e);
+            }
+        }
+        parseNanos.addAndGet(System.nanoTime() - start);
+        return decoded;
+    }
+
+    /**
+     * The lines of a BIN file, e.g. read by a {@link java.io.BufferedReader}
+     */
+    @FunctionalInterface
+    interface LineReader {
+        /**
+         * @return the next line, null at the end of the file
+         */
+        @Nullable
+        String readLine() throws IOException;
+    }
+
+    /**
+     * Number of records handed out so far
+     */
+    long getRecords() {
+        return records;
+    }
+
+    /**
+     * The trailer record of the file, once the reader got to it
+     */
+    @Nullable
+    String getTrailer() {
+        return trailer;
+    }
+
+    int getThreads() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Time spent reading and splitting the lines, on the thread reading the records
+     */
+    long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * Time the threads of the pool spent parsing, added up
+     */
+    long getParseNanos() {
+        return parseNanos.get();
+    }
+
+    /**
+     * Time the thread reading the records waited for a chunk to be parsed
+     */
+    long getWaitNanos() {
+        return waitNanos;
+    }
+}
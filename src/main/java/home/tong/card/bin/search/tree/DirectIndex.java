@@ -0,0 +1,314 @@
+package home.tong.card.bin.search.tree;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.time.StopWatch;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Table indexed directly by the first 6, or 8, digits of a key, in front of a {@link RadixTree}.
+ * <p>
+ * Every slot of the table is a bucket of keys sharing their first digits. A bucket no range touches answers
+ * null, a bucket that lies inside a single range answers that range, so most lookups are one array read.
+ * The buckets at the ends of a range, buckets touched by several ranges and all keys shorter than the prefix
+ * are looked up in the radix tree. A range of BINs shorter than the prefix never resolves a bucket, the keys it
+ * matches are left to the tree. The buckets of a range that has other ranges nested in it are left to the tree
+ * as well, unless the tree has a key of the range at the start of the bucket. The answers are those of
+ * {@link RadixTree#find}.
+ * <p>
+ * The table takes 4 bytes a bucket, 4 MB for 6 digits and 400 MB for 8 digits. Changes are compiled into
+ * the table by the first lookup after an insert or a delete. A bucket no range touches already answers a miss in
+ * one read, so the index and its tree do without the prefix filter of the other trees.
+ */
+@Slf4j
+public class DirectIndex extends SearchTree {
+    public static final int SHORT_PREFIX = 6;
+    public static final int LONG_PREFIX = 8;
+    // slots that do not hold a record id plus one
+    private static final int EMPTY = 0;
+    private static final int RESIDUAL = -1;
+
+    final RadixTree tree;
+    private final int prefixLength;
+    @Nullable
+    private volatile Table table;
+
+    public DirectIndex(final int compressExponent) {
+        this(compressExponent, SHORT_PREFIX);
+    }
+
+    /**
+     * @param prefixLength {@link #SHORT_PREFIX} or {@link #LONG_PREFIX}
+     */
+    public DirectIndex(final int compressExponent, final int prefixLength) {
+        this(compressExponent, prefixLength, BinBounds.DETAIL_RECORD);
+    }
+
+    /**
+     * @param bounds reads the BIN ranges of the records, see {@link BinBounds}
+     */
+    public DirectIndex(final int compressExponent, final int prefixLength, final BinBounds<BinDetailRecord> bounds) {
+        this(compressExponent, prefixLength, new RadixTree(compressExponent, bounds, BinPrefixFilter.NONE));
+    }
+
+    private DirectIndex(final int compressExponent, final int prefixLength, final RadixTree tree) {
+        super(compressExponent, tree.bounds, tree.prefixFilter);
+        if (prefixLength != SHORT_PREFIX && prefixLength != LONG_PREFIX) {
+            throw new IllegalArgumentException("Prefix length must be " + SHORT_PREFIX + " or " + LONG_PREFIX + ", not " + prefixLength);
+        }
+        this.prefixLength = prefixLength;
+        this.tree = tree;
+    }
+
+    @Override
+    public int size() {
+        return tree.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+    /**
+     * The nodes are those of the tree, the table is only counted once a lookup has compiled it
+     */
+    @Override
+    protected void collectStats(final SearchTreeStats.Builder stats) {
+        tree.collectStats(stats);
+        final Table t = table;
+        if (t != null) {
+            stats.bytes("table", SearchTreeStats.arrayBytes(t.slots.length, Integer.BYTES)
+                    + SearchTreeStats.arrayBytes(t.records.length, SearchTreeStats.REFERENCE) + SearchTreeStats.arrayBytes(t.lengths.length, 1));
+        }
+    }
+
+    @Override
+    public synchronized boolean insert(final String key, final BinDetailRecord data) {
+        if (!tree.insert(key, data)) {
+            return false;
+        }
+        table = null;
+        modified();
+        return true;
+    }
+
+    @Override
+    @Nullable
+    protected BinDetailRecord recordAt(final String key) {
+        return tree.recordAt(key);
+    }
+
+    @Override
+    public synchronized boolean delete(final String key) {
+        if (!tree.delete(key)) {
+            return false;
+        }
+        table = null;
+        modified();
+        return true;
+    }
+
+    /**
+     * A key of the table might match if its bucket is not empty, shorter keys always might
+     */
+    @Override
+    public boolean mightMatch(final CharSequence key) {
+        final int bucket = bucket(key);
+        return bucket < 0 || table().slots[bucket] != EMPTY;
+    }
+
+    @Override
+    @Nullable
+    public BinDetailRecord get(final CharSequence key) {
+        final int bucket = bucket(key);
+        if (bucket < 0) {
+            return tree.get(key);
+        }
+        final Table t = table();
+        final int slot = t.slots[bucket];
+        return slot == RESIDUAL ? tree.get(key) : t.resolved(slot, key.length());
+    }
+
+    @Override
+    @Nullable
+    public BinDetailRecord get(final long panPrefix, final int digits) {
+        if (!PanDigits.isValid(panPrefix, digits)) {
+            return null;
+        }
+        if (digits < prefixLength) {
+            return tree.get(panPrefix, digits);
+        }
+        final Table t = table();
+        final int slot = t.slots[(int) (panPrefix / PanDigits.powerOfTen(digits - prefixLength))];
+        return slot == RESIDUAL ? tree.get(panPrefix, digits) : t.resolved(slot, digits);
+    }
+
+    /**
+     * Lookups do not walk a path of their own, the radix tree backtracks on the residual buckets
+     */
+    @Override
+    @Nullable
+    protected BinDetailRecord backtrack(final NodeStack stack, final CharSequence key, final int index) {
+        return null;
+    }
+
+    /**
+     * The bucket of the first digits of the key, -1 if the key is shorter than the prefix or they are not digits
+     */
+    private int bucket(final CharSequence key) {
+        if (key.length() < prefixLength) {
+            return -1;
+        }
+        int bucket = 0;
+        for (int i = 0; i < prefixLength; i++) {
+            final int digit = key.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            bucket = bucket * 10 + digit;
+        }
+        return bucket;
+    }
+
+    private Table table() {
+        final Table t = table;
+        return t == null ? compile() : t;
+    }
+
+    private synchronized Table compile() {
+        Table t = table;
+        if (t == null) {
+            final StopWatch stopWatch = StopWatch.createStarted();
+            final Set<BinDetailRecord> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+            final Deque<TrieNode> nodes = new ArrayDeque<>();
+            nodes.push(tree.root);
+            while (!nodes.isEmpty()) {
+                final TrieNode node = nodes.pop();
+                if (node.record != null) {
+                    distinct.add(node.record);
+                }
+                if (node.children != null) {
+                    for (final TrieNode child : node.children) {
+                        nodes.push(child);
+                    }
+                }
+            }
+            t = new Table(prefixLength, SearchTreeLoader.getCompressFactor(compressExponent), distinct.toArray(new BinDetailRecord[0]),
+                    bounds);
+            table = t;
+            stopWatch.stop();
+            log.info("Compiled {} ranges into {} buckets, {} resolved and {} residual, in {} ms", distinct.size(),
+                    t.slots.length, t.resolved, t.residual, stopWatch.getTime());
+        }
+        return t;
+    }
+
+    private static final class Table {
+        private final int[] slots;
+        private final BinDetailRecord[] records;
+        private final byte[] lengths;
+        private int resolved;
+        private int residual;
+
+        private Table(final int prefixLength, final int compressFactor, final BinDetailRecord[] records,
+                      final BinBounds<BinDetailRecord> bounds) {
+            this.records = records;
+            slots = new int[(int) PanDigits.powerOfTen(prefixLength)];
+            lengths = new byte[records.length];
+            // first and last bucket each range touches
+            final int[] lows = new int[records.length];
+            final int[] highs = new int[records.length];
+            final List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < records.length; i++) {
+                lengths[i] = (byte) bounds.lowBin(records[i]).length();
+                final int low = bucket(bounds.lowBin(records[i]), '0', prefixLength);
+                final int high = bucket(bounds.highBin(records[i]), '9', prefixLength);
+                if (low < 0 || high < 0) {
+                    // not digits, leave all keys to the tree
+                    Arrays.fill(slots, RESIDUAL);
+                    residual = slots.length;
+                    return;
+                }
+                lows[i] = Math.min(low, high);
+                highs[i] = Math.max(low, high);
+                order.add(i);
+                if (lengths[i] < prefixLength) {
+                    // no key of the table is matched by a range of shorter BINs, it only counts as a nested range
+                    continue;
+                }
+                for (int bucket = lows[i]; bucket <= highs[i]; bucket++) {
+                    slots[bucket] = slots[bucket] == EMPTY ? i + 1 : RESIDUAL;
+                }
+            }
+            order.sort(Comparator.comparingInt(i -> lows[i]));
+
+            int maxHigh = -1;
+            for (int n = 0; n < order.size(); n++) {
+                final int i = order.get(n);
+                // keys of ranges nested in this one could come before a key of a bucket in the tree
+                final boolean overlapping = lows[i] <= maxHigh || n + 1 < order.size() && lows[order.get(n + 1)] <= highs[i];
+                maxHigh = Math.max(maxHigh, highs[i]);
+                for (int bucket = lows[i]; bucket <= highs[i]; bucket++) {
+                    if (slots[bucket] == i + 1 && (bucket == lows[i] || bucket == highs[i]
+                            || overlapping && !hasKeyAt(records[i], bounds, bucket, prefixLength, compressFactor))) {
+                        slots[bucket] = RESIDUAL;
+                    }
+                }
+            }
+            for (final int slot : slots) {
+                if (slot == RESIDUAL) {
+                    residual++;
+                } else if (slot != EMPTY) {
+                    resolved++;
+                }
+            }
+        }
+
+        /**
+         * Returns true if the first key of the bucket, padded with zeros to the BIN length, is a key of the range
+         * in the tree, see {@link SearchTree#forEachExpandedKey}. Lookups in the bucket then never walk back to
+         * the keys of other ranges.
+         */
+        private static boolean hasKeyAt(final BinDetailRecord record, final BinBounds<BinDetailRecord> bounds, final int bucket,
+                                        final int prefixLength, final int compressFactor) {
+            final long low = bounds.lowBinValue(record);
+            final long high = bounds.highBinValue(record);
+            final long key = bucket * PanDigits.powerOfTen(bounds.lowBin(record).length() - prefixLength);
+            return key == low || high - low > compressFactor && key > low && key <= high && key % compressFactor == 0;
+        }
+
+        /**
+         * The record of a bucket inside its range, which covers all keys of the bucket up to its BIN length
+         */
+        @Nullable
+        private BinDetailRecord resolved(final int slot, final int length) {
+            return slot == EMPTY || length > lengths[slot - 1] ? null : records[slot - 1];
+        }
+
+        /**
+         * The bucket of the first digits of the BIN, padded to the prefix length. -1 if they are not digits.
+         */
+        private static int bucket(final String bin, final char padding, final int prefixLength) {
+            int bucket = 0;
+            for (int i = 0; i < prefixLength; i++) {
+                final int digit = (i < bin.length() ? bin.charAt(i) : padding) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                bucket = bucket * 10 + digit;
+            }
+            return bucket;
+        }
+    }
+}
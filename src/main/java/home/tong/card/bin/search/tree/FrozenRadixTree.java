@@ -0,0 +1,179 @@
+package home.tong.card.bin.search.tree;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import org.springframework.lang.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Read-only {@link RadixTree}, see {@link RadixTree#freeze(boolean)}.
+ * <p>
+ * The labels of all nodes are kept as digit bytes in one shared buffer, a node row holds the offset and the
+ * length of its label. Lookups walk the rows the same way {@link RadixTree#get(CharSequence)} walks the nodes.
+ */
+public final class FrozenRadixTree extends FrozenSearchTree {
+    static final int ROW_WIDTH = 6;
+
+    final ByteBuffer labels;
+
+    FrozenRadixTree(final int compressExponent, final IntBuffer nodes, final ByteBuffer labels,
+                    final RecordTable records, final int maxDepth, final BinBounds<BinDetailRecord> bounds,
+                    final BinPrefixFilter prefixFilter) {
+        super(compressExponent, nodes, ROW_WIDTH, records, maxDepth, bounds, prefixFilter);
+        this.labels = labels;
+    }
+
+    static FrozenRadixTree of(final RadixTree tree, final boolean offHeap) {
+        final Compiler compiler = new Compiler(tree.root, ROW_WIDTH, offHeap);
+        int size = 0;
+        for (final TrieNode node : compiler.order) {
+            size += ((RadixTreeNode) node).label.length();
+        }
+        final ByteBuffer labels = offHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        for (int i = 0; i < compiler.order.size(); i++) {
+            final String label = ((RadixTreeNode) compiler.order.get(i)).label;
+            compiler.put(i, LABEL_OFFSET, labels.position());
+            compiler.putLabelLength(i, label.length());
+            for (int j = 0; j < label.length(); j++) {
+                labels.put((byte) label.charAt(j));
+            }
+        }
+        labels.flip();
+        return new FrozenRadixTree(tree.compressExponent, compiler.nodes, labels, compiler.records(), compiler.maxDepth,
+                tree.bounds, tree.prefixFilter.copy());
+    }
+
+    @Override
+    protected void collectStats(final SearchTreeStats.Builder stats) {
+        super.collectStats(stats);
+        stats.bytes(labels.isDirect() ? "labels (off-heap)" : "labels", labels.capacity());
+    }
+
+    @Override
+    protected int labelDigits(final int node) {
+        return labelLength(node);
+    }
+
+    @Override
+    @Nullable
+    public BinDetailRecord get(final CharSequence key) {
+        if (!prefixFilter.mightMatch(key)) {
+            return null;
+        }
+        final int[] stack = stack();
+        int size = 0;
+        int node = ROOT;
+        // start of the remainder of the key that is compared with the label of the node
+        int remainder = 0;
+        int index = 0;
+        boolean brokenOut = false;
+        while (index < key.length()) {
+            final char c = key.charAt(index);
+            stack[size++] = node;
+            node = child(node, c - '0');
+            if (node == NONE) {
+                brokenOut = true;
+                break;
+            }
+            remainder = index;
+            final int labelLength = labelLength(node);
+            if (regionMatches(key, index, node, labelLength)) {
+                index += labelLength;
+            } else if (regionMatches(key, index, node, key.length() - index)) {
+                index = key.length();
+            } else {
+                brokenOut = true;
+                break;
+            }
+        }
+
+        if (!brokenOut) {
+            index = remainder;
+        }
+
+        if (node != NONE) {
+            int leaf = node;
+            if (!isLeaf(node)) {
+                leaf = field(node, compareRemainder(key, remainder, node) <= 0 ? LEAST_LEAF : GREATEST_LEAF);
+            }
+            return getData(key, stack, size, index, leaf);
+        }
+
+        return backtrack(stack, size, key, index);
+    }
+
+    @Override
+    @Nullable
+    protected BinDetailRecord backtrack(final int[] stack, int size, final CharSequence key, final int index) {
+        int tries = Math.min(index - 1, compressExponent);
+        int i = index;
+        while (tries > 0 && size > 0) {
+            final int node = stack[--size];
+            final BinDetailRecord record = record(node);
+            if (isLeaf(node) || record != null) {
+                if (record != null && isInRange(key, record)) {
+                    return record;
+                }
+                if (isLeaf(node)) {
+                    return null;
+                }
+            }
+
+            tries--;
+            final char c = key.charAt(i);
+            i -= labelLength(node);
+            for (int j = c - '1'; j >= 0; j--) { // don't repeat previous path
+                final int child = child(node, j);
+                if (child != NONE) {
+                    final BinDetailRecord childRecord = record(child);
+                    if (childRecord != null && (isInRange(key, childRecord) || isPrefix(key, childRecord))) {
+                        return childRecord;
+                    }
+                    if (!isLeaf(child)) {
+                        final BinDetailRecord greatest = record(field(child, GREATEST_LEAF));
+                        if (greatest != null && (isInRange(key, greatest) || isPrefix(key, greatest))) {
+                            return greatest;
+                        }
+                    }
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Same as {@link SearchTree#regionMatches} with the label of the node
+     */
+    private boolean regionMatches(final CharSequence key, final int offset, final int node, final int length) {
+        if (offset + length > key.length() || length > labelLength(node)) {
+            return false;
+        }
+        final int labelOffset = field(node, LABEL_OFFSET);
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(offset + i) != labels.get(labelOffset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link SearchTree#compareRemainder} with the label of the node
+     */
+    private int compareRemainder(final CharSequence key, final int offset, final int node) {
+        final int length = key.length() - offset;
+        final int labelLength = labelLength(node);
+        final int labelOffset = field(node, LABEL_OFFSET);
+        final int n = Math.min(length, labelLength);
+        for (int i = 0; i < n; i++) {
+            final char c = key.charAt(offset + i);
+            final int l = labels.get(labelOffset + i);
+            if (c != l) {
+                return c - l;
+            }
+        }
+        return length - labelLength;
+    }
+}
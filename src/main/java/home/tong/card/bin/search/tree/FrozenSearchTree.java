@@ -0,0 +1,276 @@
+package home.tong.card.bin.search.tree;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import org.springframework.lang.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only compiled form of a loaded search tree.
+ * <p>
+ * Nodes are rows of ints in one buffer, numbered in breadth first order so that the children of a node are
+ * consecutive rows. A row holds a 10 bit child bitmap, the row of the first child, the record id and the rows
+ * of the least and greatest descendant leaves. Records are kept once each in a record table.
+ * The buffers can be allocated off-heap, in which case only the record table stays on the heap.
+ * <p>
+ * Insert and delete are not supported, load a mutable tree and freeze it again instead.
+ */
+public abstract class FrozenSearchTree extends SearchTree {
+    static final int NONE = -1;
+    static final int ROOT = 0;
+    // ints of a node row
+    static final int META = 0; // child bitmap in the lower 10 bits, label length in the upper 16 bits
+    static final int FIRST_CHILD = 1;
+    static final int RECORD = 2;
+    static final int LEAST_LEAF = 3;
+    static final int GREATEST_LEAF = 4;
+    static final int LABEL_OFFSET = 5;
+    private static final int CHILD_MASK = (1 << TrieNode.RADIX) - 1;
+    private static final int LABEL_LENGTH_SHIFT = 16;
+
+    protected final IntBuffer nodes;
+    protected final int rowWidth;
+    final RecordTable records;
+    final int maxDepth;
+    private final ThreadLocal<int[]> stacks;
+
+    protected FrozenSearchTree(final int compressExponent, final IntBuffer nodes, final int rowWidth,
+                               final RecordTable records, final int maxDepth, final BinBounds<BinDetailRecord> bounds,
+                               final BinPrefixFilter prefixFilter) {
+        super(compressExponent, bounds, prefixFilter);
+        this.nodes = nodes;
+        this.rowWidth = rowWidth;
+        this.records = records;
+        this.maxDepth = maxDepth;
+        // the visited rows of a lookup, the path is never longer than the tree is deep
+        stacks = ThreadLocal.withInitial(() -> new int[maxDepth + 1]);
+        nodeCount = nodes.capacity() / rowWidth;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return isLeaf(ROOT);
+    }
+
+    @Override
+    public boolean insert(final String key, final BinDetailRecord data) {
+        throw new UnsupportedOperationException("Frozen search tree is read only");
+    }
+
+    @Override
+    public boolean delete(final String key) {
+        throw new UnsupportedOperationException("Frozen search tree is read only");
+    }
+
+    @Override
+    public boolean insertBinRange(final int compressFactor, final BinDetailRecord data) {
+        throw new UnsupportedOperationException("Frozen search tree is read only");
+    }
+
+    @Override
+    public boolean deleteBinRange(final int compressFactor, final BinDetailRecord data) {
+        throw new UnsupportedOperationException("Frozen search tree is read only");
+    }
+
+    @Override
+    @Nullable
+    protected BinDetailRecord recordAt(final String key) {
+        throw new UnsupportedOperationException("Frozen search tree is read only");
+    }
+
+    /**
+     * The frozen trees backtrack over row numbers, see {@link #backtrack(int[], int, CharSequence, int)}
+     */
+    @Override
+    @Nullable
+    protected BinDetailRecord backtrack(final NodeStack stack, final CharSequence key, final int index) {
+        return null;
+    }
+
+    @Nullable
+    protected abstract BinDetailRecord backtrack(int[] stack, int size, CharSequence key, int index);
+
+    /**
+     * Walks the rows in order, the depth of the children of a row is known once the row is reached. Keys are
+     * counted by record id, so the records of a snapshot are not parsed.
+     */
+    @Override
+    protected void collectStats(final SearchTreeStats.Builder stats) {
+        final int rows = nodes.capacity() / rowWidth;
+        final int[] depths = new int[rows];
+        for (int node = 0; node < rows; node++) {
+            final int fanOut = Integer.bitCount(field(node, META) & CHILD_MASK);
+            if (fanOut > 0) {
+                Arrays.fill(depths, field(node, FIRST_CHILD), field(node, FIRST_CHILD) + fanOut, depths[node] + 1);
+            }
+            stats.node(depths[node], fanOut, labelDigits(node));
+            final int id = field(node, RECORD);
+            if (id != NONE) {
+                stats.key(id);
+            }
+        }
+        stats.bytes(isOffHeap() ? "nodes (off-heap)" : "nodes", (long) nodes.capacity() * Integer.BYTES)
+                .bytes("record table", records.estimatedBytes());
+    }
+
+    /**
+     * Number of digits of the key the node stands for
+     */
+    protected abstract int labelDigits(int node);
+
+    public int getRecordCount() {
+        return records.size();
+    }
+
+    public boolean isOffHeap() {
+        return nodes.isDirect();
+    }
+
+    protected int[] stack() {
+        return stacks.get();
+    }
+
+    protected final int field(final int node, final int field) {
+        return nodes.get(node * rowWidth + field);
+    }
+
+    protected final boolean isLeaf(final int node) {
+        return (field(node, META) & CHILD_MASK) == 0;
+    }
+
+    protected final int labelLength(final int node) {
+        return field(node, META) >>> LABEL_LENGTH_SHIFT;
+    }
+
+    /**
+     * Row of the child for the digit, {@link #NONE} if there is no such child
+     */
+    protected final int child(final int node, final int digit) {
+        if (digit < 0 || digit >= TrieNode.RADIX) {
+            return NONE;
+        }
+        final int bitmap = field(node, META) & CHILD_MASK;
+        if ((bitmap & (1 << digit)) == 0) {
+            return NONE;
+        }
+        return field(node, FIRST_CHILD) + Integer.bitCount(bitmap & ((1 << digit) - 1));
+    }
+
+    @Nullable
+    protected final BinDetailRecord record(final int node) {
+        final int id = field(node, RECORD);
+        return id == NONE ? null : records.get(id);
+    }
+
+    @Nullable
+    protected BinDetailRecord getData(final CharSequence key, final int[] stack, final int size, final int index, final int leaf) {
+        final BinDetailRecord leafRecord = record(leaf);
+        if (leafRecord == null) {
+            return null;
+        }
+        if (isInRange(key, leafRecord)) {
+            return leafRecord;
+        }
+        // the previous entry could be a better match, see SearchTree#getData
+        final BinDetailRecord r = backtrack(stack, size, key, index);
+        if (r != null && isInRange(key, r)) {
+            return r;
+        }
+        if (isPrefix(key, leafRecord)) {
+            return leafRecord;
+        }
+        if (r != null && isPrefix(key, r)) {
+            return r;
+        }
+        return null;
+    }
+
+    static IntBuffer allocateInts(final int size, final boolean offHeap) {
+        return offHeap ? ByteBuffer.allocateDirect(size * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer()
+                : IntBuffer.allocate(size);
+    }
+
+    /**
+     * Numbers the nodes of a mutable tree in breadth first order and fills in their rows
+     */
+    static final class Compiler {
+        final List<TrieNode> order = new ArrayList<>();
+        final List<Integer> depths = new ArrayList<>();
+        final Map<BinDetailRecord, Integer> recordIds = new IdentityHashMap<>();
+        final List<BinDetailRecord> records = new ArrayList<>();
+        final IntBuffer nodes;
+        final int rowWidth;
+        int maxDepth;
+
+        Compiler(final TrieNode root, final int rowWidth, final boolean offHeap) {
+            this.rowWidth = rowWidth;
+            order.add(root);
+            depths.add(0);
+            for (int i = 0; i < order.size(); i++) {
+                final TrieNode node = order.get(i);
+                if (node.children != null) {
+                    for (final TrieNode child : node.children) {
+                        order.add(child);
+                        depths.add(depths.get(i) + 1);
+                    }
+                }
+            }
+
+            nodes = allocateInts(order.size() * rowWidth, offHeap);
+            int firstChild = 1;
+            for (int i = 0; i < order.size(); i++) {
+                final TrieNode node = order.get(i);
+                final int bitmap = node.bitmap;
+                put(i, META, bitmap);
+                put(i, FIRST_CHILD, bitmap == 0 ? NONE : firstChild);
+                put(i, RECORD, node.record == null ? NONE : recordId(node.record));
+                firstChild += Integer.bitCount(bitmap);
+                maxDepth = Math.max(maxDepth, depths.get(i));
+            }
+
+            // children come after their parent, so they are done first when going backwards
+            for (int i = order.size() - 1; i >= 0; i--) {
+                final int bitmap = get(i, META) & CHILD_MASK;
+                if (bitmap == 0) {
+                    put(i, LEAST_LEAF, NONE);
+                    put(i, GREATEST_LEAF, NONE);
+                } else {
+                    final int first = get(i, FIRST_CHILD);
+                    final int last = first + Integer.bitCount(bitmap) - 1;
+                    put(i, LEAST_LEAF, (get(first, META) & CHILD_MASK) == 0 ? first : get(first, LEAST_LEAF));
+                    put(i, GREATEST_LEAF, (get(last, META) & CHILD_MASK) == 0 ? last : get(last, GREATEST_LEAF));
+                }
+            }
+        }
+
+        void putLabelLength(final int node, final int length) {
+            put(node, META, get(node, META) | length << LABEL_LENGTH_SHIFT);
+        }
+
+        RecordTable records() {
+            return RecordTable.of(records.toArray(new BinDetailRecord[0]));
+        }
+
+        private int recordId(final BinDetailRecord record) {
+            return recordIds.computeIfAbsent(record, r -> {
+                records.add(r);
+                return records.size() - 1;
+            });
+        }
+
+        int get(final int node, final int field) {
+            return nodes.get(node * rowWidth + field);
+        }
+
+        void put(final int node, final int field, final int value) {
+            nodes.put(node * rowWidth + field, value);
+        }
+    }
+}
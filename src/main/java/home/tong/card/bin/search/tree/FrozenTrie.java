@@ -0,0 +1,85 @@
+package home.tong.card.bin.search.tree;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import org.springframework.lang.Nullable;
+
+import java.nio.IntBuffer;
+
+/**
+ * Read-only {@link Trie}, see {@link Trie#freeze(boolean)}.
+ * <p>
+ * Every edge is one digit, which is given by the position of the child in the bitmap of its parent,
+ * so no labels are stored. Lookups walk the rows the same way {@link Trie#get(CharSequence)} walks the nodes.
+ */
+public final class FrozenTrie extends FrozenSearchTree {
+    static final int ROW_WIDTH = 5;
+
+    FrozenTrie(final int compressExponent, final IntBuffer nodes, final RecordTable records, final int maxDepth,
+               final BinBounds<BinDetailRecord> bounds, final BinPrefixFilter prefixFilter) {
+        super(compressExponent, nodes, ROW_WIDTH, records, maxDepth, bounds, prefixFilter);
+    }
+
+    static FrozenTrie of(final Trie tree, final boolean offHeap) {
+        final Compiler compiler = new Compiler(tree.root, ROW_WIDTH, offHeap);
+        return new FrozenTrie(tree.compressExponent, compiler.nodes, compiler.records(), compiler.maxDepth,
+                tree.bounds, tree.prefixFilter.copy());
+    }
+
+    @Override
+    protected int labelDigits(final int node) {
+        return node == ROOT ? 0 : 1;
+    }
+
+    @Override
+    @Nullable
+    public BinDetailRecord get(final CharSequence key) {
+        if (!prefixFilter.mightMatch(key)) {
+            return null;
+        }
+        final int[] stack = stack();
+        int size = 0;
+        int node = ROOT;
+        int i = 0;
+        while (i < key.length() && node != NONE) {
+            final char c = key.charAt(i++);
+            stack[size++] = node;
+            node = child(node, c - '0');
+        }
+        --i;
+
+        if (node != NONE) {
+            final int leaf = isLeaf(node) ? node : field(node, LEAST_LEAF);
+            return getData(key, stack, size, i, leaf);
+        }
+
+        return backtrack(stack, size, key, i);
+    }
+
+    @Override
+    @Nullable
+    protected BinDetailRecord backtrack(final int[] stack, int size, final CharSequence key, final int index) {
+        int tries = Math.min(index - 1, compressExponent);
+        int i = index;
+        while (tries > 0 && size > 0) {
+            tries--;
+            final int node = stack[--size];
+            if (isLeaf(node)) {
+                final BinDetailRecord record = record(node);
+                return record != null && isInRange(key, record) ? record : null;
+            }
+
+            final char c = key.charAt(i--);
+            for (int j = c - '1'; j >= 0; j--) { // don't repeat previous path
+                final int child = child(node, j);
+                if (child != NONE) {
+                    final BinDetailRecord greatest = record(isLeaf(child) ? child : field(child, GREATEST_LEAF));
+                    if (greatest != null && (isInRange(key, greatest) || isPrefix(key, greatest))) {
+                        return greatest;
+                    }
+                    break;
+                }
+            }
+        }
+        return null;
+    }
+}
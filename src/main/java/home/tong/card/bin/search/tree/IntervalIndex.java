@@ -0,0 +1,321 @@
+package home.tong.card.bin.search.tree;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.lang.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sorted interval index. Each BIN range is kept once, as a pair of bounds right padded with zeros
+ * to 19 digits, no matter how wide the range is. There is no key expansion by compress factor.
+ * <p>
+ * Lookups give the same answers as {@link RadixTree#find}: the range covering the key, otherwise the
+ * first range whose low BIN starts with the key (the prefix match fallback of {@link SearchTree#getData}).
+ * The low bounds are searched in Eytzinger (BFS) order, which keeps the search branch free and cache friendly.
+ * Ranges before the key that end at or after it are found in a max tree of the upper bounds, so a lookup takes
+ * O(log n) for every covering range it passes over, however wide the ranges before the key are.
+ * <p>
+ * Changes are compiled into the sorted arrays by the first lookup after an insert or a delete.
+ */
+@Slf4j
+public class IntervalIndex extends SearchTree {
+    static final int NORMALIZED_DIGITS = 19;
+    private static final long[] POWERS_OF_TEN = new long[NORMALIZED_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10; // 10^19 wraps, but is only used as an unsigned value
+        }
+    }
+
+    private final Map<String, BinDetailRecord> entries = new HashMap<>();
+    @Nullable
+    private volatile Layout layout;
+
+    public IntervalIndex(final int compressExponent) {
+        super(compressExponent);
+    }
+
+    /**
+     * @param bounds reads the BIN ranges of the records, see {@link BinBounds}
+     */
+    public IntervalIndex(final int compressExponent, final BinBounds<BinDetailRecord> bounds) {
+        super(compressExponent, bounds);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Every entry is a key, the layout is only counted once a lookup has compiled it
+     */
+    @Override
+    protected synchronized void collectStats(final SearchTreeStats.Builder stats) {
+        long keyBytes = 0;
+        for (final Map.Entry<String, BinDetailRecord> entry : entries.entrySet()) {
+            stats.key(entry.getValue());
+            keyBytes += SearchTreeStats.stringBytes(entry.getKey().length());
+        }
+        // a hash map entry holds the hash, the key, the value and the next entry
+        final int capacity = Integer.highestOneBit(Math.max(1, entries.size() * 4 / 3)) * 2;
+        stats.bytes("entries", SearchTreeStats.arrayBytes(capacity, SearchTreeStats.REFERENCE)
+                + entries.size() * SearchTreeStats.objectBytes(Integer.BYTES + 3 * SearchTreeStats.REFERENCE) + keyBytes);
+        final Layout l = layout;
+        if (l != null) {
+            stats.bytes("layout", 2 * SearchTreeStats.arrayBytes(l.n, Long.BYTES) + SearchTreeStats.arrayBytes(l.maxHighs.length, Long.BYTES)
+                    + SearchTreeStats.arrayBytes(l.n, 1)
+                    + SearchTreeStats.arrayBytes(l.n, SearchTreeStats.REFERENCE) + SearchTreeStats.arrayBytes(l.n + 1, Long.BYTES)
+                    + SearchTreeStats.arrayBytes(l.n + 1, Integer.BYTES));
+        }
+    }
+
+    /**
+     * Indexes the range of the record. The key only identifies the entry for {@link #delete(String)}.
+     */
+    @Override
+    public synchronized boolean insert(final String key, final BinDetailRecord data) {
+        if (!StringUtils.isNumeric(key)) {
+            log.error("Invalid key {} is ignored", key);
+            return false;
+        }
+        prefixFilter.add(bounds.lowBin(data), bounds.highBin(data));
+        if (entries.containsKey(key)) {
+            log.warn("Duplicate key {}", data);
+            return false;
+        }
+        entries.put(key, data);
+        nodeCount++;
+        layout = null;
+        modified();
+        return true;
+    }
+
+    /**
+     * A range is a single entry in this index, so there is nothing to expand
+     */
+    @Override
+    public synchronized boolean insertBinRange(final int compressFactor, final BinDetailRecord data) {
+        if (!insert(bounds.lowBin(data), data)) {
+            log.warn("There is an existing BIN range with low BIN: {}", bounds.lowBin(data));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * A range is a single entry in this index, at its low BIN
+     */
+    @Override
+    public synchronized boolean deleteBinRange(final int compressFactor, final BinDetailRecord data) {
+        final BinDetailRecord record = entries.get(bounds.lowBin(data));
+        if (record == null || !bounds.highBin(record).equals(bounds.highBin(data))) {
+            log.warn("There is no BIN range [{}, {}] to delete", bounds.lowBin(data), bounds.highBin(data));
+            return false;
+        }
+        return delete(bounds.lowBin(data));
+    }
+
+    @Override
+    @Nullable
+    protected synchronized BinDetailRecord recordAt(final String key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public synchronized boolean delete(final String key) {
+        if (entries.remove(key) == null) {
+            log.warn("BIN {} does not exists in search tree", key);
+            return false;
+        }
+        nodeCount--;
+        layout = null;
+        modified();
+        return true;
+    }
+
+    @Override
+    @Nullable
+    public BinDetailRecord get(final CharSequence key) {
+        final int length = key.length();
+        if (length > NORMALIZED_DIGITS || length > 0 && !StringUtils.isNumeric(key) || !prefixFilter.mightMatch(key)) {
+            return null;
+        }
+        Layout l = layout;
+        if (l == null) {
+            l = compile();
+        }
+        return l.find(normalize(key), length);
+    }
+
+    @Override
+    @Nullable
+    public BinDetailRecord get(final long panPrefix, final int digits) {
+        if (!PanDigits.isValid(panPrefix, digits) || !prefixFilter.mightMatch(panPrefix, digits)) {
+            return null;
+        }
+        Layout l = layout;
+        if (l == null) {
+            l = compile();
+        }
+        return l.find(panPrefix * POWERS_OF_TEN[NORMALIZED_DIGITS - digits] + Long.MIN_VALUE, digits);
+    }
+
+    /**
+     * There is no tree path to walk back along, predecessors come straight from the sorted arrays
+     */
+    @Override
+    @Nullable
+    protected BinDetailRecord backtrack(final NodeStack stack, final CharSequence key, final int index) {
+        return null;
+    }
+
+    private synchronized Layout compile() {
+        Layout l = layout;
+        if (l == null) {
+            final Set<BinDetailRecord> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+            distinct.addAll(entries.values());
+            l = new Layout(distinct.toArray(new BinDetailRecord[0]), bounds);
+            layout = l;
+        }
+        return l;
+    }
+
+    /**
+     * Right pads the digits with zeros to 19 digits. The unsigned result is biased by {@link Long#MIN_VALUE}
+     * so that signed comparison orders it correctly.
+     */
+    static long normalize(final CharSequence digits) {
+        long value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            value = value * 10 + (digits.charAt(i) - '0');
+        }
+        return value * POWERS_OF_TEN[NORMALIZED_DIGITS - digits.length()] + Long.MIN_VALUE;
+    }
+
+    private static final class Layout {
+        private final int n;
+        private final long[] lows;
+        private final long[] highs;
+        // max tree of the upper bounds: the leaves from index leaves on, every other node the highest of its two children
+        private final int leaves;
+        private final long[] maxHighs;
+        private final byte[] lengths;
+        private final BinDetailRecord[] records;
+        private final long[] eytzinger;
+        private final int[] ranks;
+
+        private Layout(final BinDetailRecord[] sorted, final BinBounds<BinDetailRecord> bounds) {
+            final long[] normalizedLows = new long[sorted.length];
+            final Integer[] order = new Integer[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                normalizedLows[i] = normalize(bounds.lowBin(sorted[i]));
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.<Integer>comparingLong(i -> normalizedLows[i])
+                    .thenComparingInt(i -> bounds.lowBin(sorted[i]).length()));
+
+            n = sorted.length;
+            lows = new long[n];
+            highs = new long[n];
+            leaves = Integer.highestOneBit(Math.max(1, n - 1)) << 1;
+            maxHighs = new long[2 * leaves];
+            Arrays.fill(maxHighs, Long.MIN_VALUE);
+            lengths = new byte[n];
+            records = new BinDetailRecord[n];
+            for (int i = 0; i < n; i++) {
+                final BinDetailRecord record = sorted[order[i]];
+                lows[i] = normalizedLows[order[i]];
+                highs[i] = normalize(bounds.highBin(record));
+                maxHighs[leaves + i] = highs[i];
+                lengths[i] = (byte) bounds.lowBin(record).length();
+                records[i] = record;
+            }
+            for (int v = leaves - 1; v > 0; v--) {
+                maxHighs[v] = Math.max(maxHighs[2 * v], maxHighs[2 * v + 1]);
+            }
+            eytzinger = new long[n + 1];
+            ranks = new int[n + 1];
+            fill(0, 1);
+        }
+
+        private int fill(int i, final int k) {
+            if (k <= n) {
+                i = fill(i, 2 * k);
+                eytzinger[k] = lows[i];
+                ranks[k] = i++;
+                i = fill(i, 2 * k + 1);
+            }
+            return i;
+        }
+
+        /**
+         * Index of the last entry with a low bound not greater than the key, -1 if there is none
+         */
+        private int predecessor(final long key) {
+            int k = 1;
+            while (k <= n) {
+                k = (k << 1) + (eytzinger[k] <= key ? 1 : 0);
+            }
+            k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+            return (k == 0 ? n : ranks[k]) - 1;
+        }
+
+        /**
+         * Index of the last entry up to and including i with an upper bound not less than the key, -1 if there is none
+         */
+        private int lastCovering(final int i, final long key) {
+            if (i < 0) {
+                return -1;
+            }
+            int v = leaves + i;
+            while (maxHighs[v] < key) {
+                // up to the first ancestor that is a right child, then over to its left sibling
+                while ((v & 1) == 0) {
+                    v >>>= 1;
+                }
+                if (v == 1) {
+                    return -1;
+                }
+                v--;
+            }
+            while (v < leaves) {
+                v = maxHighs[2 * v + 1] >= key ? 2 * v + 1 : 2 * v;
+            }
+            return v - leaves;
+        }
+
+        @Nullable
+        private BinDetailRecord find(final long key, final int length) {
+            final int p = predecessor(key);
+            for (int i = lastCovering(p, key); i >= 0; i = lastCovering(i - 1, key)) {
+                if (lengths[i] >= length) {
+                    return records[i];
+                }
+            }
+
+            // No range covers the key, look for the first low BIN starting with the key
+            int i = p;
+            while (i >= 0 && lows[i] == key) {
+                i--;
+            }
+            final long last = key + (POWERS_OF_TEN[NORMALIZED_DIGITS - length] - 1);
+            for (i++; i < n && lows[i] <= last; i++) {
+                if (lengths[i] >= length) {
+                    return records[i];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package home.tong.card.bin.search.tree;
+
+import java.util.Arrays;
+
+/**
+ * Path of the nodes visited by a lookup, kept for backtracking.
+ * <p>
+ * Every thread reuses its own stack, so the lookup path does not allocate once the stack has grown to
+ * the longest key seen. The stack is cleared after every lookup so that it does not keep a replaced tree alive.
+ * A {@link RadixTree.Cursor} has a stack of its own, which keeps the path shared with the next key.
+ */
+final class NodeStack {
+    static final int INITIAL_DEPTH = 20; // 19 digit PAN plus the root
+    private static final ThreadLocal<NodeStack> STACKS = ThreadLocal.withInitial(NodeStack::new);
+
+    private TrieNode[] nodes = new TrieNode[INITIAL_DEPTH];
+    private int size;
+
+    NodeStack() {
+    }
+
+    static NodeStack get() {
+        return STACKS.get();
+    }
+
+    void push(final TrieNode node) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+        }
+        nodes[size++] = node;
+    }
+
+    TrieNode pop() {
+        final TrieNode node = nodes[--size];
+        nodes[size] = null;
+        return node;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Pops the nodes above the given size
+     */
+    void truncate(final int newSize) {
+        if (newSize < size) {
+            Arrays.fill(nodes, newSize, size, null);
+            size = newSize;
+        }
+    }
+
+    void clear() {
+        Arrays.fill(nodes, 0, size, null);
+        size = 0;
+    }
+}
@@ -0,0 +1,90 @@
+package home.tong.card.bin.search.tree;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Digits of a PAN prefix held as a long. Digits are split off arithmetically once per lookup and BIN ranges
+ * are compared numerically, so a lookup by number never converts the PAN to a {@link String}.
+ * <p>
+ * Every thread reuses its own instance, the key must not be kept after the lookup returns.
+ */
+final class PanDigits implements CharSequence {
+    static final int MAX_DIGITS = 19;
+    private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS];
+    private static final ThreadLocal<PanDigits> KEYS = ThreadLocal.withInitial(PanDigits::new);
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final char[] digits = new char[MAX_DIGITS];
+    private long value;
+    private int length;
+
+    private PanDigits() {
+    }
+
+    /**
+     * Returns true if the value is not negative and has no more than the given number of digits
+     */
+    static boolean isValid(final long value, final int digits) {
+        return digits >= 0 && digits <= MAX_DIGITS && value >= 0 && (digits == MAX_DIGITS || value < POWERS_OF_TEN[digits]);
+    }
+
+    /**
+     * 10 to the given power, up to 18
+     */
+    static long powerOfTen(final int exponent) {
+        return POWERS_OF_TEN[exponent];
+    }
+
+    static PanDigits of(final long value, final int digits) {
+        final PanDigits key = KEYS.get();
+        key.value = value;
+        key.length = digits;
+        long remaining = value;
+        for (int i = digits - 1; i >= 0; i--) {
+            key.digits[i] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        return key;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        return digits[index];
+    }
+
+    /**
+     * Same as {@link SearchTree#isInRange} for BINs of the given length that are both numeric
+     */
+    boolean isInRange(final int binLength, final long lowBin, final long highBin) {
+        final long padded = value * POWERS_OF_TEN[binLength - length];
+        return lowBin <= padded && padded <= highBin;
+    }
+
+    /**
+     * Returns true if the numeric BIN of the given length starts with this key
+     */
+    boolean isPrefixOf(final int binLength, final long bin) {
+        return bin / POWERS_OF_TEN[binLength - length] == value;
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return length == 0 ? StringUtils.EMPTY : StringUtils.leftPad(String.valueOf(value), length, '0');
+    }
+}
@@ -3,12 +3,11 @@ package home.tong.card.bin.search.tree;
 import home.tong.card.bin.file.parser.BinDetailRecord;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.lang.Nullable;
 
 import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Deque;
-import java.util.Objects;
-import java.util.Optional;
 
 @Slf4j
 public class RadixTree extends SearchTree {
@@ -18,18 +17,35 @@ public class RadixTree extends SearchTree {
         super(compressExponent);
     }
 
+    /**
+     * @param bounds reads the BIN ranges of the records, see {@link BinBounds}
+     */
+    public RadixTree(final int compressExponent, final BinBounds<BinDetailRecord> bounds) {
+        super(compressExponent, bounds);
+    }
+
+    RadixTree(final int compressExponent, final BinBounds<BinDetailRecord> bounds, final BinPrefixFilter prefixFilter) {
+        super(compressExponent, bounds, prefixFilter);
+    }
+
     @Override
     public boolean isEmpty() {
-        return Objects.isNull(root.children) || Arrays.stream(root.children).allMatch(Objects::isNull);
+        return root.isLeaf();
+    }
+
+    @Override
+    protected synchronized void collectStats(final SearchTreeStats.Builder stats) {
+        root.collectStats(0, stats);
     }
 
     @Override
     public synchronized boolean insert(final String key, final BinDetailRecord record) {
-        log.info("inserting key {} into tree", key);
+        log.debug("inserting key {} into tree", key);
         if (!StringUtils.isNumeric(key)) {
             log.error("Invalid key {} is ignored", key);
             return false;
         }
+        prefixFilter.add(bounds.lowBin(record), bounds.highBin(record));
         RadixTreeNode node = root;
         RadixTreeNode parent = null;
         int i = 0;
@@ -39,6 +55,8 @@ public class RadixTree extends SearchTree {
                 final String label = key.substring(i);
                 node.addChild(label, record);
                 nodeCount++;
+                refreshPath(key);
+                modified();
                 return true;
             } else {
                 parent = node;
@@ -63,6 +81,8 @@ public class RadixTree extends SearchTree {
                         innerNode.addChild(label, record);
                         nodeCount++;
                     }
+                    refreshPath(key);
+                    modified();
                     return true;
                 }
             }
@@ -73,12 +93,13 @@ public class RadixTree extends SearchTree {
             return false;
         }
         node.record = record;
+        modified();
         return true;
     }
 
     @Override
     public synchronized boolean delete(final String key) {
-        log.info("deleting key {} from tree", key);
+        log.debug("deleting key {} from tree", key);
         RadixTreeNode node = root;
         final Deque<RadixTreeNode> stack = new ArrayDeque<>();
         int i = 0;
@@ -111,9 +132,46 @@ public class RadixTree extends SearchTree {
         if (parent.numberOfChildren() == 1) {
             combine(parent);
         }
+        refreshPath(key);
+        modified();
         return true;
     }
 
+    @Override
+    @Nullable
+    protected synchronized BinDetailRecord recordAt(final String key) {
+        RadixTreeNode node = root;
+        int i = 0;
+        while (i < key.length()) {
+            node = node.getChild(key.charAt(i));
+            if (node == null || !key.startsWith(node.label, i)) {
+                return null;
+            }
+            i += node.label.length();
+        }
+        return node.record;
+    }
+
+    /**
+     * Refreshes the cached leaves of the nodes on the path of the key bottom up, after a node on it changed
+     */
+    private void refreshPath(final String key) {
+        final TrieNode[] path = new TrieNode[key.length() + 1];
+        int size = 0;
+        int i = 0;
+        RadixTreeNode node = root;
+        while (node != null) {
+            path[size++] = node;
+            node = i < key.length() ? node.getChild(key.charAt(i)) : null;
+            if (node != null) {
+                i += node.label.length();
+            }
+        }
+        while (size > 0) {
+            path[--size].refresh();
+        }
+    }
+
     private synchronized void combine(final RadixTreeNode node) {
         final RadixTreeNode child = node.getChildren().get(0);
         node.label = node.label + child.label;
@@ -126,14 +184,41 @@ public class RadixTree extends SearchTree {
         }
     }
 
+    public FrozenRadixTree freeze() {
+        return freeze(false);
+    }
+
+    /**
+     * Compiles the tree into a compact read-only {@link FrozenRadixTree} that gives the same lookup answers.
+     * This tree is left as it is.
+     *
+     * @param offHeap keep the nodes in direct buffers outside of the Java heap
+     */
+    public synchronized FrozenRadixTree freeze(final boolean offHeap) {
+        return FrozenRadixTree.of(this, offHeap);
+    }
+
     @Override
-    public Optional<BinDetailRecord> find(final String key) {
+    @Nullable
+    public BinDetailRecord get(final CharSequence key) {
+        if (!prefixFilter.mightMatch(key)) {
+            return null;
+        }
+        final NodeStack stack = NodeStack.get();
+        try {
+            return get(key, stack);
+        } finally {
+            stack.clear();
+        }
+    }
+
+    @Nullable
+    private BinDetailRecord get(final CharSequence key, final NodeStack stack) {
         RadixTreeNode node = root;
-        final Deque<RadixTreeNode> stack = new ArrayDeque<>();
-        String remainder = key;
+        // start of the remainder of the key that is compared with the label of the node
+        int remainder = 0;
         int index = 0;
         boolean brokenOut = false;
-        boolean incrementedByLabel = false;
         while (index < key.length()) {
             final char c = key.charAt(index);
             stack.push(node);
@@ -142,30 +227,33 @@ public class RadixTree extends SearchTree {
                 brokenOut = true;
                 break;
             }
-            remainder = key.substring(index);
-            if (remainder.startsWith(node.label)) {
+            remainder = index;
+            if (regionMatches(key, index, node.label, node.label.length())) {
                 index += node.label.length();
-                incrementedByLabel = true;
-            } else if (node.label.startsWith(remainder)) {
-                index += remainder.length();
-                incrementedByLabel = false;
+            } else if (regionMatches(key, index, node.label, key.length() - index)) {
+                index = key.length();
             } else {
                 brokenOut = true;
                 break;
             }
         }
 
+        return resolve(key, stack, node, remainder, index, brokenOut);
+    }
+
+    /**
+     * Picks the record for the key once the descent stopped at the node, backtracking over the stack if needed
+     */
+    @Nullable
+    private BinDetailRecord resolve(final CharSequence key, final NodeStack stack, @Nullable final RadixTreeNode node,
+                                    final int remainder, int index, final boolean brokenOut) {
         if (!brokenOut) {
-            if (incrementedByLabel) {
-                index -= node.label.length();
-            } else {
-                index -= remainder.length();
-            }
+            index = remainder;
         }
 
         if (node != null) {
             RadixTreeNode leaf = node;
-            if (remainder.compareTo(node.label) <= 0) {
+            if (compareRemainder(key, remainder, node.label) <= 0) {
                 if (!node.isLeaf()) {
                     leaf = (RadixTreeNode) node.getLeastLeaf();
                 }
@@ -180,17 +268,148 @@ public class RadixTree extends SearchTree {
         return backtrack(stack, key, index);
     }
 
-    protected <T extends TrieNode> Optional<BinDetailRecord> backtrack(final Deque<T> stack, final String key, final int index) {
+    /**
+     * Looks up keys sorted in ascending order, such as a sorted batch of PANs, and writes the record matching
+     * keys[i] to results[i]. Same answers as {@link #get(CharSequence)}, see {@link Cursor}.
+     *
+     * @param results at least as long as the keys
+     */
+    public void findAllSorted(final CharSequence[] keys, final BinDetailRecord[] results) {
+        if (results.length < keys.length) {
+            throw new IllegalArgumentException("Results array of length " + results.length + " is shorter than " + keys.length + " keys");
+        }
+        final Cursor cursor = cursor();
+        for (int i = 0; i < keys.length; i++) {
+            results[i] = keys[i] == null ? null : cursor.get(keys[i]);
+        }
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Looks up keys one after the other and keeps the path of the previous key. A key starts its descent
+     * from the deepest node whose label it shares with the previous key, instead of from the root, so
+     * neighboring keys of a sorted batch only walk the part of the path where they differ. A key that is the
+     * same as the previous one gets the previous answer without a lookup.
+     * <p>
+     * The answers are the same as {@link #get(CharSequence)} for keys in any order, sorting only makes the
+     * shared paths longer. A cursor is used by one thread and the tree must not be modified while it is in use.
+     */
+    public final class Cursor {
+        // path[d] is the node reached after matching the labels of d nodes, whose first digit is at starts[d]
+        private RadixTreeNode[] path = new RadixTreeNode[NodeStack.INITIAL_DEPTH];
+        private int[] starts = new int[NodeStack.INITIAL_DEPTH];
+        // number of labels the previous key matched as a whole
+        private int matched;
+        private char[] previous = new char[NodeStack.INITIAL_DEPTH];
+        private int previousLength = -1;
+        @Nullable
+        private BinDetailRecord previousRecord;
+        // the cursor is used by one thread, so it keeps its own stack for backtracking
+        private final NodeStack stack = new NodeStack();
+
+        private Cursor() {
+            path[0] = root;
+        }
+
+        @Nullable
+        public BinDetailRecord get(final CharSequence key) {
+            if (!prefixFilter.mightMatch(key)) {
+                // the path of the previous key is kept for the next one
+                return null;
+            }
+            final int common = rememberKey(key);
+            if (common == key.length() && common == previousLength) {
+                // PANs of a sorted batch often share the BIN they are looked up with
+                return previousRecord;
+            }
+            previousLength = key.length();
+            int depth = 0;
+            while (depth < matched && starts[depth + 1] <= common) {
+                depth++;
+            }
+            final int reused = depth;
+            RadixTreeNode node = path[depth];
+            int index = starts[depth];
+            int remainder = depth == 0 ? 0 : starts[depth - 1];
+            // the descent from here on is the one of RadixTree.get
+            int visited = depth;
+            boolean brokenOut = false;
+            while (index < key.length()) {
+                final RadixTreeNode child = node.getChild(key.charAt(index));
+                visited = depth + 1;
+                if (child == null) {
+                    node = null;
+                    brokenOut = true;
+                    break;
+                }
+                remainder = index;
+                node = child;
+                if (regionMatches(key, index, child.label, child.label.length())) {
+                    index += child.label.length();
+                    if (++depth == path.length) {
+                        path = Arrays.copyOf(path, depth * 2);
+                        starts = Arrays.copyOf(starts, depth * 2);
+                    }
+                    path[depth] = child;
+                    starts[depth] = index;
+                    visited = depth;
+                } else {
+                    if (regionMatches(key, index, child.label, key.length() - index)) {
+                        index = key.length();
+                    } else {
+                        brokenOut = true;
+                    }
+                    break;
+                }
+            }
+            matched = depth;
+
+            // the bottom of the stack is still the path the keys share, unless backtracking popped it
+            stack.truncate(Math.min(reused, visited));
+            for (int d = stack.size(); d < visited; d++) {
+                stack.push(path[d]);
+            }
+            previousRecord = resolve(key, stack, node, remainder, index, brokenOut);
+            return previousRecord;
+        }
+
+        /**
+         * Keeps a copy of the key for the next one
+         *
+         * @return length of the prefix the key shares with the previous one
+         */
+        private int rememberKey(final CharSequence key) {
+            final int n = Math.min(previousLength, key.length());
+            int common = 0;
+            while (common < n && previous[common] == key.charAt(common)) {
+                common++;
+            }
+            if (key.length() > previous.length) {
+                previous = Arrays.copyOf(previous, key.length());
+            }
+            for (int i = common; i < key.length(); i++) {
+                previous[i] = key.charAt(i);
+            }
+            return common;
+        }
+    }
+
+    @Override
+    @Nullable
+    protected BinDetailRecord backtrack(final NodeStack stack, final CharSequence key, final int index) {
         int tries = Math.min(index - 1, compressExponent);
         int i = index;
         while (tries > 0 && !stack.isEmpty()) {
             final RadixTreeNode node = (RadixTreeNode) stack.pop();
             if (node.isLeaf() || node.record != null) {
                 if (isInRange(key, node.record)) {
-                    return Optional.of(node.record);
+                    return node.record;
                 }
                 if (node.isLeaf()) {
-                    return Optional.empty();
+                    return null;
                 }
             }
 
@@ -199,23 +418,23 @@ public class RadixTree extends SearchTree {
             i -= node.label.length();
             int j = c - '1'; // don't repeat previous path
             while (j >= 0) {
-                final RadixTreeNode child = (RadixTreeNode) node.children[j]; //NOSONAR
+                final RadixTreeNode child = (RadixTreeNode) node.child(j);
                 if (child != null) {
                     if ((child.isLeaf() || child.record != null) &&
                         (isInRange(key, child.record) || isPrefix(key, child.record))) {
-                        return Optional.of(child.record);
+                        return child.record;
                     }
                     if (!child.isLeaf()){
                         final RadixTreeNode greatest = (RadixTreeNode) child.getGreatestLeaf();
                         if (greatest != null && (isInRange(key, greatest.record) || isPrefix(key, greatest.record))) {
-                            return Optional.of(greatest.record);
+                            return greatest.record;
                         }
                     }
-                    return Optional.empty();
+                    return null;
                 }
                 j--;
             }
         }
-        return Optional.empty();
+        return null;
     }
 }
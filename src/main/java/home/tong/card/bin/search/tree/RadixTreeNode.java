@@ -10,6 +10,9 @@ import java.util.List;
 
 @EqualsAndHashCode(callSuper = true)
 public class RadixTreeNode extends TrieNode{
+    // what the label field adds to the estimated size of a trie node
+    private static final long LABEL_REFERENCE_BYTES = SearchTreeStats.objectBytes(5 * SearchTreeStats.REFERENCE + Integer.BYTES) - BYTES;
+
     @NonNull
     protected String label;
 
@@ -22,69 +25,59 @@ public class RadixTreeNode extends TrieNode{
         record = r;
     }
 
+    @Override
+    void collectStats(final int depth, final SearchTreeStats.Builder stats) {
+        super.collectStats(depth, stats);
+        stats.bytes("nodes", LABEL_REFERENCE_BYTES).bytes("labels", SearchTreeStats.stringBytes(label.length()));
+    }
+
+    @Override
+    int labelLength(final int depth) {
+        return label.length();
+    }
+
     @Override
     public @Nullable RadixTreeNode getChild(final char c) {
-        return children == null ? null : (RadixTreeNode) children[getIndex(c)];
+        return (RadixTreeNode) child(getIndex(c));
     }
 
     boolean addChild(final RadixTreeNode child) {
-        if (children == null) {
-            children = new TrieNode[RADIX];
-        }
         if (!hasChild(child.label.charAt(0))) {
-            children[getIndex(child.label.charAt(0))] = child;
+            putChild(getIndex(child.label.charAt(0)), child);
+            refresh();
             return true;
         }
         return false;
     }
 
     boolean addChild(final String label, final BinDetailRecord r) {
-        if (children == null) {
-            children = new TrieNode[RADIX];
-        }
         if (hasChild(label.charAt(0))) {
             return false;
         } else {
-            children[getIndex(label.charAt(0))] = new RadixTreeNode(label, r);
+            putChild(getIndex(label.charAt(0)), new RadixTreeNode(label, r));
+            refresh();
             return true;
         }
     }
 
     @Nullable public RadixTreeNode removeChild(final RadixTreeNode node) {
-        if (children == null) {
-            return null;
-        }
-
-        final RadixTreeNode n = (RadixTreeNode) children[node.label.charAt(0) - '0'];
-        if (n.label.equals(node.label)) {
-            children[node.label.charAt(0) - '0'] = null;
+        final RadixTreeNode n = getChild(node.label.charAt(0));
+        if (n != null && n.label.equals(node.label)) {
+            putChild(getIndex(node.label.charAt(0)), null);
+            refresh();
             return n;
         } else {
             return null;
         }
     }
 
-    public int numberOfChildren() {
-        if (children == null)
-            return 0;
-        int c = 0;
-        for (final TrieNode n : children) {
-            if (n != null) {
-                c++;
-            }
-        }
-        return c;
-    }
-
     public List<RadixTreeNode> getChildren() {
         final List<RadixTreeNode> r = new ArrayList<>();
         if (children == null) {
             return r;
         }
         for (final TrieNode n : children) {
-            if (n != null) {
-                r.add((RadixTreeNode) n);
-            }
+            r.add((RadixTreeNode) n);
         }
         return r;
     }
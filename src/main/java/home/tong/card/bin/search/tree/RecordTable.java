@@ -0,0 +1,97 @@
+package home.tong.card.bin.search.tree;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.file.parser.BinProfilePool;
+import org.springframework.lang.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records of a frozen tree by record id.
+ * <p>
+ * The records of a tree frozen in process are all there from the start. The records of a snapshot are kept
+ * as their BIN file lines and are only parsed the first time they are looked up, into records that share their
+ * attributes through a {@link BinProfilePool}.
+ */
+final class RecordTable {
+    private final AtomicReferenceArray<BinDetailRecord> records;
+    // BIN file lines of the records and where each of them starts, the line of record i ends where i + 1 starts
+    @Nullable
+    private final ByteBuffer lines;
+    @Nullable
+    private final IntBuffer offsets;
+    @Nullable
+    private final BinProfilePool profiles;
+
+    private RecordTable(final AtomicReferenceArray<BinDetailRecord> records, @Nullable final ByteBuffer lines,
+                        @Nullable final IntBuffer offsets) {
+        this.records = records;
+        this.lines = lines;
+        this.offsets = offsets;
+        this.profiles = lines == null ? null : new BinProfilePool();
+    }
+
+    static RecordTable of(final BinDetailRecord[] records) {
+        return new RecordTable(new AtomicReferenceArray<>(records), null, null);
+    }
+
+    static RecordTable of(final ByteBuffer lines, final IntBuffer offsets) {
+        return new RecordTable(new AtomicReferenceArray<>(offsets.capacity() - 1), lines, offsets);
+    }
+
+    int size() {
+        return records.length();
+    }
+
+    /**
+     * Estimated bytes of the table, the lines of a snapshot included but not the records themselves
+     */
+    long estimatedBytes() {
+        long bytes = SearchTreeStats.arrayBytes(records.length(), SearchTreeStats.REFERENCE);
+        if (lines != null && offsets != null) {
+            bytes += lines.capacity() + (long) offsets.capacity() * Integer.BYTES;
+        }
+        return bytes;
+    }
+
+    BinDetailRecord get(final int id) {
+        final BinDetailRecord record = records.get(id);
+        if (record != null) {
+            return record;
+        }
+        final BinDetailRecord parsed = parse(id);
+        return records.compareAndSet(id, null, parsed) ? parsed : records.get(id);
+    }
+
+    /**
+     * The BIN file line of the record, as it is written to a snapshot
+     */
+    byte[] line(final int id) {
+        if (lines != null && offsets != null) {
+            final byte[] line = new byte[offsets.get(id + 1) - offsets.get(id)];
+            final ByteBuffer source = lines.duplicate();
+            source.position(offsets.get(id));
+            source.get(line);
+            return line;
+        }
+        final String line = records.get(id).getRecord();
+        if (line == null) {
+            throw new IllegalStateException("Record " + records.get(id) + " was not parsed from a BIN file line");
+        }
+        return line.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private BinDetailRecord parse(final int id) {
+        final String line = new String(line(id), StandardCharsets.ISO_8859_1);
+        try {
+            final BinDetailRecord record = new BinDetailRecord(line);
+            return profiles == null ? record : profiles.intern(record);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Invalid BIN detail record " + id + " in snapshot: " + line, e);
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package home.tong.card.bin.search.tree;
 
 import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.file.parser.BinFlag;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.lang.Nullable;
 
-import java.util.Deque;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * Tree-based data structures for storing and looking up data with a string key
@@ -13,11 +19,33 @@ import java.util.Optional;
  */
 @Slf4j
 public abstract class SearchTree {
+    // findAll splits the keys into a few chunks per thread, so that the threads finishing early can steal
+    private static final int CHUNKS_PER_THREAD = 8;
+    // smaller chunks cost more in task overhead than the lookups take
+    private static final int MIN_CHUNK_SIZE = 1024;
+
     protected int nodeCount = 1; // root node
     protected int compressExponent = 4;
+    private final AtomicLong version = new AtomicLong();
+    // the subclasses add every range to it before inserting it and check it before a lookup walks the tree
+    final BinPrefixFilter prefixFilter;
+    protected final BinBounds<BinDetailRecord> bounds;
 
     protected SearchTree(final int compressExponent) {
+        this(compressExponent, BinBounds.DETAIL_RECORD);
+    }
+
+    /**
+     * @param bounds reads the BIN ranges of the records, see {@link BinBounds}
+     */
+    protected SearchTree(final int compressExponent, final BinBounds<BinDetailRecord> bounds) {
+        this(compressExponent, bounds, new BinPrefixFilter());
+    }
+
+    SearchTree(final int compressExponent, final BinBounds<BinDetailRecord> bounds, final BinPrefixFilter prefixFilter) {
         this.compressExponent = compressExponent;
+        this.bounds = bounds;
+        this.prefixFilter = prefixFilter;
     }
 
     public int size() {
@@ -26,94 +54,381 @@ public abstract class SearchTree {
 
     public abstract boolean isEmpty();
 
+    /**
+     * Walks the tree once and counts its nodes, keys and records, with an estimate of the bytes its structures
+     * take, see {@link SearchTreeStats}. Cheap next to a load, so it can be logged after every reload.
+     */
+    public SearchTreeStats stats() {
+        final SearchTreeStats.Builder stats = new SearchTreeStats.Builder();
+        collectStats(stats);
+        stats.bytes("prefix filter", prefixFilter.bytes());
+        return stats.build(getClass().getSimpleName());
+    }
+
+    /**
+     * Counts the nodes and keys of the tree and adds the bytes of its structures. The counts come from the walk,
+     * not from {@link #size()}.
+     */
+    protected abstract void collectStats(SearchTreeStats.Builder stats);
+
+    /**
+     * Number of edits made to the tree so far. Anything derived from the answers of the tree, such as a
+     * {@link SearchTreeCache}, is stale once it changes.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Called by the subclasses after every edit that can change an answer
+     */
+    protected void modified() {
+        version.incrementAndGet();
+    }
+
     public abstract boolean insert(final String key, final BinDetailRecord data);
 
     public abstract boolean delete(final String key);
 
     public boolean contains(final String key) {
-        return find(key).isPresent();
+        return get(key) != null;
+    }
+
+    public Optional<BinDetailRecord> find(final String key) {
+        return Optional.ofNullable(get(key));
+    }
+
+    /**
+     * Checks the key against a bitmap of the 6 digit prefixes the BIN ranges of the tree cover, in a few
+     * nanoseconds and without walking the tree. Lookups do this first on their own.
+     *
+     * @return false if there is no matching record for sure, true if there might be one
+     */
+    public boolean mightMatch(final CharSequence key) {
+        return prefixFilter.mightMatch(key);
+    }
+
+    /**
+     * Same as {@link #find(String)}, but does not allocate. The key can be a reused mutable {@link CharSequence}.
+     *
+     * @return the matching record, null if there is none
+     */
+    @Nullable
+    public abstract BinDetailRecord get(final CharSequence key);
+
+    /**
+     * Looks up a PAN, or a prefix of it, held as a number. Same answers as {@link #find(String)} with the
+     * number left padded with zeros to the given number of digits.
+     *
+     * @param panPrefix the digits, not negative
+     * @param digits    number of digits of the key, up to 19
+     */
+    public Optional<BinDetailRecord> find(final long panPrefix, final int digits) {
+        return Optional.ofNullable(get(panPrefix, digits));
+    }
+
+    /**
+     * Allocation free variant of {@link #find(long, int)}
+     *
+     * @return the matching record, null if there is none or the key is not valid
+     */
+    @Nullable
+    public BinDetailRecord get(final long panPrefix, final int digits) {
+        if (!PanDigits.isValid(panPrefix, digits) || !prefixFilter.mightMatch(panPrefix, digits)) {
+            return null;
+        }
+        return get(PanDigits.of(panPrefix, digits));
+    }
+
+    /**
+     * Looks up the key and checks the enum attributes of the matching record in one compare of its
+     * {@link BinDetailRecord#getFlags() flags}, e.g. for a rule that only applies to prepaid cards.
+     *
+     * @param mask     the {@link BinFlag#mask() masks} of the attributes to check
+     * @param expected the {@link BinFlag#bits bits} of the values the attributes must have
+     * @return the matching record, empty if there is none or its attributes are not the expected ones
+     */
+    public Optional<BinDetailRecord> find(final String key, final long mask, final long expected) {
+        return Optional.ofNullable(get(key, mask, expected));
     }
 
-    public abstract Optional<BinDetailRecord> find(final String key);
+    /**
+     * Allocation free variant of {@link #find(String, long, long)}
+     */
+    @Nullable
+    public BinDetailRecord get(final CharSequence key, final long mask, final long expected) {
+        return matches(get(key), mask, expected);
+    }
+
+    /**
+     * Same as {@link #get(CharSequence, long, long)} for a key held as a number, see {@link #find(long, int)}
+     */
+    @Nullable
+    public BinDetailRecord get(final long panPrefix, final int digits, final long mask, final long expected) {
+        return matches(get(panPrefix, digits), mask, expected);
+    }
+
+    @Nullable
+    private static BinDetailRecord matches(@Nullable final BinDetailRecord record, final long mask, final long expected) {
+        return record != null && (record.getFlags() & mask) == expected ? record : null;
+    }
+
+    /**
+     * Looks up the keys in parallel on the pool and writes the record matching keys[i] to results[i], null if
+     * there is none. The keys are split into chunks that are looked up with {@link #get(CharSequence)}, so the
+     * lookups do not allocate. The tree must not be modified while the call is running, unless it is a
+     * {@link FrozenSearchTree} or a {@link ConcurrentRadixTree}.
+     *
+     * @param results at least as long as the keys
+     */
+    public void findAll(final CharSequence[] keys, final BinDetailRecord[] results, final ForkJoinPool pool) {
+        if (results.length < keys.length) {
+            throw new IllegalArgumentException("Results array of length " + results.length + " is shorter than " + keys.length + " keys");
+        }
+        final int chunkSize = Math.max(MIN_CHUNK_SIZE, keys.length / (pool.getParallelism() * CHUNKS_PER_THREAD));
+        pool.invoke(new FindAllTask(keys, results, 0, keys.length, chunkSize));
+    }
+
+    /**
+     * Same as {@link #findAll(CharSequence[], BinDetailRecord[], ForkJoinPool)} for keys that come as a stream
+     *
+     * @return the records in the order of the keys, null where there is no match
+     */
+    public BinDetailRecord[] findAll(final Stream<? extends CharSequence> keys, final ForkJoinPool pool) {
+        final CharSequence[] array = keys.toArray(CharSequence[]::new);
+        final BinDetailRecord[] results = new BinDetailRecord[array.length];
+        findAll(array, results, pool);
+        return results;
+    }
+
+    private final class FindAllTask extends RecursiveAction {
+        private final CharSequence[] keys;
+        private final BinDetailRecord[] results;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        private FindAllTask(final CharSequence[] keys, final BinDetailRecord[] results, final int from, final int to, final int chunkSize) {
+            this.keys = keys;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                for (int i = from; i < to; i++) {
+                    results[i] = keys[i] == null ? null : SearchTree.this.get(keys[i]);
+                }
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new FindAllTask(keys, results, from, middle, chunkSize), new FindAllTask(keys, results, middle, to, chunkSize));
+        }
+    }
 
-    public boolean isInRange(final String key, final BinDetailRecord iinbo) {
-        final String lowBin = iinbo.getLowBin();
+    public boolean isInRange(final CharSequence key, final BinDetailRecord iinbo) {
+        return isInRange(key, iinbo, bounds);
+    }
+
+    public boolean isPrefix(final CharSequence key, final BinDetailRecord iinbo) {
+        return isPrefix(key, iinbo, bounds);
+    }
+
+    /**
+     * Returns true if the key, right padded with zeros to the length of the low BIN, lies in the range
+     */
+    public static <T> boolean isInRange(final CharSequence key, final T value, final BinBounds<? super T> bounds) {
+        final String lowBin = bounds.lowBin(value);
         if (key.length() > lowBin.length()) {
             return false;
         }
-        final String highBin = iinbo.getHighBin();
-        final String paddedKey = StringUtils.rightPad(key, lowBin.length(), '0');
-        return lowBin.compareTo(paddedKey) <= 0 && paddedKey.compareTo(highBin) <= 0;
+        final String highBin = bounds.highBin(value);
+        if (key instanceof PanDigits && hasNumericBins(value, bounds, lowBin, highBin)) {
+            return ((PanDigits) key).isInRange(lowBin.length(), bounds.lowBinValue(value), bounds.highBinValue(value));
+        }
+        // compare as if the key was right padded with zeros to the length of the low BIN
+        return comparePadded(key, lowBin.length(), lowBin) >= 0 && comparePadded(key, lowBin.length(), highBin) <= 0;
     }
 
-    public boolean isPrefix(final String key, final BinDetailRecord iinbo) {
-        final String lowBin = iinbo.getLowBin();
+    /**
+     * Returns true if the low or the high BIN of the range starts with the key
+     */
+    public static <T> boolean isPrefix(final CharSequence key, final T value, final BinBounds<? super T> bounds) {
+        final String lowBin = bounds.lowBin(value);
         if (key.length() > lowBin.length()) {
             return false;
         }
-        final String highBin = iinbo.getHighBin();
-        return lowBin.startsWith(key) || highBin.startsWith(key);
+        final String highBin = bounds.highBin(value);
+        if (key instanceof PanDigits && hasNumericBins(value, bounds, lowBin, highBin)) {
+            final PanDigits digits = (PanDigits) key;
+            return digits.isPrefixOf(lowBin.length(), bounds.lowBinValue(value)) ||
+                    digits.isPrefixOf(lowBin.length(), bounds.highBinValue(value));
+        }
+        return regionMatches(key, 0, lowBin, key.length()) || regionMatches(key, 0, highBin, key.length());
+    }
+
+    private static <T> boolean hasNumericBins(final T value, final BinBounds<? super T> bounds, final String lowBin,
+                                              final String highBin) {
+        return bounds.lowBinValue(value) >= 0 && bounds.highBinValue(value) >= 0 && lowBin.length() == highBin.length();
+    }
+
+    /**
+     * Compares the key, right padded with zeros to the given length, with the bound like {@link String#compareTo}
+     */
+    static int comparePadded(final CharSequence key, final int paddedLength, final String bound) {
+        final int n = Math.min(paddedLength, bound.length());
+        for (int i = 0; i < n; i++) {
+            final char c = i < key.length() ? key.charAt(i) : '0';
+            if (c != bound.charAt(i)) {
+                return c - bound.charAt(i);
+            }
+        }
+        return paddedLength - bound.length();
+    }
+
+    /**
+     * Returns true if the key from the offset on and the label share the same first characters
+     */
+    static boolean regionMatches(final CharSequence key, final int offset, final String label, final int length) {
+        if (offset + length > key.length() || length > label.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(offset + i) != label.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares the key from the offset on with the label like {@link String#compareTo}
+     */
+    static int compareRemainder(final CharSequence key, final int offset, final String label) {
+        final int length = key.length() - offset;
+        final int n = Math.min(length, label.length());
+        for (int i = 0; i < n; i++) {
+            final char c = key.charAt(offset + i);
+            if (c != label.charAt(i)) {
+                return c - label.charAt(i);
+            }
+        }
+        return length - label.length();
     }
 
     public synchronized boolean insertBinRange(final int compressFactor, final BinDetailRecord data) {
-        if (!insert(data.getLowBin(), data)) {
-            log.warn("There is an existing BIN range with low BIN: {}", data.getLowBin());
+        final String lowBin = bounds.lowBin(data);
+        if (!insert(lowBin, data)) {
+            log.warn("There is an existing BIN range with low BIN: {}", lowBin);
             return false;
         }
 
-        int count = 1;
-        final int length = data.getLowBin().length();
-        final long binLow = Long.parseLong(data.getLowBin());
-        final long binHigh = Long.parseLong(data.getHighBin());
-        if (binHigh - binLow > compressFactor) {
-            long bin;
-            for (bin = binLow + 1; bin <= binHigh; ++bin) {
-                if (bin % compressFactor == 0) {
-                    final String binStr = String.valueOf(bin);
-                    if (!insert(StringUtils.leftPad(binStr, length, '0'), data)) {
-                        log.warn("Duplicate bin record: {}", data);
-                        return false;
-                    }
-                    count++;
-                    break;
-                }
+        final int[] count = {1};
+        final boolean inserted = forEachExpandedKey(compressFactor, lowBin, bounds.highBin(data), key -> {
+            if (!insert(key, data)) {
+                log.warn("Duplicate bin record: {}", data);
+                return false;
             }
+            count[0]++;
+            return true;
+        });
+        if (count[0] > 1000) { // to reduce logging
+            log.info("Inserted {} nodes in search tree for BIN range [{}, {}]", count[0], lowBin, bounds.highBin(data));
+        }
+        return inserted;
+    }
 
-            for (bin += compressFactor; bin <= binHigh; bin += compressFactor) {
-                final String binStr = String.valueOf(bin);
-                if (!insert(StringUtils.leftPad(binStr, length, '0'), data)) {
-                    log.warn("Duplicate bin record: {}", data);
-                    return false;
-                }
-                count++;
+    /**
+     * Deletes the keys {@link #insertBinRange} inserted for the range of the record. A key is only deleted if its
+     * entry is a range with the same BINs, keys another range got first are left to it.
+     *
+     * @return false if the tree has no entry for the range at its low BIN
+     */
+    public synchronized boolean deleteBinRange(final int compressFactor, final BinDetailRecord data) {
+        final String lowBin = bounds.lowBin(data);
+        final String highBin = bounds.highBin(data);
+        if (!StringUtils.isNumeric(lowBin) || !StringUtils.isNumeric(highBin) || !isRange(recordAt(lowBin), lowBin, highBin)
+                || !delete(lowBin)) {
+            log.warn("There is no BIN range [{}, {}] to delete", lowBin, highBin);
+            return false;
+        }
+        forEachExpandedKey(compressFactor, lowBin, highBin, key -> {
+            if (isRange(recordAt(key), lowBin, highBin)) {
+                delete(key);
             }
+            return true;
+        });
+        return true;
+    }
+
+    /**
+     * Replaces the range of a record with the range of a new version of it, like {@link #deleteBinRange} and then
+     * {@link #insertBinRange}. A lookup of a key of both ranges may miss while the range is replaced, see
+     * {@link ConcurrentRadixTree} for a tree that replaces it without a gap.
+     *
+     * @return false if the tree has no entry for the old range at its low BIN or the new range could not be inserted
+     */
+    public synchronized boolean replaceBinRange(final int compressFactor, final BinDetailRecord oldData, final BinDetailRecord newData) {
+        final boolean deleted = deleteBinRange(compressFactor, oldData);
+        return insertBinRange(compressFactor, newData) && deleted;
+    }
+
+    boolean isRange(@Nullable final BinDetailRecord record, final String lowBin, final String highBin) {
+        return record != null && lowBin.equals(bounds.lowBin(record)) && highBin.equals(bounds.highBin(record));
+    }
+
+    /**
+     * The record of the entry at exactly the key, null if there is none
+     */
+    @Nullable
+    protected abstract BinDetailRecord recordAt(String key);
 
-            if (count > 1000) { // to reduce logging
-                log.info("Inserted {} nodes in search tree for BIN range [{}, {}]", count, binLow, binHigh);
+    /**
+     * Passes the keys a BIN range is expanded to, besides its low BIN, to the action one by one: the multiples
+     * of the compress factor in the range, left padded with zeros to the length of the low BIN.
+     * Nothing is expanded if the range is not wider than the compress factor.
+     *
+     * @param action returns false to stop the expansion
+     * @return false if the action stopped the expansion
+     */
+    static boolean forEachExpandedKey(final int compressFactor, final String lowBin, final String highBin, final Predicate<String> action) {
+        final int length = lowBin.length();
+        final long binLow = Long.parseLong(lowBin);
+        final long binHigh = Long.parseLong(highBin);
+        if (binHigh - binLow > compressFactor) {
+            for (long bin = (binLow / compressFactor + 1) * compressFactor; bin <= binHigh; bin += compressFactor) {
+                if (!action.test(StringUtils.leftPad(String.valueOf(bin), length, '0'))) {
+                    return false;
+                }
             }
         }
         return true;
     }
 
-    protected abstract <T extends TrieNode> Optional<BinDetailRecord> backtrack(final Deque<T> stack, final String key, final int index);
+    @Nullable
+    protected abstract BinDetailRecord backtrack(final NodeStack stack, final CharSequence key, final int index);
 
-    protected <T extends TrieNode> Optional<BinDetailRecord> getData(final String key, final Deque<T> stack, final int index, final TrieNode leaf) {
+    @Nullable
+    protected BinDetailRecord getData(final CharSequence key, final NodeStack stack, final int index, final TrieNode leaf) {
         if (isInRange(key, leaf.record)) {
-            return Optional.of(leaf.record());
+            return leaf.record();
         }
         // The previous entry in the tree could be better match than this one. Here is a corner case:
         // search with key 222899, found a match (2228995, 2228999), this seems a good match. Actually,
         // there is a previous entry (2228980, 2228994) that is a better match
-        final Optional<BinDetailRecord> r = backtrack(stack, key, index);
-        if (r.isPresent() && isInRange(key, r.get())) {
+        final BinDetailRecord r = backtrack(stack, key, index);
+        if (r != null && isInRange(key, r)) {
             return r;
         }
         if (isPrefix(key, leaf.record)) {
-            return Optional.of(leaf.record);
+            return leaf.record;
         }
-        if (r.isPresent() && isPrefix(key, r.get())) {
+        if (r != null && isPrefix(key, r)) {
             return r;
         }
-        return Optional.empty();
+        return null;
     }
 }
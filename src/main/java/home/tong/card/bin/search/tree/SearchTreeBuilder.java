@@ -0,0 +1,363 @@
+package home.tong.card.bin.search.tree;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.StopWatch;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Builds a {@link RadixTree} or a {@link Trie} from BIN records in bulk, instead of calling
+ * {@link SearchTree#insertBinRange} once per record.
+ * <p>
+ * The ranges are expanded to their keys the same way {@link SearchTree#insertBinRange} does. The keys of a range
+ * are in order and the records come sorted by low BIN, so the keys of all records are put in order in one pass by
+ * merging the keys of the ranges that overlap: a key is taken once it is below the low BIN of the next record, as
+ * no later record has a smaller key. Only the ranges that are still open are kept, in a small heap.
+ * <p>
+ * The tree is built in one pass over the sorted keys, where every key starts from the path of the key before it
+ * instead of walking down from the root. No locks are taken. The subtree under each digit of the root is built on
+ * a fork-join pool as soon as the keys under the digit are all there, while the records after them are read, and
+ * the subtrees are attached to the root when they are all done. The keys under a digit are dropped once its
+ * subtree is built.
+ * <p>
+ * The tree built is the same as the one {@link SearchTree#insertBinRange} builds from records sorted by low BIN,
+ * as long as no two records share a key. A key that is shared keeps the record that comes first.
+ */
+@Slf4j
+public class SearchTreeBuilder {
+    // fewer keys than this are not worth handing to the pool
+    private static final int PARALLEL_THRESHOLD = 10000;
+
+    private final ForkJoinPool pool;
+
+    public SearchTreeBuilder() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public SearchTreeBuilder(final ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns true if the tree is an empty {@link RadixTree}, {@link Trie} or {@link DirectIndex}
+     */
+    public static boolean canBuild(final SearchTree tree) {
+        return (tree instanceof RadixTree || tree instanceof Trie || tree instanceof DirectIndex) && tree.isEmpty();
+    }
+
+    /**
+     * Builds the records into the tree. The tree must not be used by other threads until it is built.
+     *
+     * @param tree    an empty {@link RadixTree}, {@link Trie} or {@link DirectIndex}, see {@link #canBuild(SearchTree)}
+     * @param records in the order of the BIN file, sorted by the low BINs of the bounds of the tree
+     * @return the tree
+     * @throws IllegalArgumentException if a record comes after a key above its low BIN was taken, the tree is left
+     *                                  empty
+     */
+    public <T extends SearchTree> T build(final T tree, final Stream<BinDetailRecord> records) {
+        if (!canBuild(tree)) {
+            throw new IllegalArgumentException("Only an empty RadixTree, Trie or DirectIndex can be built, not " + tree.getClass().getSimpleName());
+        }
+        if (tree instanceof DirectIndex) {
+            // the table is compiled from the radix tree by the first lookup
+            build(((DirectIndex) tree).tree, records);
+            tree.modified();
+            return tree;
+        }
+        final StopWatch stopWatch = StopWatch.createStarted();
+        final List<Subtree> subtrees = new ArrayList<>();
+        final long keys = sortedKeys(SearchTreeLoader.getCompressFactor(tree.compressExponent), records, tree, run -> {
+            final Subtree subtree = new Subtree(tree instanceof RadixTree ? new RadixTreeNode("") : new TrieNode(), run);
+            subtrees.add(subtree);
+            if (run.length < PARALLEL_THRESHOLD) {
+                subtree.invoke();
+            } else {
+                pool.execute(subtree);
+            }
+        });
+
+        final TrieNode root = tree instanceof RadixTree ? ((RadixTree) tree).root : ((Trie) tree).root;
+        for (final Subtree subtree : subtrees) {
+            tree.nodeCount += subtree.join();
+            for (int digit = 0; digit < TrieNode.RADIX; digit++) {
+                final TrieNode child = subtree.root.child(digit);
+                if (child != null) {
+                    root.putChild(digit, child);
+                }
+            }
+        }
+        root.refresh();
+        tree.modified();
+        stopWatch.stop();
+        log.info("Built {} of size {} from {} keys in {} ms", tree.getClass().getSimpleName(), tree.size(), keys,
+                stopWatch.getTime());
+        return tree;
+    }
+
+    /**
+     * Expands the records to their keys, with the bounds of the tree, and merges them into order. Keys that come
+     * again are dropped. The ranges are added to the prefix filter of the tree on the way.
+     *
+     * @param runs takes the sorted keys under each digit of the root, in the order of the digits
+     * @return number of keys
+     */
+    private static long sortedKeys(final int compressFactor, final Stream<BinDetailRecord> records, final SearchTree tree,
+                                   final Consumer<Entry[]> runs) {
+        final KeyMerger merger = new KeyMerger(compressFactor, runs);
+        records.forEachOrdered(record -> {
+            final String lowBin = tree.bounds.lowBin(record);
+            final String highBin = tree.bounds.highBin(record);
+            if (!StringUtils.isNumeric(lowBin) || !StringUtils.isNumeric(highBin)) {
+                log.error("Invalid BIN range [{}, {}] is ignored", lowBin, highBin);
+                return;
+            }
+            tree.prefixFilter.add(lowBin, highBin);
+            merger.add(lowBin, highBin, record);
+        });
+        merger.finish();
+        return merger.keys;
+    }
+
+    /**
+     * Adds the sorted keys to the root, which has no children yet
+     *
+     * @return number of nodes added
+     */
+    private static int buildRadixTree(final RadixTreeNode root, final Entry[] entries, final int from, final int to) {
+        // nodes on the path of the previous key, and how many digits of the key end with each of them
+        final RadixTreeNode[] path = new RadixTreeNode[maxKeyLength(entries, from, to) + 1];
+        final int[] ends = new int[path.length];
+        path[0] = root;
+        int depth = 0;
+        int nodeCount = 0;
+        String previous = "";
+        for (int i = from; i < to; i++) {
+            final String key = entries[i].key;
+            final int common = commonPrefixLength(previous, key);
+            while (depth > 0 && ends[depth - 1] >= common) {
+                depth--;
+            }
+            if (ends[depth] > common) {
+                // the key leaves the path within the label of the node, split it
+                final RadixTreeNode node = path[depth];
+                final RadixTreeNode parent = path[depth - 1];
+                final RadixTreeNode innerNode = new RadixTreeNode(node.label.substring(0, common - ends[depth - 1]));
+                parent.removeChild(node);
+                parent.addChild(innerNode);
+                node.label = node.label.substring(common - ends[depth - 1]);
+                innerNode.addChild(node);
+                nodeCount++;
+                path[depth] = innerNode;
+                ends[depth] = common;
+            }
+            path[depth].addChild(key.substring(common), entries[i].record);
+            nodeCount++;
+            path[depth + 1] = path[depth].getChild(key.charAt(common));
+            ends[++depth] = key.length();
+            previous = key;
+        }
+        root.refreshAll();
+        return nodeCount;
+    }
+
+    /**
+     * Adds the sorted keys to the root, which has no children yet
+     *
+     * @return number of nodes added
+     */
+    private static int buildTrie(final TrieNode root, final Entry[] entries, final int from, final int to) {
+        // nodes on the path of the previous key, the node for the first i digits is at i
+        final TrieNode[] path = new TrieNode[maxKeyLength(entries, from, to) + 1];
+        path[0] = root;
+        int nodeCount = 0;
+        String previous = "";
+        for (int i = from; i < to; i++) {
+            final String key = entries[i].key;
+            final int common = commonPrefixLength(previous, key);
+            TrieNode node = path[common];
+            for (int j = common; j < key.length(); j++) {
+                final char c = key.charAt(j);
+                if (j == key.length() - 1) {
+                    // only store data at leafs
+                    node.addChild(c, entries[i].record);
+                } else {
+                    node.addChild(c);
+                }
+                nodeCount++;
+                node = node.getChild(c);
+                path[j + 1] = node;
+            }
+            previous = key;
+        }
+        root.refreshAll();
+        return nodeCount;
+    }
+
+    private static int maxKeyLength(final Entry[] entries, final int from, final int to) {
+        int max = 0;
+        for (int i = from; i < to; i++) {
+            max = Math.max(max, entries[i].key.length());
+        }
+        return max;
+    }
+
+    private static int commonPrefixLength(final String a, final String b) {
+        final int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final BinDetailRecord record;
+
+        private Entry(final String key, final BinDetailRecord record) {
+            this.key = key;
+            this.record = record;
+        }
+    }
+
+    /**
+     * Merges the keys of the ranges of records sorted by low BIN into the sorted keys under each digit of the root
+     */
+    private static final class KeyMerger {
+        private final int compressFactor;
+        private final Consumer<Entry[]> runs;
+        // the ranges with keys left, by their next key and then by their order in the file
+        private final PriorityQueue<ExpandedKeys> open = new PriorityQueue<>();
+        private final List<Entry> run = new ArrayList<>();
+        @Nullable
+        private String previous;
+        private long records;
+        private long keys;
+
+        private KeyMerger(final int compressFactor, final Consumer<Entry[]> runs) {
+            this.compressFactor = compressFactor;
+            this.runs = runs;
+        }
+
+        private void add(final String lowBin, final String highBin, final BinDetailRecord record) {
+            // no later range has a key below the low BIN
+            while (!open.isEmpty() && open.peek().key.compareTo(lowBin) < 0) {
+                next();
+            }
+            open.add(new ExpandedKeys(compressFactor, lowBin, highBin, record, records++));
+        }
+
+        private void finish() {
+            while (!open.isEmpty()) {
+                next();
+            }
+            endRun();
+        }
+
+        private void next() {
+            final ExpandedKeys keys = open.poll();
+            final String key = keys.key;
+            final int order = previous == null ? 1 : key.compareTo(previous);
+            if (order < 0) {
+                throw new IllegalArgumentException("BIN records are not sorted by low BIN, key " + key + " of "
+                        + keys.record + " comes after " + previous);
+            }
+            if (order == 0) {
+                log.warn("Duplicate key {} of {} is ignored", key, keys.record);
+            } else {
+                if (previous != null && previous.charAt(0) != key.charAt(0)) {
+                    endRun();
+                }
+                run.add(new Entry(key, keys.record));
+                previous = key;
+                this.keys++;
+            }
+            if (keys.advance()) {
+                open.add(keys);
+            }
+        }
+
+        private void endRun() {
+            if (!run.isEmpty()) {
+                runs.accept(run.toArray(new Entry[0]));
+                run.clear();
+            }
+        }
+    }
+
+    /**
+     * The low BIN of a range and then the keys it is expanded to, see {@link SearchTree#forEachExpandedKey}
+     */
+    private static final class ExpandedKeys implements Comparable<ExpandedKeys> {
+        private final int compressFactor;
+        private final int length;
+        private final long high;
+        private final BinDetailRecord record;
+        // order of the record in the file, a shared key keeps the record that comes first
+        private final long order;
+        private String key;
+        private long next;
+
+        private ExpandedKeys(final int compressFactor, final String lowBin, final String highBin, final BinDetailRecord record,
+                             final long order) {
+            this.compressFactor = compressFactor;
+            this.record = record;
+            this.order = order;
+            length = lowBin.length();
+            key = lowBin;
+            final long low = Long.parseLong(lowBin);
+            high = Long.parseLong(highBin);
+            // nothing is expanded if the range is not wider than the compress factor
+            next = high - low > compressFactor ? (low / compressFactor + 1) * compressFactor : high + 1;
+        }
+
+        /**
+         * Moves to the next key, returns false if there is none
+         */
+        private boolean advance() {
+            if (next > high) {
+                return false;
+            }
+            key = StringUtils.leftPad(String.valueOf(next), length, '0');
+            next += compressFactor;
+            return true;
+        }
+
+        @Override
+        public int compareTo(final ExpandedKeys other) {
+            final int order = key.compareTo(other.key);
+            return order != 0 ? order : Long.compare(this.order, other.order);
+        }
+    }
+
+    /**
+     * Builds the subtree of the keys under a digit of the root, and lets go of the keys once it is built
+     */
+    private static final class Subtree extends RecursiveTask<Integer> {
+        private final TrieNode root;
+        @Nullable
+        private Entry[] entries;
+
+        private Subtree(final TrieNode root, final Entry[] entries) {
+            this.root = root;
+            this.entries = entries;
+        }
+
+        @Override
+        protected Integer compute() {
+            final Entry[] keys = entries;
+            entries = null;
+            return root instanceof RadixTreeNode ? buildRadixTree((RadixTreeNode) root, keys, 0, keys.length)
+                    : buildTrie(root, keys, 0, keys.length);
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package home.tong.card.bin.search.tree;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of lookup answers in front of a search tree, for traffic where a small set of BINs makes up
+ * most of the lookups. Lookups that found nothing are cached too.
+ * <p>
+ * Eviction follows W-TinyLFU: a new key enters a small LRU window, and a key that falls out of the window only
+ * replaces the LRU entry of the main area if it has been looked up more often. The main area is a segmented
+ * LRU, where keys looked up again move from a probation to a protected segment. How often keys are looked up
+ * is estimated with a count-min sketch of 4-bit counters, which are halved from time to time so that the
+ * estimate follows changes in the traffic. Keys that are looked up once, like full PANs, do not push the hot
+ * BINs out.
+ * <p>
+ * The cache is split into stripes by the hash of the key, each with its own lock, sketch and LRU lists.
+ * <p>
+ * The answers are tied to the tree they came from and its {@link SearchTree#version()}. When the supplier
+ * returns another tree, e.g. after a {@link SearchTreeHolder} reload, or the tree is edited, the whole cache is
+ * invalidated on the next lookup.
+ */
+@Slf4j
+public class SearchTreeCache {
+    private static final int MAX_STRIPES = 16;
+    // smaller stripes give the frequency sketch too little to work with
+    private static final int MIN_STRIPE_SIZE = 64;
+    // cached answer of a lookup that found nothing
+    private static final Object NOT_FOUND = new Object();
+
+    private final Supplier<? extends SearchTree> trees;
+    private final Stripe[] stripes;
+    private final int maximumSize;
+    private volatile Generation generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param trees       returns the tree to look up, e.g. {@code holder::get}, called on every lookup
+     * @param maximumSize number of answers kept at most
+     */
+    public SearchTreeCache(final Supplier<? extends SearchTree> trees, final int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive, not " + maximumSize);
+        }
+        this.trees = trees;
+        this.maximumSize = maximumSize;
+        final int stripeCount = Math.max(1, Integer.highestOneBit(Math.min(MAX_STRIPES, maximumSize / MIN_STRIPE_SIZE)));
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            // the first stripes take the remainder
+            stripes[i] = new Stripe(maximumSize / stripeCount + (i < maximumSize % stripeCount ? 1 : 0));
+        }
+        final SearchTree tree = trees.get();
+        generation = new Generation(tree, tree.version());
+    }
+
+    public SearchTreeCache(final SearchTreeHolder holder, final int maximumSize) {
+        this(holder::get, maximumSize);
+    }
+
+    public SearchTreeCache(final SearchTree tree, final int maximumSize) {
+        this(() -> tree, maximumSize);
+    }
+
+    public Optional<BinDetailRecord> find(final String key) {
+        return Optional.ofNullable(get(key));
+    }
+
+    /**
+     * Same answer as {@link SearchTree#get(CharSequence)} on the current tree
+     */
+    @Nullable
+    public BinDetailRecord get(final CharSequence key) {
+        final Generation current = currentGeneration();
+        final String normalized = key.toString();
+        // other bits of the hash than the ones the sketch of the stripe uses
+        final Stripe stripe = stripes[(normalized.hashCode() * 0x85ebca6b >>> 24) & (stripes.length - 1)];
+        final Object cached = stripe.get(normalized, current);
+        if (cached != null) {
+            hits.increment();
+            return cached == NOT_FOUND ? null : (BinDetailRecord) cached;
+        }
+        misses.increment();
+        final BinDetailRecord record = current.tree.get(normalized);
+        final int evicted = stripe.put(normalized, record == null ? NOT_FOUND : record, current);
+        if (evicted > 0) {
+            evictions.add(evicted);
+        }
+        return record;
+    }
+
+    /**
+     * Same answer as {@link SearchTree#get(long, int)}, cached under the same key as the padded digits
+     */
+    @Nullable
+    public BinDetailRecord get(final long panPrefix, final int digits) {
+        if (!PanDigits.isValid(panPrefix, digits)) {
+            return null;
+        }
+        return get(PanDigits.of(panPrefix, digits).toString());
+    }
+
+    /**
+     * Drops all cached answers. Not needed after reloads and edits, which are picked up by themselves.
+     */
+    public void invalidateAll() {
+        for (final Stripe stripe : stripes) {
+            stripe.clear();
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * Returns the generation of the tree to look up, and drops the cached answers if the tree was replaced
+     * or edited since the last lookup
+     */
+    private Generation currentGeneration() {
+        final SearchTree tree = trees.get();
+        final long version = tree.version();
+        Generation current = generation;
+        if (current.tree != tree || current.version != version) {
+            synchronized (this) {
+                current = generation;
+                if (current.tree != tree || current.version != version) {
+                    log.info("Invalidating {} cached answers of {} version {}, now version {} of {}", size(),
+                            current.tree.getClass().getSimpleName(), current.version, version, tree.getClass().getSimpleName());
+                    current = new Generation(tree, version);
+                    generation = current;
+                    invalidateAll();
+                }
+            }
+        }
+        return current;
+    }
+
+    public int size() {
+        int size = 0;
+        for (final Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public double getHitRate() {
+        final long hitCount = hits.sum();
+        final long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private static int spread(final int hash) {
+        final int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * A tree and the version of it the cached answers came from
+     */
+    private static final class Generation {
+        private final SearchTree tree;
+        private final long version;
+
+        private Generation(final SearchTree tree, final long version) {
+            this.tree = tree;
+            this.version = version;
+        }
+    }
+
+    private static final class Entry {
+        private static final int WINDOW = 0;
+        private static final int PROBATION = 1;
+        private static final int PROTECTED = 2;
+
+        @Nullable
+        private final String key;
+        private Object value;
+        @Nullable
+        private Generation generation;
+        private int segment;
+        private Entry prev = this;
+        private Entry next = this;
+
+        private Entry(@Nullable final String key, final Object value, @Nullable final Generation generation) {
+            this.key = key;
+            this.value = value;
+            this.generation = generation;
+        }
+
+        /**
+         * Head of an empty circular list, its next entry is the least recently used
+         */
+        private static Entry head() {
+            return new Entry(null, NOT_FOUND, null);
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = this;
+            next = this;
+        }
+
+        /**
+         * Appends the entry as the most recently used of the list
+         */
+        private void linkLast(final Entry head, final int segment) {
+            this.segment = segment;
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+    }
+
+    /**
+     * W-TinyLFU over a part of the keys
+     */
+    private static final class Stripe {
+        private final Map<String, Entry> entries = new HashMap<>();
+        private final FrequencySketch sketch;
+        private final Entry window = Entry.head();
+        private final Entry probation = Entry.head();
+        private final Entry protectedSegment = Entry.head();
+        private final int capacity;
+        // 1% of the entries are in the window, 80% of the rest are protected
+        private final int windowCapacity;
+        private final int protectedCapacity;
+        private int windowSize;
+        private int protectedSize;
+
+        private Stripe(final int capacity) {
+            this.capacity = capacity;
+            windowCapacity = Math.max(1, capacity / 100);
+            protectedCapacity = (capacity - windowCapacity) * 8 / 10;
+            sketch = new FrequencySketch(capacity);
+        }
+
+        /**
+         * @return the cached answer, null if there is none for the generation
+         */
+        @Nullable
+        synchronized Object get(final String key, final Generation generation) {
+            sketch.increment(key.hashCode());
+            final Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.generation != generation) {
+                remove(entry);
+                return null;
+            }
+            onHit(entry);
+            return entry.value;
+        }
+
+        /**
+         * @return number of entries evicted to make room
+         */
+        synchronized int put(final String key, final Object value, final Generation generation) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                // another thread looked up the same key in the meantime
+                entry.value = value;
+                entry.generation = generation;
+                return 0;
+            }
+            entry = new Entry(key, value, generation);
+            entries.put(key, entry);
+            entry.linkLast(window, Entry.WINDOW);
+            windowSize++;
+            if (windowSize <= windowCapacity) {
+                return 0;
+            }
+
+            final Entry candidate = window.next;
+            candidate.unlink();
+            windowSize--;
+            candidate.linkLast(probation, Entry.PROBATION);
+            if (entries.size() <= capacity) {
+                return 0;
+            }
+            Entry victim = probation.next;
+            if (victim == candidate) {
+                victim = protectedSegment.next == protectedSegment ? candidate : protectedSegment.next;
+            }
+            // the candidate is only let in if it is looked up more often than the entry it replaces
+            remove(victim != candidate && sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())
+                    ? victim : candidate);
+            return 1;
+        }
+
+        private void onHit(final Entry entry) {
+            if (entry.segment == Entry.WINDOW) {
+                entry.unlink();
+                entry.linkLast(window, Entry.WINDOW);
+            } else if (entry.segment == Entry.PROTECTED) {
+                entry.unlink();
+                entry.linkLast(protectedSegment, Entry.PROTECTED);
+            } else {
+                entry.unlink();
+                entry.linkLast(protectedSegment, Entry.PROTECTED);
+                protectedSize++;
+                if (protectedSize > protectedCapacity) {
+                    final Entry demoted = protectedSegment.next;
+                    demoted.unlink();
+                    demoted.linkLast(probation, Entry.PROBATION);
+                    protectedSize--;
+                }
+            }
+        }
+
+        private void remove(final Entry entry) {
+            entries.remove(entry.key);
+            entry.unlink();
+            if (entry.segment == Entry.WINDOW) {
+                windowSize--;
+            } else if (entry.segment == Entry.PROTECTED) {
+                protectedSize--;
+            }
+        }
+
+        /**
+         * Drops the entries, but keeps the frequencies, which still hold for the next tree
+         */
+        synchronized void clear() {
+            entries.clear();
+            for (final Entry head : new Entry[]{window, probation, protectedSegment}) {
+                head.prev = head;
+                head.next = head;
+            }
+            windowSize = 0;
+            protectedSize = 0;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Count-min sketch with four 4-bit counters per key. Once as many increments as ten times the capacity
+     * were counted, all counters are halved.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        // 16 counters per long, every row of the sketch uses 4 of them
+        private final long[] table;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(final int capacity) {
+            final int size = Math.max(16, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+            table = new long[size];
+            sampleSize = 10 * Math.max(16, capacity);
+        }
+
+        int frequency(final int hash) {
+            final int h = spread(hash);
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < SEEDS.length; i++) {
+                final int shift = counterShift(h, i);
+                frequency = Math.min(frequency, (int) ((table[indexOf(h, i)] >>> shift) & 0xfL));
+            }
+            return frequency;
+        }
+
+        void increment(final int hash) {
+            final int h = spread(hash);
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                final int index = indexOf(h, i);
+                final int shift = counterShift(h, i);
+                if (((table[index] >>> shift) & 0xfL) != 0xfL) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+                }
+                additions = sampleSize / 2;
+            }
+        }
+
+        private int indexOf(final int hash, final int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & (table.length - 1);
+        }
+
+        /**
+         * Row i uses the counters 4i to 4i+3 of a long, picked by two bits of the hash
+         */
+        private static int counterShift(final int hash, final int i) {
+            return ((i << 2) + ((hash >>> (i << 3)) & 3)) << 2;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package home.tong.card.bin.search.tree;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.time.StopWatch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Holds the search tree that serves lookups and replaces it as a whole on reload.
+ * <p>
+ * A reload builds a brand-new tree in the background, optionally warms it up with sample lookups, and then
+ * publishes it with a single atomic reference swap. Readers never block and never see a half built tree.
+ * If a load fails, the current tree keeps serving. The replaced tree is not referenced by the holder any more,
+ * so it is garbage collected as soon as the lookups that are still running on it have finished.
+ * <p>
+ * The holder keeps a CRC32 of the BIN file the current tree was loaded from, so an update is only applied to a tree
+ * that was loaded from its old file.
+ */
+@Slf4j
+public class SearchTreeHolder {
+    public interface InputStreamSupplier {
+        InputStream get() throws IOException;
+
+        /**
+         * Bytes of the BIN file, for the progress of the load. {@link SearchTreeLoader#UNKNOWN_SIZE} by default.
+         */
+        default long size() throws IOException {
+            return SearchTreeLoader.UNKNOWN_SIZE;
+        }
+
+        /**
+         * Opens the BIN file, which knows its size
+         */
+        static InputStreamSupplier of(final Path file) {
+            return new InputStreamSupplier() {
+                @Override
+                public InputStream get() throws IOException {
+                    return Files.newInputStream(file);
+                }
+
+                @Override
+                public long size() throws IOException {
+                    return Files.size(file);
+                }
+            };
+        }
+    }
+
+    // a CRC32 is never negative
+    private static final long UNKNOWN_CHECKSUM = -1;
+
+    // the tree and the checksum of its file are swapped together
+    private final AtomicReference<Published> current;
+    private final Supplier<? extends SearchTree> treeFactory;
+    private final SearchTreeLoader loader;
+    private final Executor executor;
+    private final Object reloadLock = new Object();
+
+    /**
+     * @param treeFactory creates the empty tree every reload is built into
+     * @param executor    runs the reloads
+     */
+    public SearchTreeHolder(final Supplier<? extends SearchTree> treeFactory, final SearchTreeLoader loader, final Executor executor) {
+        this.treeFactory = treeFactory;
+        this.loader = loader;
+        this.executor = executor;
+        current = new AtomicReference<>(new Published(treeFactory.get(), UNKNOWN_CHECKSUM));
+    }
+
+    /**
+     * Returns the tree currently serving lookups. Callers doing several lookups that must agree with each
+     * other should call this once and use the returned tree.
+     */
+    public SearchTree get() {
+        return current.get().tree;
+    }
+
+    public Optional<BinDetailRecord> find(final String key) {
+        return current.get().tree.find(key);
+    }
+
+    /**
+     * Looks up the key on the current tree and checks the flags of the record, see {@link SearchTree#find(String, long, long)}
+     */
+    public Optional<BinDetailRecord> find(final String key, final long mask, final long expected) {
+        return current.get().tree.find(key, mask, expected);
+    }
+
+    /**
+     * Looks up all the keys on the current tree, see {@link SearchTree#findAll(CharSequence[], BinDetailRecord[], ForkJoinPool)}.
+     * A reload while the keys are looked up does not mix the answers of two trees.
+     */
+    public void findAll(final CharSequence[] keys, final BinDetailRecord[] results, final ForkJoinPool pool) {
+        current.get().tree.findAll(keys, results, pool);
+    }
+
+    /**
+     * Builds a new tree from the BIN file in the background and swaps it in when it is ready.
+     * Reloads are applied in the order they are started.
+     *
+     * @param source     opens the BIN file, the stream is closed once it is loaded
+     * @param warmupKeys looked up on the new tree before it is published, can be empty
+     * @return the published tree, or an exceptionally completed future if loading failed and the old tree was kept
+     */
+    public CompletableFuture<SearchTree> reload(final InputStreamSupplier source, final Collection<String> warmupKeys) {
+        return CompletableFuture.supplyAsync(() -> {
+            synchronized (reloadLock) {
+                try {
+                    return load(source, warmupKeys);
+                } catch (RuntimeException e) {
+                    log.error("Failed to reload search tree, {} keeps serving lookups", current.get().tree.getClass().getSimpleName(), e);
+                    throw e;
+                }
+            }
+        }, executor);
+    }
+
+    /**
+     * Applies the changes between the BIN file the current tree was loaded from and a new version of it, in the
+     * background, see {@link BinFileDelta}. A {@link ConcurrentRadixTree} is edited in place while it serves
+     * lookups, any other tree is replaced by a tree loaded from the new file like {@link #reload} does. If some of
+     * the changes cannot be applied, the edited tree is replaced by a tree loaded from the new file as well.
+     *
+     * @param oldSource opens the BIN file the current tree was loaded from
+     * @param newSource opens the new BIN file
+     * @return the tree serving lookups after the update, or an exceptionally completed future if the files could not
+     * be compared or the old file is not the one the current tree was loaded from, and the tree was left as it was,
+     * or if the new file could not be loaded after the changes failed, and the edited tree keeps serving
+     */
+    public CompletableFuture<SearchTree> update(final InputStreamSupplier oldSource, final InputStreamSupplier newSource,
+                                                final Collection<String> warmupKeys) {
+        return CompletableFuture.supplyAsync(() -> {
+            synchronized (reloadLock) {
+                final Published published = current.get();
+                final SearchTree tree = published.tree;
+                try {
+                    if (!(tree instanceof ConcurrentRadixTree)) {
+                        return load(newSource, warmupKeys);
+                    }
+                    final BinFileDelta delta;
+                    try (InputStream oldFile = oldSource.get(); InputStream newFile = newSource.get()) {
+                        delta = BinFileDelta.compare(oldFile, newFile);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (delta.getOldChecksum() != published.checksum) {
+                        throw new IllegalArgumentException("The old BIN file is not the one " + tree.getClass().getSimpleName()
+                                + " was loaded from");
+                    }
+                    final int failed = delta.applyTo(tree);
+                    if (failed == 0) {
+                        // unless the tree was swapped out in the meantime
+                        current.compareAndSet(published, new Published(tree, delta.getNewChecksum()));
+                        return tree;
+                    }
+                    // the tree is somewhere between the two files now
+                    current.compareAndSet(published, new Published(tree, UNKNOWN_CHECKSUM));
+                    log.warn("{} changes could not be applied to {}, loading the new BIN file instead", failed,
+                            tree.getClass().getSimpleName());
+                    return load(newSource, warmupKeys);
+                } catch (RuntimeException e) {
+                    log.error("Failed to update search tree, {} keeps serving lookups", tree.getClass().getSimpleName(), e);
+                    throw e;
+                }
+            }
+        }, executor);
+    }
+
+    /**
+     * Publishes a tree that was built elsewhere, e.g. a frozen or a snapshot tree
+     *
+     * @return the tree that was replaced
+     */
+    public SearchTree swap(final SearchTree tree) {
+        // the holder cannot tell which BIN file the tree is of
+        return publish(tree, UNKNOWN_CHECKSUM);
+    }
+
+    /**
+     * Builds a new tree from the BIN file and publishes it
+     */
+    private SearchTree load(final InputStreamSupplier source, final Collection<String> warmupKeys) {
+        final CRC32 crc = new CRC32();
+        final SearchTree tree = build(source, warmupKeys, crc);
+        publish(tree, crc.getValue());
+        return tree;
+    }
+
+    /**
+     * Publishes the tree and the checksum of its file at once
+     *
+     * @return the tree that was replaced
+     */
+    private SearchTree publish(final SearchTree tree, final long checksum) {
+        final SearchTree previous = current.getAndSet(new Published(tree, checksum)).tree;
+        log.info("Published new {} of size {}, replaced tree of size {}", tree.getClass().getSimpleName(), tree.size(), previous.size());
+        return previous;
+    }
+
+    /**
+     * @param crc updated with the bytes of the file, which the loader reads to the end
+     */
+    private SearchTree build(final InputStreamSupplier source, final Collection<String> warmupKeys, final CRC32 crc) {
+        final SearchTree tree = treeFactory.get();
+        try (InputStream inputStream = new CheckedInputStream(source.get(), crc)) {
+            loader.loadFromStream(tree, inputStream, source.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (tree.isEmpty()) {
+            throw new IllegalStateException("No BIN record was loaded");
+        }
+
+        if (!warmupKeys.isEmpty()) {
+            final StopWatch stopWatch = StopWatch.createStarted();
+            int found = 0;
+            for (final String key : warmupKeys) {
+                if (tree.find(key).isPresent()) {
+                    found++;
+                }
+            }
+            stopWatch.stop();
+            log.info("Warmed up {} with {} lookups, {} found in {} ms", tree.getClass().getSimpleName(), warmupKeys.size(),
+                    found, stopWatch.getTime());
+        }
+        return tree;
+    }
+
+    /**
+     * A tree that serves lookups, with the CRC32 of the BIN file it was loaded from or updated to
+     */
+    private static final class Published {
+        private final SearchTree tree;
+        private final long checksum;
+
+        private Published(final SearchTree tree, final long checksum) {
+            this.tree = tree;
+            this.checksum = checksum;
+        }
+    }
+}
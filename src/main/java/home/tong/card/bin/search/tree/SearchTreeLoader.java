@@ -1,68 +1,270 @@
 package home.tong.card.bin.search.tree;
 
+import com.google.common.io.CountingInputStream;
 import home.tong.card.bin.enums.RecordTypeIndicator;
 import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.file.parser.BinFileReader;
+import home.tong.card.bin.file.parser.BinHeaderRecord;
+import home.tong.card.bin.file.parser.BinProfilePool;
+import home.tong.card.bin.file.parser.BinRecord;
+import home.tong.card.bin.file.parser.BinTrailerRecord;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
+import org.springframework.lang.Nullable;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.ParseException;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Slf4j
 public class SearchTreeLoader {
+    /**
+     * Size of a BIN file that is not known up front, e.g. one read from a stream
+     */
+    public static final long UNKNOWN_SIZE = -1;
+    /**
+     * Progress of the load of a file of unknown size, until it is done
+     */
+    public static final int UNKNOWN_PROGRESS = -1;
+    private static final int DEFAULT_COMPRESS_EXPONENT = 4;
     private boolean loadingFromStream;
     private boolean everLoaded;
     private volatile int progressRatio;
+    private long loadedRecords;
+    private int trailerTotal = -1;
+    private final SearchTreeBuilder builder;
+    private final ForkJoinPool pool;
 
     public SearchTreeLoader() {
+        this(new SearchTreeBuilder());
     }
 
-    public synchronized void loadFromStream(final SearchTree tree, final InputStream inputStream) {
-        loadingFromStream = true;
-        progressRatio = 0;
-        log.info("Loading BINs for {} from input stream", tree.getClass().getSimpleName());
-        final StopWatch stopWatch = StopWatch.createStarted();
-        final int[] counter = {0};
-        final int compressFactor = getCompressFactor();
-        try (BufferedInputStream bis = new BufferedInputStream(inputStream)) {
-            bis.mark(Integer.MAX_VALUE);
-            final BufferedReader br0 = new BufferedReader(new InputStreamReader(bis, StandardCharsets.UTF_8));
-            final int total = (int) br0.lines().count() - 2;
-            bis.reset();
-            final BufferedReader br = new BufferedReader(new InputStreamReader(bis, StandardCharsets.UTF_8));
-            br.lines().filter(line -> RecordTypeIndicator.fromChar(line.charAt(0)) == RecordTypeIndicator.DETAIL).
-                    forEach(record -> {
-                        try {
-                            final BinDetailRecord rec = new BinDetailRecord(record);
-                            if (tree.insertBinRange(compressFactor, rec)) {
-                            } else {
-                                log.warn("Failed to insert {} into search tree", rec);
-                            }
-                        } catch (ParseException e) {
-                            log.error("After {} records are loaded into database, aborted loading due to exception", counter[0], e);
-                            throw new RuntimeException(e);
-                        }
-                    });
+    /**
+     * @param builder builds an empty {@link RadixTree}, {@link Trie} or {@link DirectIndex} in bulk, other trees are loaded
+     *                record by record
+     */
+    public SearchTreeLoader(final SearchTreeBuilder builder) {
+        this(builder, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool parses the records of a BIN file in chunks, see {@link DetailRecordParser}
+     */
+    public SearchTreeLoader(final SearchTreeBuilder builder, final ForkJoinPool pool) {
+        this.builder = builder;
+        this.pool = pool;
+    }
+
+    /**
+     * Loads the BIN file the stream reads, whose size is not known, so the progress is {@link #UNKNOWN_PROGRESS}
+     * until the load is done
+     */
+    public void loadFromStream(final SearchTree tree, final InputStream inputStream) {
+        loadFromStream(tree, inputStream, UNKNOWN_SIZE);
+    }
+
+    /**
+     * Loads the BIN file in one pass over the stream, see {@link #load}
+     *
+     * @param size bytes of the file, the progress is the share of them read so far. {@link #UNKNOWN_SIZE} if it is
+     *             not known.
+     */
+    public synchronized void loadFromStream(final SearchTree tree, final InputStream inputStream, final long size) {
+        // records of the file with the same attributes share them
+        final BinProfilePool profiles = new BinProfilePool();
+        try (CountingInputStream counter = new CountingInputStream(inputStream);
+             BufferedReader br = new BufferedReader(new InputStreamReader(counter, StandardCharsets.ISO_8859_1))) {
+            final DetailRecordParser parser = new DetailRecordParser(br::readLine, pool, profiles,
+                    () -> updateProgress(counter.getCount(), size));
+            load(tree, "input stream", br::readLine, parser, profiles, size);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Loads the BIN file in one pass over its records mapped into memory by a {@link BinFileReader}, see
+     * {@link #load}. The detail records are decoded from the mapped bytes by a
+     * {@link home.tong.card.bin.file.parser.BinDetailDecoder}, without the file being copied or decoded into
+     * strings on the way.
+     */
+    public synchronized void loadFromFile(final SearchTree tree, final Path binFile) {
+        final BinProfilePool profiles = new BinProfilePool();
+        try (BinFileReader reader = BinFileReader.open(binFile)) {
+            final DetailRecordParser parser = new DetailRecordParser(reader, pool, profiles,
+                    () -> updateProgress(reader.position(), reader.size()));
+            load(tree, binFile.toString(), () -> reader.next() ? reader.line() : null, parser, profiles, reader.size());
         } catch (IOException e) {
             throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Loads the BIN file in one pass over its records. The records are parsed and handed on as the file is read,
+     * without the lines of the file being kept. A tree that takes the records one by one needs no more than the
+     * chunks being parsed beyond itself. A tree built by the {@link SearchTreeBuilder} also holds the keys of the
+     * ranges under a digit of the root until the subtree of the digit is built, so that part grows with the file.
+     * <p>
+     * The file has to start with a valid header record. The number of detail records loaded is checked against the
+     * total of the trailer record, and a file that does not match is logged, as the BIN files around do not always
+     * count their detail records the same way.
+     *
+     * @param header reads the first line of the file, before the parser reads the rest
+     * @param size   bytes of the file
+     */
+    private void load(final SearchTree tree, final String source, final DetailRecordParser.LineReader header,
+                      final DetailRecordParser parser, final BinProfilePool profiles, final long size) throws IOException {
+        loadingFromStream = true;
+        progressRatio = size < 0 ? UNKNOWN_PROGRESS : 0;
+        loadedRecords = 0;
+        trailerTotal = -1;
+        if (size < 0) {
+            log.info("Loading BINs for {} from {} of unknown size", tree.getClass().getSimpleName(), source);
+        } else {
+            log.info("Loading BINs for {} from {} of {} bytes", tree.getClass().getSimpleName(), source, size);
+        }
+        final StopWatch stopWatch = StopWatch.createStarted();
+        final int compressFactor = getCompressFactor(tree.compressExponent);
+        try {
+            final BinHeaderRecord headerRecord = parseHeader(header.readLine(), source);
+            log.info("BIN file of {}-{}-{}", headerRecord.getYear(), headerRecord.getMonth(), headerRecord.getDay());
+            final Stream<BinDetailRecord> records = parser.stream();
+            if (SearchTreeBuilder.canBuild(tree)) {
+                builder.build(tree, records);
+            } else {
+                records.forEach(rec -> {
+                    if (!tree.insertBinRange(compressFactor, rec)) {
+                        log.warn("Failed to insert {} into search tree", rec);
+                    }
+                });
+            }
+            loadedRecords = parser.getRecords();
+            checkTrailer(parser.getTrailer());
         } finally {
             progressRatio = 100;
             loadingFromStream = false;
         }
         stopWatch.stop();
-        log.info("Loaded {} BIN records for {} from input stream in {} minutes. Tree size is {}", counter[0], tree.getClass().getSimpleName(),
-                stopWatch.getTime() / 1000 / 60, tree.size());
+        log.info("Interned {} BIN records into {} profiles, keeping {} bytes of their lines", profiles.interned(), profiles.size(),
+                profiles.storeSize());
+        final long readMillis = TimeUnit.NANOSECONDS.toMillis(parser.getReadNanos());
+        final long waitMillis = TimeUnit.NANOSECONDS.toMillis(parser.getWaitNanos());
+        log.info("Loaded {} BIN records for {} from {} in {} ms, {} records/s: read {} ms, parsed in {} ms on {} threads "
+                        + "with {} ms waited for, built {} ms. Tree size is {}", parser.getRecords(), tree.getClass().getSimpleName(),
+                source, stopWatch.getTime(), parser.getRecords() * 1000 / Math.max(1, stopWatch.getTime()), readMillis,
+                TimeUnit.NANOSECONDS.toMillis(parser.getParseNanos()), parser.getThreads(), waitMillis,
+                Math.max(0, stopWatch.getTime() - readMillis - waitMillis), tree.size());
+        log.info("{}", tree.stats());
         everLoaded = true;
     }
 
+    private void updateProgress(final long bytesRead, final long size) {
+        if (size < 0) {
+            return;
+        }
+        // the last percent is left for the tree being built from the records read
+        progressRatio = (int) Math.min(99, bytesRead * 100 / Math.max(1, size));
+    }
+
+    private void checkTrailer(@Nullable final String trailer) {
+        if (trailer == null) {
+            log.error("BIN file has no trailer record, loaded {} detail records", loadedRecords);
+            return;
+        }
+        try {
+            trailerTotal = new BinTrailerRecord(trailer).getTotal();
+        } catch (ParseException e) {
+            log.error("Invalid trailer record in BIN file, loaded {} detail records", loadedRecords, e);
+            return;
+        }
+        if (trailerTotal != loadedRecords) {
+            log.error("Trailer record of BIN file counts {} detail records, loaded {}", trailerTotal, loadedRecords);
+        }
+    }
+
+    /**
+     * Opens the snapshot of the BIN file if there is an up to date one. Otherwise loads the BIN file into a new
+     * tree, freezes it and writes the snapshot for the next start.
+     *
+     * @param treeFactory creates the {@link RadixTree} or {@link Trie} the BIN file is loaded into
+     */
+    public FrozenSearchTree loadWithSnapshot(final Supplier<? extends SearchTree> treeFactory, final Path binFile,
+                                             final Path snapshotFile) throws IOException {
+        final String headerDate = readHeaderDate(binFile);
+        final Optional<FrozenSearchTree> snapshot = SearchTreeSnapshot.open(snapshotFile, headerDate);
+        if (snapshot.isPresent()) {
+            log.info("{}", snapshot.get().stats());
+            everLoaded = true;
+            return snapshot.get();
+        }
+
+        final SearchTree tree = treeFactory.get();
+        loadFromFile(tree, binFile);
+        final FrozenSearchTree frozen = freeze(tree);
+        log.info("{}", frozen.stats());
+        try {
+            SearchTreeSnapshot.write(frozen, headerDate, snapshotFile);
+        } catch (IOException e) {
+            log.warn("Failed to write snapshot {}, the BIN file will be loaded again on the next start", snapshotFile, e);
+        }
+        return frozen;
+    }
+
+    /**
+     * Returns the date in the header record of the BIN file as yyyy-MM-dd
+     */
+    public static String readHeaderDate(final Path binFile) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(binFile, StandardCharsets.ISO_8859_1)) {
+            final BinHeaderRecord header = parseHeader(reader.readLine(), binFile.toString());
+            return header.getYear() + "-" + header.getMonth() + "-" + header.getDay();
+        }
+    }
+
+    private static BinHeaderRecord parseHeader(@Nullable final String line, final String source) throws IOException {
+        if (line == null || BinRecord.getRecordIndicator(line) != RecordTypeIndicator.HEADER) {
+            throw new IOException("BIN file " + source + " does not start with a header record");
+        }
+        final BinHeaderRecord header;
+        try {
+            header = new BinHeaderRecord(line);
+        } catch (ParseException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid header record in BIN file " + source, e);
+        }
+        if (!StringUtils.isNumeric(header.getYear()) || !StringUtils.isNumeric(header.getMonth())
+                || !StringUtils.isNumeric(header.getDay())) {
+            throw new IOException("Invalid date in header record of BIN file " + source + ": " + line.substring(1, 11));
+        }
+        return header;
+    }
+
+    private static FrozenSearchTree freeze(final SearchTree tree) {
+        if (tree instanceof RadixTree) {
+            return ((RadixTree) tree).freeze();
+        }
+        if (tree instanceof Trie) {
+            return ((Trie) tree).freeze();
+        }
+        throw new IllegalArgumentException(tree.getClass().getSimpleName() + " cannot be frozen");
+    }
+
     public int getCompressFactor() {
+        return getCompressFactor(DEFAULT_COMPRESS_EXPONENT);
+    }
+
+    public static int getCompressFactor(final int compressExponent) {
         int compressFactor = 1;
-        for (int i = 0; i < compressFactor; i++) {
+        for (int i = 0; i < compressExponent; i++) {
             compressFactor *= 10;
         }
         return compressFactor;
@@ -76,7 +278,25 @@ public class SearchTreeLoader {
         return loadingFromStream;
     }
 
+    /**
+     * Share of the bytes of the BIN file read so far in percent, 100 once the load is done. {@link #UNKNOWN_PROGRESS}
+     * while a file of unknown size is loaded.
+     */
     public int getProgressRatio() {
         return progressRatio;
     }
+
+    /**
+     * Detail records of the BIN file loaded last
+     */
+    public long getLoadedRecords() {
+        return loadedRecords;
+    }
+
+    /**
+     * Total count in the trailer record of the BIN file loaded last, -1 if it had no valid trailer record
+     */
+    public int getTrailerTotal() {
+        return trailerTotal;
+    }
 }
@@ -0,0 +1,230 @@
+package home.tong.card.bin.search.tree;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a {@link FrozenSearchTree}, written once after a load and memory mapped at startup.
+ * <p>
+ * All numbers are little endian. The file is a 64 byte header followed by the sections
+ * <ol>
+ *     <li>prefix filter bitmap, as longs</li>
+ *     <li>node rows, as ints</li>
+ *     <li>labels of a radix tree, as digit bytes, padded to a multiple of 4</li>
+ *     <li>record line offsets, as ints, one more than there are records</li>
+ *     <li>BIN file lines of the records, one byte a character (ISO-8859-1)</li>
+ * </ol>
+ * The header holds the format version, the BIN file header date the tree was loaded from and a CRC32 of the
+ * sections. A snapshot of another version, of another BIN file or with a bad checksum is not opened.
+ * The mapped tree parses each record the first time it is looked up. The file is never changed once written,
+ * so it can be shared read-only by several processes.
+ */
+@Slf4j
+public final class SearchTreeSnapshot {
+    static final int MAGIC = 0x53544e42; // "BNTS" when read as bytes
+    static final int FORMAT_VERSION = 3;
+    static final int HEADER_SIZE = 64;
+    private static final int HEADER_DATE_SIZE = 16;
+    private static final byte RADIX_TREE = 1;
+    private static final byte TRIE = 2;
+    // flags in the header
+    private static final byte MATCH_ALL = 1;
+
+    private SearchTreeSnapshot() {
+    }
+
+    /**
+     * Writes the tree to the file. The snapshot is written to a temporary file next to it first and then moved
+     * in place, so a process opening the file never sees a partly written snapshot.
+     *
+     * @param tree       a tree that reads the ranges with {@link BinBounds#DETAIL_RECORD}, which is what the opened
+     *                   snapshot reads them with
+     * @param headerDate date in the header of the BIN file the tree was loaded from, see {@link #open(Path, String)}
+     */
+    public static void write(final FrozenSearchTree tree, final String headerDate, final Path file) throws IOException {
+        if (tree.bounds != BinBounds.DETAIL_RECORD) {
+            throw new IllegalArgumentException("A tree with its own BIN bounds cannot be written to a snapshot");
+        }
+        final byte[] date = headerDate.getBytes(StandardCharsets.US_ASCII);
+        if (date.length > HEADER_DATE_SIZE) {
+            throw new IllegalArgumentException("Header date is longer than " + HEADER_DATE_SIZE + " characters: " + headerDate);
+        }
+
+        final ByteBuffer filter = ByteBuffer.allocate(BinPrefixFilter.WORDS * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        tree.prefixFilter.writeTo(filter.asLongBuffer());
+
+        final ByteBuffer nodes = ByteBuffer.allocate(tree.nodes.capacity() * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        nodes.asIntBuffer().put(tree.nodes.duplicate());
+
+        ByteBuffer labels = ByteBuffer.allocate(0);
+        if (tree instanceof FrozenRadixTree) {
+            final ByteBuffer source = ((FrozenRadixTree) tree).labels;
+            labels = ByteBuffer.allocate(align(source.limit()));
+            labels.put(source.duplicate());
+            labels.clear();
+        }
+
+        final int recordCount = tree.records.size();
+        final byte[][] lines = new byte[recordCount][];
+        final ByteBuffer offsets = ByteBuffer.allocate((recordCount + 1) * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        int offset = 0;
+        for (int i = 0; i < recordCount; i++) {
+            lines[i] = tree.records.line(i);
+            offsets.putInt(offset);
+            offset += lines[i].length;
+        }
+        offsets.putInt(offset);
+        offsets.flip();
+        final ByteBuffer records = ByteBuffer.allocate(offset);
+        for (final byte[] line : lines) {
+            records.put(line);
+        }
+        records.flip();
+
+        final CRC32 crc = new CRC32();
+        for (final ByteBuffer section : new ByteBuffer[]{filter, nodes, labels, offsets, records}) {
+            crc.update(section.duplicate());
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC)
+                .putInt(FORMAT_VERSION)
+                .put(tree instanceof FrozenRadixTree ? RADIX_TREE : TRIE)
+                .put((byte) tree.compressExponent)
+                .put((byte) tree.maxDepth)
+                .put(tree.prefixFilter.isMatchAll() ? MATCH_ALL : 0)
+                .putInt(tree.nodes.capacity())
+                .putInt(labels.capacity())
+                .putInt(recordCount)
+                .putInt(offset)
+                .putLong(crc.getValue())
+                .put(date);
+        header.clear();
+
+        final Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                final ByteBuffer[] buffers = {header, filter, nodes, labels, offsets, records};
+                long remaining = 0;
+                for (final ByteBuffer buffer : buffers) {
+                    remaining += buffer.remaining();
+                }
+                while (remaining > 0) {
+                    remaining -= channel.write(buffers);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        log.info("Wrote snapshot {} of {} with {} nodes and {} records for BIN file of {}", file,
+                tree.getClass().getSimpleName(), tree.size(), recordCount, headerDate);
+    }
+
+    /**
+     * Maps the snapshot into memory. The tree stays valid after the file was deleted or replaced.
+     *
+     * @param headerDate date in the header of the current BIN file
+     * @return the tree, or empty if there is no snapshot or it is corrupt, of another format version or
+     * of another BIN file
+     */
+    public static Optional<FrozenSearchTree> open(final Path file, final String headerDate) throws IOException {
+        final MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                log.warn("Snapshot {} is ignored, it has an invalid size of {} bytes", file, channel.size());
+                return Optional.empty();
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            log.info("There is no snapshot {}", file);
+            return Optional.empty();
+        }
+
+        final ByteBuffer header = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt() != MAGIC) {
+            log.warn("Snapshot {} is ignored, it is not a search tree snapshot", file);
+            return Optional.empty();
+        }
+        final int version = header.getInt();
+        if (version != FORMAT_VERSION) {
+            log.warn("Snapshot {} is ignored, its format version {} is not {}", file, version, FORMAT_VERSION);
+            return Optional.empty();
+        }
+        final byte kind = header.get();
+        final int compressExponent = header.get();
+        final int maxDepth = header.get();
+        final byte flags = header.get();
+        final int nodeInts = header.getInt();
+        final int labelBytes = header.getInt();
+        final int recordCount = header.getInt();
+        final int recordBytes = header.getInt();
+        final long checksum = header.getLong();
+        final byte[] date = new byte[HEADER_DATE_SIZE];
+        header.get(date);
+        final String snapshotDate = new String(date, StandardCharsets.US_ASCII).trim();
+        if (!snapshotDate.equals(headerDate.trim())) {
+            log.info("Snapshot {} is stale, it was written for the BIN file of {}, not of {}", file, snapshotDate, headerDate);
+            return Optional.empty();
+        }
+
+        final int rowWidth = kind == RADIX_TREE ? FrozenRadixTree.ROW_WIDTH : FrozenTrie.ROW_WIDTH;
+        final long size = HEADER_SIZE + (long) BinPrefixFilter.WORDS * Long.BYTES + (long) nodeInts * Integer.BYTES + labelBytes + (recordCount + 1L) * Integer.BYTES + recordBytes;
+        if (kind != RADIX_TREE && kind != TRIE || nodeInts % rowWidth != 0 || size != mapped.capacity()) {
+            log.warn("Snapshot {} is ignored, its header is corrupt", file);
+            return Optional.empty();
+        }
+        final ByteBuffer body = section(mapped, HEADER_SIZE, mapped.capacity() - HEADER_SIZE);
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+        if (crc.getValue() != checksum) {
+            log.warn("Snapshot {} is ignored, its checksum does not match", file);
+            return Optional.empty();
+        }
+
+        int offset = HEADER_SIZE;
+        final BinPrefixFilter prefixFilter = BinPrefixFilter.of(section(mapped, offset, BinPrefixFilter.WORDS * Long.BYTES).asLongBuffer(),
+                (flags & MATCH_ALL) != 0);
+        offset += BinPrefixFilter.WORDS * Long.BYTES;
+        final IntBuffer nodes = section(mapped, offset, nodeInts * Integer.BYTES).asIntBuffer();
+        offset += nodeInts * Integer.BYTES;
+        final ByteBuffer labels = section(mapped, offset, labelBytes);
+        offset += labelBytes;
+        final IntBuffer offsets = section(mapped, offset, (recordCount + 1) * Integer.BYTES).asIntBuffer();
+        offset += (recordCount + 1) * Integer.BYTES;
+        final RecordTable records = RecordTable.of(section(mapped, offset, recordBytes), offsets);
+
+        final FrozenSearchTree tree = kind == RADIX_TREE
+                ? new FrozenRadixTree(compressExponent, nodes, labels, records, maxDepth, BinBounds.DETAIL_RECORD, prefixFilter)
+                : new FrozenTrie(compressExponent, nodes, records, maxDepth, BinBounds.DETAIL_RECORD, prefixFilter);
+        log.info("Opened snapshot {} of {} with {} nodes and {} records for BIN file of {}", file,
+                tree.getClass().getSimpleName(), tree.size(), recordCount, headerDate);
+        return Optional.of(tree);
+    }
+
+    private static ByteBuffer section(final ByteBuffer buffer, final int offset, final int length) {
+        final ByteBuffer section = buffer.duplicate();
+        section.position(offset);
+        section.limit(offset + length);
+        return section.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int align(final int length) {
+        return (length + Integer.BYTES - 1) / Integer.BYTES * Integer.BYTES;
+    }
+}
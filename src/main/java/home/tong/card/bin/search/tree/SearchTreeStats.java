@@ -0,0 +1,244 @@
+package home.tong.card.bin.search.tree;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shape and estimated size of a search tree, see {@link SearchTree#stats()}.
+ * <p>
+ * The counts come from one walk over the tree, unlike {@link SearchTree#size()}, which is kept up to date by the
+ * edits. Keys are the entries of the tree that lead to a record, the expanded keys of the BIN ranges. The byte
+ * estimates assume a 64 bit JVM with compressed references and count the structures of the tree, not the records.
+ */
+public final class SearchTreeStats {
+    static final int OBJECT_HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REFERENCE = 4;
+    private static final int ALIGNMENT = 8;
+
+    private final String type;
+    private final int nodeCount;
+    private final int keyCount;
+    private final int recordCount;
+    private final int maxKeysPerRecord;
+    private final int[] nodesByDepth;
+    private final int[] nodesByFanOut;
+    private final int[] labelLengths;
+    private final int[] keysPerRecord;
+    private final Map<String, Long> estimatedBytes;
+
+    private SearchTreeStats(final String type, final Builder builder) {
+        this.type = type;
+        nodeCount = builder.nodeCount;
+        keyCount = builder.keyCount;
+        final int[] keysPerRecord = new int[Integer.SIZE];
+        int maxKeysPerRecord = 0;
+        int recordCount = 0;
+        for (final int keys : builder.keys.values()) {
+            keysPerRecord[log2(keys)]++;
+            maxKeysPerRecord = Math.max(maxKeysPerRecord, keys);
+            recordCount++;
+        }
+        for (final int keys : Arrays.copyOf(builder.counts, builder.countSize)) {
+            if (keys > 0) {
+                keysPerRecord[log2(keys)]++;
+                maxKeysPerRecord = Math.max(maxKeysPerRecord, keys);
+                recordCount++;
+            }
+        }
+        this.recordCount = recordCount;
+        this.maxKeysPerRecord = maxKeysPerRecord;
+        this.keysPerRecord = Arrays.copyOf(keysPerRecord, log2(Math.max(maxKeysPerRecord, 1)) + 1);
+        nodesByDepth = Arrays.copyOf(builder.nodesByDepth, builder.maxDepth + 1);
+        nodesByFanOut = builder.nodesByFanOut.clone();
+        labelLengths = Arrays.copyOf(builder.labelLengths, builder.maxLabelLength + 1);
+        estimatedBytes = Collections.unmodifiableMap(new LinkedHashMap<>(builder.bytes));
+    }
+
+    /**
+     * Simple name of the class of the tree
+     */
+    public String getType() {
+        return type;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Number of entries that lead to a record
+     */
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * Number of distinct records
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Number of nodes at each depth, the root is at depth 0
+     */
+    public int[] getNodesByDepth() {
+        return nodesByDepth.clone();
+    }
+
+    /**
+     * Number of nodes with 0 to 10 children
+     */
+    public int[] getNodesByFanOut() {
+        return nodesByFanOut.clone();
+    }
+
+    /**
+     * Number of nodes by the number of digits of their label, 1 for all but the root of a trie
+     */
+    public int[] getLabelLengths() {
+        return labelLengths.clone();
+    }
+
+    /**
+     * Number of records by the number of keys leading to them, element i counts the records with at least
+     * 2^i and fewer than 2^(i+1) keys
+     */
+    public int[] getKeysPerRecord() {
+        return keysPerRecord.clone();
+    }
+
+    public int getMaxKeysPerRecord() {
+        return maxKeysPerRecord;
+    }
+
+    /**
+     * Estimated bytes by structure of the tree, in the order they were counted
+     */
+    public Map<String, Long> getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public long getEstimatedTotalBytes() {
+        long total = 0;
+        for (final long bytes : estimatedBytes.values()) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return type + ": " + nodeCount + " nodes, " + keyCount + " keys, " + recordCount + " records, up to "
+                + maxKeysPerRecord + " keys a record, about " + getEstimatedTotalBytes() / 1024 + " KB " + estimatedBytes
+                + ", nodes by depth " + Arrays.toString(nodesByDepth) + ", by fan-out " + Arrays.toString(nodesByFanOut)
+                + ", label lengths " + Arrays.toString(labelLengths) + ", keys a record by power of two "
+                + Arrays.toString(keysPerRecord);
+    }
+
+    static long objectBytes(final long fieldBytes) {
+        return align(OBJECT_HEADER + fieldBytes);
+    }
+
+    static long arrayBytes(final long length, final int elementBytes) {
+        return align(ARRAY_HEADER + length * elementBytes);
+    }
+
+    /**
+     * A string of Latin-1 characters, with its byte array
+     */
+    static long stringBytes(final int length) {
+        return objectBytes(REFERENCE + Integer.BYTES + 2) + arrayBytes(length, 1);
+    }
+
+    private static long align(final long bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static int log2(final int n) {
+        return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(n);
+    }
+
+    /**
+     * Collects the stats while a tree is walked, see {@link SearchTree#collectStats(Builder)}
+     */
+    public static final class Builder {
+        private int nodeCount;
+        private int keyCount;
+        private int maxDepth;
+        private int maxLabelLength;
+        private int[] nodesByDepth = new int[Integer.SIZE];
+        private final int[] nodesByFanOut = new int[TrieNode.RADIX + 1];
+        private int[] labelLengths = new int[Integer.SIZE];
+        // keys by record, or by record id for the trees that number their records
+        private final Map<BinDetailRecord, Integer> keys = new IdentityHashMap<>();
+        private int[] counts = new int[0];
+        private int countSize;
+        private final Map<String, Long> bytes = new LinkedHashMap<>();
+
+        Builder() {
+        }
+
+        /**
+         * Counts a node
+         *
+         * @param fanOut      number of children
+         * @param labelLength number of digits of the key the node stands for
+         */
+        public Builder node(final int depth, final int fanOut, final int labelLength) {
+            nodeCount++;
+            if (depth >= nodesByDepth.length) {
+                nodesByDepth = Arrays.copyOf(nodesByDepth, depth * 2);
+            }
+            nodesByDepth[depth]++;
+            maxDepth = Math.max(maxDepth, depth);
+            nodesByFanOut[fanOut]++;
+            if (labelLength >= labelLengths.length) {
+                labelLengths = Arrays.copyOf(labelLengths, labelLength * 2);
+            }
+            labelLengths[labelLength]++;
+            maxLabelLength = Math.max(maxLabelLength, labelLength);
+            return this;
+        }
+
+        /**
+         * Counts a key leading to the record
+         */
+        public Builder key(final BinDetailRecord record) {
+            keyCount++;
+            keys.merge(record, 1, Integer::sum);
+            return this;
+        }
+
+        /**
+         * Counts a key leading to the record with the id, for trees that keep their records by id
+         */
+        public Builder key(final int recordId) {
+            keyCount++;
+            if (recordId >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(recordId + 1, counts.length * 2));
+            }
+            counts[recordId]++;
+            countSize = Math.max(countSize, recordId + 1);
+            return this;
+        }
+
+        /**
+         * Adds estimated bytes to the structure
+         */
+        public Builder bytes(final String structure, final long bytes) {
+            this.bytes.merge(structure, bytes, Long::sum);
+            return this;
+        }
+
+        SearchTreeStats build(final String type) {
+            return new SearchTreeStats(type, this);
+        }
+    }
+}
@@ -2,11 +2,12 @@ package home.tong.card.bin.search.tree;
 
 import home.tong.card.bin.file.parser.BinDetailRecord;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.lang.Nullable;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.Objects;
-import java.util.Optional;
 
 @Slf4j
 public class Trie extends SearchTree {
@@ -16,6 +17,13 @@ public class Trie extends SearchTree {
         super(compressExponent);
     }
 
+    /**
+     * @param bounds reads the BIN ranges of the records, see {@link BinBounds}
+     */
+    public Trie(final int compressExponent, final BinBounds<BinDetailRecord> bounds) {
+        super(compressExponent, bounds);
+    }
+
     /**
      * Returns true if root has no children
      */
@@ -24,8 +32,18 @@ public class Trie extends SearchTree {
         return Objects.isNull(root.children) || size() == 1;
     }
 
+    @Override
+    protected synchronized void collectStats(final SearchTreeStats.Builder stats) {
+        root.collectStats(0, stats);
+    }
+
     @Override
     public synchronized boolean insert(final String key, final BinDetailRecord iinbo) {
+        if (!StringUtils.isNumeric(key)) {
+            log.error("Invalid key {} is ignored", key);
+            return false;
+        }
+        prefixFilter.add(bounds.lowBin(iinbo), bounds.highBin(iinbo));
         TrieNode node = root;
         for (int i = 0; i < key.length(); ++i) {
             final char c = key.charAt(i);
@@ -34,6 +52,8 @@ public class Trie extends SearchTree {
                     // only store data at leafs
                     node.addChild(c, iinbo);
                     nodeCount++;
+                    refreshPath(key);
+                    modified();
                     return true;
                 } else {
                     node.addChild(c);
@@ -69,16 +89,72 @@ public class Trie extends SearchTree {
         do {
             parent = stack.pop();
             c = key.charAt(--i);
-            parent.children[c - '0'] = null; //NOSONAR
+            parent.removeChild(c);
             nodeCount--;
         } while (!stack.isEmpty() && parent.isLeaf());
+        // the rest of the stack are the ancestors, nearest first
+        stack.forEach(TrieNode::refresh);
+        modified();
         return true;
     }
 
     @Override
-    public Optional<BinDetailRecord> find(final String key) {
+    @Nullable
+    protected synchronized BinDetailRecord recordAt(final String key) {
+        TrieNode node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.getChild(key.charAt(i));
+        }
+        return node == null ? null : node.record;
+    }
+
+    /**
+     * Refreshes the cached leaves of the nodes on the path of the key bottom up, after a child was added on it
+     */
+    private void refreshPath(final String key) {
+        final TrieNode[] path = new TrieNode[key.length() + 1];
+        int size = 0;
+        TrieNode node = root;
+        while (node != null) {
+            path[size++] = node;
+            node = size <= key.length() ? node.getChild(key.charAt(size - 1)) : null;
+        }
+        while (size > 0) {
+            path[--size].refresh();
+        }
+    }
+
+    public FrozenTrie freeze() {
+        return freeze(false);
+    }
+
+    /**
+     * Compiles the tree into a compact read-only {@link FrozenTrie} that gives the same lookup answers.
+     * This tree is left as it is.
+     *
+     * @param offHeap keep the nodes in direct buffers outside of the Java heap
+     */
+    public synchronized FrozenTrie freeze(final boolean offHeap) {
+        return FrozenTrie.of(this, offHeap);
+    }
+
+    @Override
+    @Nullable
+    public BinDetailRecord get(final CharSequence key) {
+        if (!prefixFilter.mightMatch(key)) {
+            return null;
+        }
+        final NodeStack stack = NodeStack.get();
+        try {
+            return get(key, stack);
+        } finally {
+            stack.clear();
+        }
+    }
+
+    @Nullable
+    private BinDetailRecord get(final CharSequence key, final NodeStack stack) {
         TrieNode node = root;
-        final Deque<TrieNode> stack = new ArrayDeque<>();
         int i = 0;
         while (i < key.length() && node != null) {
             final char c = key.charAt(i++);
@@ -98,7 +174,9 @@ public class Trie extends SearchTree {
         return backtrack(stack, key, i);
     }
 
-    protected <T extends TrieNode> Optional<BinDetailRecord> backtrack(final Deque<T> stack, final String key, final int index) {
+    @Override
+    @Nullable
+    protected BinDetailRecord backtrack(final NodeStack stack, final CharSequence key, final int index) {
         int tries = Math.min(index - 1, compressExponent);
         int i = index;
         while (tries > 0 && !stack.isEmpty()) {
@@ -106,24 +184,24 @@ public class Trie extends SearchTree {
             final TrieNode node = stack.pop();
             if (node.isLeaf()) {
                 if (isInRange(key, node.record)) {
-                    return Optional.of(node.record);
+                    return node.record;
                 }
-                return Optional.empty();
+                return null;
             }
 
             final char c = key.charAt(i--);
             int j = c - '1'; // don't repeat previous path
             while (j >= 0) {
-                final TrieNode child = node.children[j]; //NOSONAR
+                final TrieNode child = node.child(j);
                 if (child != null) {
                     if (child.isLeaf()) {
                         if (isInRange(key, child.record) || isPrefix(key, child.record)) {
-                            return Optional.of(child.record);
+                            return child.record;
                         }
                     } else {
                         final TrieNode greatest = child.getGreatestLeaf();
                         if (greatest != null && (isInRange(key, greatest.record) || isPrefix(key, greatest.record))) {
-                            return Optional.of(greatest.record);
+                            return greatest.record;
                         }
                     }
                     break;
@@ -131,6 +209,6 @@ public class Trie extends SearchTree {
                 j--;
             }
         }
-        return Optional.empty();
+        return null;
     }
 }
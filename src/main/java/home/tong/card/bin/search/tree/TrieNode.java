@@ -7,10 +7,23 @@ import org.springframework.lang.Nullable;
 @EqualsAndHashCode
 class TrieNode {
     static final int RADIX = 10;
+    // estimated heap taken by a node
+    static final long BYTES = SearchTreeStats.objectBytes(4 * SearchTreeStats.REFERENCE + Integer.BYTES);
+    // bit d is set if there is a child for digit d
+    int bitmap;
+    // the children in the order of their digits, as many as there are bits in the bitmap, null if there are none.
+    // The child for a digit is at the number of bits below the bit of the digit.
     @Nullable
     protected TrieNode[] children;
     @Nullable
     protected BinDetailRecord record;
+    // cached from the children, see refresh()
+    @Nullable
+    @EqualsAndHashCode.Exclude
+    private TrieNode leastLeaf;
+    @Nullable
+    @EqualsAndHashCode.Exclude
+    private TrieNode greatestLeaf;
 
     public TrieNode() {
     }
@@ -28,80 +41,154 @@ class TrieNode {
     }
 
     public boolean hasChild(final char c) {
-        return children != null && children[getIndex(c)] != null;
+        return child(getIndex(c)) != null;
     }
 
     public boolean addChild(final char c) {
-        if (children == null) {
-            children = new TrieNode[RADIX];
-        }
         if (hasChild(c)) {
             return false;
         } else {
-            children[getIndex(c)] = new TrieNode();
+            putChild(getIndex(c), new TrieNode());
+            refresh();
             return true;
         }
     }
 
     public boolean addChild(final char c, final BinDetailRecord r) {
-        if (children == null) {
-            children = new TrieNode[RADIX];
-        }
         if (hasChild(c)) {
             return false;
         } else {
-            children[getIndex(c)] = new TrieNode(r);
+            putChild(getIndex(c), new TrieNode(r));
+            refresh();
             return true;
         }
     }
 
     public @Nullable TrieNode getChild(final char c) {
-        return children == null ? null : children[getIndex(c)];
+        return child(getIndex(c));
     }
 
-    public @Nullable TrieNode getGreatestLeaf() {
-        if (children == null) {
+    /**
+     * The child for the digit, null if there is none
+     */
+    @Nullable
+    final TrieNode child(final int digit) {
+        if (digit < 0 || digit >= RADIX || (bitmap & 1 << digit) == 0) {
             return null;
         }
+        return children[Integer.bitCount(bitmap & ((1 << digit) - 1))];
+    }
 
-        for (int i = children.length - 1; i >= 0; i--) {
-            final TrieNode child = children[i];
+    /**
+     * Sets the child for the digit, or removes it if the child is null. The array of children is replaced by one
+     * of the new fan-out when a child is added or removed. The caches are not refreshed.
+     */
+    final void putChild(final int digit, @Nullable final TrieNode child) {
+        if (digit < 0 || digit >= RADIX) {
+            throw new IllegalArgumentException("Child index must be a digit, not " + digit);
+        }
+        final int bit = 1 << digit;
+        final int index = Integer.bitCount(bitmap & (bit - 1));
+        final int count = Integer.bitCount(bitmap);
+        if ((bitmap & bit) != 0) {
             if (child != null) {
-                if (child.isLeaf()) {
-                    return child;
-                } else {
-                    return child.getGreatestLeaf();
-                }
+                children[index] = child;
+            } else if (count == 1) {
+                children = null;
+                bitmap = 0;
+            } else {
+                final TrieNode[] fewer = new TrieNode[count - 1];
+                System.arraycopy(children, 0, fewer, 0, index);
+                System.arraycopy(children, index + 1, fewer, index, count - index - 1);
+                children = fewer;
+                bitmap &= ~bit;
+            }
+        } else if (child != null) {
+            final TrieNode[] more = new TrieNode[count + 1];
+            if (children != null) {
+                System.arraycopy(children, 0, more, 0, index);
+                System.arraycopy(children, index, more, index + 1, count - index);
             }
+            more[index] = child;
+            children = more;
+            bitmap |= bit;
         }
-        return null;
     }
 
-    public boolean isLeaf() {
-        if (children == null)
-            return true;
-        for (final TrieNode n : children) {
-            if (n != null) {
-                return false;
-            }
+    /**
+     * Removes the child for the digit. The caches of the ancestors have to be refreshed by the caller.
+     */
+    void removeChild(final char c) {
+        if (hasChild(c)) {
+            putChild(getIndex(c), null);
+            refresh();
         }
-        return true;
     }
 
-    public @Nullable TrieNode getLeastLeaf() {
+    /**
+     * Recomputes the least and the greatest leaf from the children, whose caches must
+     * be up to date. After a child is added or removed, the node and then its ancestors bottom up are refreshed.
+     */
+    void refresh() {
         if (children == null) {
-            return null;
+            leastLeaf = null;
+            greatestLeaf = null;
+        } else {
+            final TrieNode least = children[0];
+            final TrieNode greatest = children[children.length - 1];
+            leastLeaf = least.isLeaf() ? least : least.leastLeaf;
+            greatestLeaf = greatest.isLeaf() ? greatest : greatest.greatestLeaf;
         }
+    }
 
-        for (final TrieNode child : children) {
-            if (child != null) {
-                if (child.isLeaf()) {
-                    return child;
-                } else {
-                    return child.getLeastLeaf();
-                }
+    /**
+     * Refreshes the node and every node under it bottom up, after a subtree was built without refreshing
+     */
+    void refreshAll() {
+        if (children != null) {
+            for (final TrieNode child : children) {
+                child.refreshAll();
+            }
+        }
+        refresh();
+    }
+
+    /**
+     * Counts the node and every node under it, see {@link SearchTree#collectStats}
+     */
+    void collectStats(final int depth, final SearchTreeStats.Builder stats) {
+        if (children != null) {
+            stats.bytes("child arrays", SearchTreeStats.arrayBytes(children.length, SearchTreeStats.REFERENCE));
+            for (final TrieNode child : children) {
+                child.collectStats(depth + 1, stats);
             }
         }
-        return null;
+        stats.node(depth, numberOfChildren(), labelLength(depth)).bytes("nodes", BYTES);
+        if (record != null) {
+            stats.key(record);
+        }
+    }
+
+    /**
+     * Number of digits of the key the node stands for, one for all nodes of a trie but the root
+     */
+    int labelLength(final int depth) {
+        return depth == 0 ? 0 : 1;
+    }
+
+    public int numberOfChildren() {
+        return Integer.bitCount(bitmap);
+    }
+
+    public @Nullable TrieNode getGreatestLeaf() {
+        return greatestLeaf;
+    }
+
+    public boolean isLeaf() {
+        return bitmap == 0;
+    }
+
+    public @Nullable TrieNode getLeastLeaf() {
+        return leastLeaf;
     }
 }
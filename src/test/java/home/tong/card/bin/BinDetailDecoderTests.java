@@ -0,0 +1,153 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.enums.AccountFundSourceSubType;
+import home.tong.card.bin.enums.MoneySendIndicator;
+import home.tong.card.bin.enums.OriginalCreditIndicator;
+import home.tong.card.bin.enums.PrepaidIndicator;
+import home.tong.card.bin.file.parser.BinDetailDecoder;
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.file.parser.BinProfile;
+import home.tong.card.bin.file.parser.BinProfilePool;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BinDetailDecoderTests {
+    private static List<BinDetailRecord> parsed;
+    private static List<byte[]> lines;
+
+    @BeforeAll
+    public static void beforeAll() throws Exception {
+        parsed = IntervalIndexTests.readDetailRecords();
+        lines = new ArrayList<>();
+        for (final BinDetailRecord record : parsed) {
+            lines.add(record.getRecord().getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    @Test
+    public void decodedRecordsHaveTheAttributesOfParsedOnes() throws Exception {
+        final BinProfilePool pool = new BinProfilePool();
+        final BinDetailDecoder decoder = new BinDetailDecoder(pool);
+        // half of the lines at an offset in an array, the other half in a direct buffer
+        final byte[] array = new byte[1024];
+        for (int i = 0; i < parsed.size(); i++) {
+            final byte[] line = lines.get(i);
+            final BinDetailRecord actual;
+            if (i % 2 == 0) {
+                System.arraycopy(line, 0, array, 100, line.length);
+                actual = decoder.decode(array, 100, line.length);
+            } else {
+                final ByteBuffer buffer = ByteBuffer.allocateDirect(line.length + 10);
+                buffer.position(10);
+                buffer.put(line);
+                buffer.position(10);
+                actual = decoder.decode(buffer);
+                assertThat(buffer.position()).isEqualTo(10);
+            }
+
+            final BinDetailRecord expected = parsed.get(i);
+            assertThat(actual.getProfile().isShared()).isTrue();
+            assertThat(actual.getRecord()).isEqualTo(expected.getRecord());
+            assertThat(actual.getLowBin()).isEqualTo(expected.getLowBin());
+            assertThat(actual.getHighBin()).isEqualTo(expected.getHighBin());
+            assertThat(actual.getLowBinValue()).isEqualTo(expected.getLowBinValue());
+            assertThat(actual.getHighBinValue()).isEqualTo(expected.getHighBinValue());
+            assertThat(actual.getFlags()).isEqualTo(expected.getFlags());
+            for (final Method getter : BinProfile.class.getMethods()) {
+                if (getter.getName().startsWith("get") && getter.getParameterCount() == 0 && getter.getDeclaringClass() == BinProfile.class) {
+                    assertThat(getter.invoke(actual.getProfile())).isEqualTo(getter.invoke(expected.getProfile()));
+                }
+            }
+        }
+        assertThat(pool.interned()).isEqualTo(parsed.size());
+        assertThat(pool.size()).isLessThan(parsed.size() / 2);
+
+        // records interned from strings and decoded from bytes share the same profiles
+        final BinDetailRecord interned = pool.intern(new BinDetailRecord(parsed.get(0).getRecord()));
+        assertThat(interned.getProfile()).isSameAs(decoder.decode(lines.get(0), 0, lines.get(0).length).getProfile());
+    }
+
+    @Test
+    public void everyFieldOfAFullLineIsReadTheSameWay() throws Exception {
+        // every field filled, fillers included, so a field read at the wrong offset gets something else
+        final String line = "D" + "4000123456      " + "4000123499      " + "10" + "16"
+                + String.format("%-60s", "FULL FIELD BANK") + "USA" + "V" + "H " + "F1" + "22" + "03" + "13"
+                + String.format("%-60s", "STAR NYCE") + "TX" + "MC" + "F" + "F2F2F2F2F2F2F2F2F2"
+                + "P" + "MCS" + "B" + "AG" + "L" + "Y" + "P" + "T" + "12" + "19" + "Y" + "03" + "USD" + "F3F3"
+                + "R" + "F4F4F4F4F4F4F4F4F4" + "D" + "A" + "N" + "C" + "F5F5F" + "A" + "RS";
+        assertThat(line.length()).isEqualTo(250);
+        final byte[] bytes = line.getBytes(StandardCharsets.ISO_8859_1);
+        final BinDetailRecord parsed = new BinDetailRecord(line);
+        final BinDetailRecord decoded = new BinDetailDecoder(new BinProfilePool()).decode(bytes, 0, bytes.length);
+
+        for (final Method getter : BinDetailRecord.class.getMethods()) {
+            if (getter.getName().startsWith("get") && getter.getParameterCount() == 0 && getter.getDeclaringClass() == BinDetailRecord.class
+                    && !getter.getName().equals("getProfile")) {
+                assertThat(getter.invoke(decoded)).isEqualTo(getter.invoke(parsed));
+            }
+        }
+        assertThat(decoded.getRecord()).isEqualTo(line);
+        assertThat(decoded.getHighBin()).isEqualTo("4000123499");
+        assertThat(decoded.getIssuerBankName()).isEqualTo("FULL FIELD BANK");
+        // the first field after each filler
+        assertThat(decoded.getIssuerUpdateYear()).isEqualTo("22");
+        assertThat(decoded.getPrepaidIndicator()).isEqualTo(PrepaidIndicator.PREPAID_CARD);
+        assertThat(decoded.getAccountFundSourceSubType()).isEqualTo(AccountFundSourceSubType.PREPAID_CARD_RELOADABLE);
+        assertThat(decoded.getMoneySendIndicator()).isEqualTo(MoneySendIndicator.ENABLED_DOMESTIC_ONLY);
+        assertThat(decoded.getOriginalCreditTransactionIndicator()).isEqualTo(OriginalCreditIndicator.US_ISSUER_ACCEPT);
+        assertThat(decoded.getPanLengthMax()).isEqualTo(19);
+        assertThat(decoded.getCardholderBillingCurrency()).isNotNull();
+    }
+
+    @Test
+    public void knownAttributesAreNotDecodedAgain() throws Exception {
+        final BinDetailDecoder decoder = new BinDetailDecoder(new BinProfilePool());
+        for (final byte[] line : lines) {
+            decoder.decode(line, 0, line.length);
+        }
+        final long before = allocatedBytes();
+        for (final byte[] line : lines) {
+            decoder.decode(line, 0, line.length);
+        }
+        final long perRecord = (allocatedBytes() - before) / lines.size();
+
+        final long parseBefore = allocatedBytes();
+        for (final BinDetailRecord record : parsed) {
+            new BinDetailRecord(record.getRecord());
+        }
+        final long perParsedRecord = (allocatedBytes() - parseBefore) / parsed.size();
+        System.out.println("Decoding takes " + perRecord + " bytes a record, parsing " + perParsedRecord);
+        // the record and the strings of its BINs
+        assertThat(perRecord).isLessThan(256);
+        assertThat(perRecord * 5).isLessThan(perParsedRecord);
+    }
+
+    @Test
+    public void linesThatAreNotDetailRecordsAreRejected() {
+        final BinDetailDecoder decoder = new BinDetailDecoder(new BinProfilePool());
+        final byte[] line = lines.get(0).clone();
+        assertThatThrownBy(() -> decoder.decode(line, 0, 100)).isInstanceOf(ParseException.class);
+        line[0] = 'H';
+        assertThatThrownBy(() -> decoder.decode(line, 0, line.length)).isInstanceOf(ParseException.class);
+        line[0] = 'D';
+        // the BIN length
+        line[33] = 'X';
+        assertThatThrownBy(() -> decoder.decode(line, 0, line.length)).isInstanceOf(ParseException.class);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
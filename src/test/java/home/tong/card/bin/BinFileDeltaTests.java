@@ -0,0 +1,239 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.search.tree.BinFileDelta;
+import home.tong.card.bin.search.tree.ConcurrentRadixTree;
+import home.tong.card.bin.search.tree.IntervalIndex;
+import home.tong.card.bin.search.tree.RadixTree;
+import home.tong.card.bin.search.tree.SearchTree;
+import home.tong.card.bin.search.tree.SearchTreeHolder;
+import home.tong.card.bin.search.tree.SearchTreeLoader;
+import home.tong.card.bin.search.tree.Trie;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BinFileDeltaTests {
+    private static final String BIN_FILE = "/sample-bin-file.txt";
+    private static final int BANK_NAME_START = 37;
+    private static final int BANK_NAME_LENGTH = 60;
+    private static String oldFile;
+    private static String newFile;
+    private static int changed;
+
+    @BeforeAll
+    public static void beforeAll() throws Exception {
+        final List<String> lines;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                BinFileDeltaTests.class.getResourceAsStream(BIN_FILE), StandardCharsets.ISO_8859_1))) {
+            lines = br.lines().collect(Collectors.toList());
+        }
+        oldFile = String.join("\n", lines) + "\n";
+
+        // every 50th record removed, every 37th renamed, every 41st narrowed to its low BIN, and 20 records added
+        final List<String> details = new ArrayList<>();
+        for (int i = 1; i < lines.size() - 1; i++) {
+            String line = lines.get(i);
+            if (i % 50 == 0) {
+                continue;
+            }
+            if (i % 37 == 0) {
+                line = line.substring(0, BANK_NAME_START) + StringUtils.rightPad("RENAMED BANK " + i, BANK_NAME_LENGTH)
+                        + line.substring(BANK_NAME_START + BANK_NAME_LENGTH);
+            }
+            if (i % 41 == 0) {
+                line = line.substring(0, 17) + line.substring(1, 17) + line.substring(33);
+            }
+            if (!line.equals(lines.get(i))) {
+                changed++;
+            }
+            details.add(line);
+        }
+        for (int i = 0; i < 20; i++) {
+            final String bin = StringUtils.rightPad("9999" + (10 + i) + "00", 16);
+            details.add("D" + bin + bin + lines.get(1).substring(33));
+        }
+        details.sort(BinDetailRecord::compareLowBin);
+        newFile = lines.get(0) + "\n" + String.join("\n", details) + "\n" + lines.get(lines.size() - 1) + "\n";
+    }
+
+    private static InputStream stream(final String file) {
+        return new ByteArrayInputStream(file.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static <T extends SearchTree> T load(final Supplier<T> factory, final String file) {
+        final T tree = factory.get();
+        new SearchTreeLoader().loadFromStream(tree, stream(file));
+        return tree;
+    }
+
+    private static void assertSameAnswers(final SearchTree tree, final SearchTree expected) {
+        for (long bin = 100000L; bin < 1000000L; bin++) {
+            final BinDetailRecord record = tree.get(bin, 6);
+            final BinDetailRecord expectedRecord = expected.get(bin, 6);
+            if (expectedRecord == null) {
+                assertThat(record).isNull();
+            } else {
+                assertThat(record.getRecord()).isEqualTo(expectedRecord.getRecord());
+            }
+        }
+        for (int i = 0; i < 20; i++) {
+            final String key = "9999" + (10 + i) + "00";
+            if (expected.get(key) == null) {
+                assertThat(tree.get(key)).isNull();
+            } else {
+                assertThat(tree.get(key).getIssuerBankName()).isEqualTo(expected.get(key).getIssuerBankName());
+            }
+        }
+    }
+
+    @Test
+    public void deltaGivesTheAnswersOfAFullLoad() throws Exception {
+        final BinFileDelta delta = BinFileDelta.compare(stream(oldFile), stream(newFile));
+        assertThat(delta.getAddedCount()).isEqualTo(20);
+        assertThat(delta.getRemovedCount()).isEqualTo(100);
+        assertThat(delta.getChangedCount()).isEqualTo(changed);
+        assertThat(delta.getUnchangedCount() + delta.getChangedCount() + delta.getRemovedCount()).isEqualTo(5000);
+        assertThat(delta.getDeletes()).hasSize(delta.getRemovedCount() + delta.getChangedCount());
+        assertThat(delta.getInserts()).hasSize(delta.getAddedCount() + delta.getChangedCount());
+
+        for (final Supplier<SearchTree> factory : Arrays.<Supplier<SearchTree>>asList(() -> new RadixTree(4), () -> new Trie(4),
+                () -> new ConcurrentRadixTree(4), () -> new IntervalIndex(4))) {
+            final SearchTree tree = load(factory, oldFile);
+            final long version = tree.version();
+            assertThat(delta.applyTo(tree)).isZero();
+            assertThat(tree.version()).isGreaterThan(version);
+            assertSameAnswers(tree, load(factory, newFile));
+        }
+
+        final BinFileDelta none = BinFileDelta.compare(stream(oldFile), stream(oldFile));
+        assertThat(none.isEmpty()).isTrue();
+        assertThat(none.getUnchangedCount()).isEqualTo(5000);
+    }
+
+    @Test
+    public void filesMustBeSortedByLowBin() {
+        final String[] lines = oldFile.split("\n");
+        final String swapped = lines[0] + "\n" + lines[2] + "\n" + lines[1] + "\n" + lines[lines.length - 1] + "\n";
+        assertThatThrownBy(() -> BinFileDelta.compare(stream(oldFile), stream(swapped))).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void holderUpdatesAConcurrentTreeInPlace() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final SearchTreeHolder holder = new SearchTreeHolder(() -> new ConcurrentRadixTree(4), new SearchTreeLoader(), executor);
+            final SearchTree loaded = holder.reload(() -> stream(oldFile), Collections.emptyList()).get();
+            assertThat(holder.update(() -> stream(oldFile), () -> stream(newFile), Collections.emptyList()).get()).isSameAs(loaded);
+            assertThat(holder.get()).isSameAs(loaded);
+            assertThat(holder.find("99991000").isPresent()).isTrue();
+
+            // a tree that is not edited in place is loaded again
+            final SearchTreeHolder radixHolder = new SearchTreeHolder(() -> new RadixTree(4), new SearchTreeLoader(), executor);
+            final SearchTree radix = radixHolder.reload(() -> stream(oldFile), Collections.emptyList()).get();
+            assertThat(radixHolder.update(() -> stream(oldFile), () -> stream(newFile), Collections.emptyList()).get()).isNotSameAs(radix);
+            assertThat(radixHolder.find("99991000").isPresent()).isTrue();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void changedRecordsAreFoundWhileTheyAreReplaced() throws Exception {
+        final ConcurrentRadixTree tree = load(() -> new ConcurrentRadixTree(4), oldFile);
+        final BinFileDelta forward = BinFileDelta.compare(stream(oldFile), stream(newFile));
+        final BinFileDelta backward = BinFileDelta.compare(stream(newFile), stream(oldFile));
+        // the low BINs of the changed records are in their old and their new range
+        final List<String> lowBins = new ArrayList<>();
+        for (final BinDetailRecord record : forward.getDeletes()) {
+            if (tree.get(record.getLowBin()) != null && forward.getInserts().stream()
+                    .anyMatch(inserted -> inserted.getLowBin().equals(record.getLowBin()))) {
+                lowBins.add(record.getLowBin());
+            }
+        }
+        assertThat(lowBins).hasSize(changed);
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger missed = new AtomicInteger();
+        final Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                for (final String lowBin : lowBins) {
+                    if (tree.get(lowBin) == null) {
+                        missed.incrementAndGet();
+                    }
+                }
+            }
+        });
+        reader.start();
+        try {
+            for (int round = 0; round < 20; round++) {
+                assertThat(forward.applyTo(tree)).isZero();
+                assertThat(backward.applyTo(tree)).isZero();
+            }
+        } finally {
+            done.set(true);
+            reader.join();
+        }
+        assertThat(missed.get()).isZero();
+        assertSameAnswers(tree, load(() -> new ConcurrentRadixTree(4), oldFile));
+    }
+
+    @Test
+    public void holderChecksTheOldFileAndLoadsTheNewOneIfTheDeltaFails() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final SearchTreeHolder holder = new SearchTreeHolder(() -> new ConcurrentRadixTree(4), new SearchTreeLoader(), executor);
+            final SearchTree loaded = holder.reload(() -> stream(oldFile), Collections.emptyList()).get();
+
+            // the tree was not loaded from the new file
+            final CompletableFuture<SearchTree> rejected = holder.update(() -> stream(newFile), () -> stream(oldFile),
+                    Collections.emptyList());
+            assertThat(rejected.handle((tree, e) -> e).get()).hasCauseInstanceOf(IllegalArgumentException.class);
+            assertThat(holder.get()).isSameAs(loaded);
+            assertThat(holder.find("99991000").isPresent()).isFalse();
+
+            // a record the delta deletes is gone already, so the new file is loaded instead
+            final BinDetailRecord removed = new BinDetailRecord(oldFile.split("\n")[50]);
+            assertThat(loaded.deleteBinRange(SearchTreeLoader.getCompressFactor(4), removed)).isTrue();
+            final SearchTree updated = holder.update(() -> stream(oldFile), () -> stream(newFile), Collections.emptyList()).get();
+            assertThat(updated).isNotSameAs(loaded);
+            assertThat(holder.get()).isSameAs(updated);
+            assertSameAnswers(updated, load(() -> new ConcurrentRadixTree(4), newFile));
+
+            // the loaded tree is of the new file, so it can be updated back
+            assertThat(holder.update(() -> stream(newFile), () -> stream(oldFile), Collections.emptyList()).get()).isSameAs(updated);
+            assertSameAnswers(updated, load(() -> new ConcurrentRadixTree(4), oldFile));
+
+            // the holder cannot tell which file a tree swapped in from elsewhere is of
+            final ConcurrentRadixTree swapped = load(() -> new ConcurrentRadixTree(4), oldFile);
+            holder.swap(swapped);
+            final CompletableFuture<SearchTree> unknown = holder.update(() -> stream(oldFile), () -> stream(newFile),
+                    Collections.emptyList());
+            assertThat(unknown.handle((tree, e) -> e).get()).hasCauseInstanceOf(IllegalArgumentException.class);
+            assertThat(holder.get()).isSameAs(swapped);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
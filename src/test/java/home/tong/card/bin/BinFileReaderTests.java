@@ -0,0 +1,128 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.enums.RecordTypeIndicator;
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.file.parser.BinFileReader;
+import home.tong.card.bin.search.tree.RadixTree;
+import home.tong.card.bin.search.tree.SearchTreeLoader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BinFileReaderTests {
+    private Path dir;
+    private Path binFile;
+    private List<String> lines;
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        dir = Files.createTempDirectory("bin-file-reader");
+        binFile = dir.resolve("bin-file.txt");
+        try (InputStream inputStream = BinFileReaderTests.class.getResourceAsStream("/sample-bin-file.txt")) {
+            Files.copy(inputStream, binFile);
+        }
+        lines = Files.readAllLines(binFile, StandardCharsets.ISO_8859_1);
+    }
+
+    private static List<String> readAll(final Path file, final int windowSize) throws IOException {
+        final List<String> read = new ArrayList<>();
+        try (BinFileReader reader = BinFileReader.open(file, windowSize)) {
+            while (reader.next()) {
+                read.add(reader.line());
+            }
+            assertThat(reader.position()).isEqualTo(reader.size());
+        }
+        return read;
+    }
+
+    @Test
+    public void windowsGiveTheLinesOfTheFile() throws Exception {
+        // windows that end in the middle of records, on a line end and hold the whole file
+        for (final int windowSize : new int[]{300, 251 * 3, 4096, BinFileReader.DEFAULT_WINDOW_SIZE}) {
+            assertThat(readAll(binFile, windowSize)).isEqualTo(lines);
+        }
+
+        final Path windowsFile = dir.resolve("crlf.txt");
+        Files.write(windowsFile, ("\r\n" + String.join("\r\n", lines) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        assertThat(readAll(windowsFile, 1000)).isEqualTo(lines);
+
+        final Path noLastLineFeed = dir.resolve("no-lf.txt");
+        Files.write(noLastLineFeed, String.join("\n", lines).getBytes(StandardCharsets.ISO_8859_1));
+        assertThat(readAll(noLastLineFeed, 1000)).isEqualTo(lines);
+
+        final Path empty = dir.resolve("empty.txt");
+        Files.write(empty, new byte[0]);
+        assertThat(readAll(empty, 1000)).isEmpty();
+
+        assertThatThrownBy(() -> readAll(binFile, 100)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void recordsAreViewsOfTheFile() throws Exception {
+        try (BinFileReader reader = BinFileReader.open(binFile, 1000)) {
+            assertThat(reader.next()).isTrue();
+            assertThat(reader.recordType()).isEqualTo(RecordTypeIndicator.HEADER);
+            int details = 0;
+            ByteBuffer first = null;
+            while (reader.next() && reader.recordType() == RecordTypeIndicator.DETAIL) {
+                if (first == null) {
+                    first = reader.record();
+                }
+                details++;
+            }
+            assertThat(details).isEqualTo(lines.size() - 2);
+            assertThat(reader.recordType()).isEqualTo(RecordTypeIndicator.TRAILER);
+            assertThat(reader.recordLength()).isEqualTo(lines.get(lines.size() - 1).length());
+
+            // the first detail record is still there after its window was left
+            assertThat(first.isReadOnly()).isTrue();
+            final byte[] bytes = new byte[first.remaining()];
+            first.get(bytes);
+            assertThat(new String(bytes, StandardCharsets.ISO_8859_1)).isEqualTo(lines.get(1));
+        }
+    }
+
+    @Test
+    public void loaderLoadsTheMappedFile() throws Exception {
+        final SearchTreeLoader loader = new SearchTreeLoader();
+        final RadixTree mapped = new RadixTree(4);
+        loader.loadFromFile(mapped, binFile);
+        assertThat(loader.getLoadedRecords()).isEqualTo(lines.size() - 2);
+        assertThat(loader.getProgressRatio()).isEqualTo(100);
+
+        final RadixTree streamed = new RadixTree(4);
+        try (InputStream inputStream = Files.newInputStream(binFile)) {
+            loader.loadFromStream(streamed, inputStream);
+        }
+        assertThat(mapped.size()).isEqualTo(streamed.size());
+        final Map<String, String> byLowBin = new HashMap<>();
+        for (final String line : lines.subList(1, lines.size() - 1)) {
+            byLowBin.put(new BinDetailRecord(line).getLowBin(), line);
+        }
+        for (long bin = 100000L; bin < 1000000L; bin++) {
+            final BinDetailRecord expected = streamed.get(bin, 6);
+            final BinDetailRecord actual = mapped.get(bin, 6);
+            if (expected == null) {
+                assertThat(actual).isNull();
+            } else {
+                // both decode the Latin-1 letters of the file the same way
+                assertThat(actual.getRecord()).isEqualTo(expected.getRecord());
+                assertThat(actual.getIssuerBankName()).isEqualTo(expected.getIssuerBankName());
+                assertThat(actual.getRecord()).isEqualTo(byLowBin.get(actual.getLowBin()));
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.enums.FastFunds;
+import home.tong.card.bin.enums.OriginalCreditIndicator;
+import home.tong.card.bin.enums.PrepaidIndicator;
+import home.tong.card.bin.enums.RegulatorIndicator;
+import home.tong.card.bin.enums.YesNoAnswer;
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.file.parser.BinFlag;
+import home.tong.card.bin.file.parser.BinProfilePool;
+import home.tong.card.bin.file.parser.BinRecordColumns;
+import home.tong.card.bin.search.tree.RadixTree;
+import home.tong.card.bin.search.tree.SearchTree;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BinFlagTests {
+
+    @Test
+    public void flagsHoldTheEnumAttributes() throws Exception {
+        final List<BinDetailRecord> records = IntervalIndexTests.readDetailRecords();
+        final List<BinDetailRecord> interned = IntervalIndexTests.readDetailRecords();
+        final BinProfilePool pool = new BinProfilePool();
+        interned.forEach(pool::intern);
+        final BinRecordColumns columns = BinRecordColumns.of(records);
+        for (int i = 0; i < records.size(); i++) {
+            final BinDetailRecord record = records.get(i);
+            final long flags = record.getFlags();
+            assertThat(flags).isGreaterThanOrEqualTo(0L);
+            assertThat(BinFlag.PREPAID_INDICATOR.valueOf(flags)).isSameAs(record.getPrepaidIndicator());
+            assertThat(BinFlag.REGULATOR_INDICATOR.valueOf(flags)).isSameAs(record.getRegulatorIndicator());
+            assertThat(BinFlag.FAST_FUNDS.valueOf(flags)).isSameAs(record.getFastFunds());
+            assertThat(BinFlag.MONEY_SEND_INDICATOR.valueOf(flags)).isSameAs(record.getMoneySendIndicator());
+            assertThat(BinFlag.ORIGINAL_CREDIT_TRANSACTION_INDICATOR.valueOf(flags)).isSameAs(record.getOriginalCreditTransactionIndicator());
+            assertThat(BinFlag.TOKEN_INDICATOR.valueOf(flags)).isSameAs(record.getTokenIndicator());
+            assertThat(BinFlag.FSA_INDICATOR.valueOf(flags)).isSameAs(record.getFsaIndicator());
+            assertThat(BinFlag.VISA_PRODUCT_SUBTYPE.valueOf(flags)).isSameAs(record.getVisaProductSubtype());
+            assertThat(interned.get(i).getFlags()).isEqualTo(flags);
+            assertThat(columns.getFlags(i)).isEqualTo(flags);
+        }
+
+        // a setter changes the flags of the record only
+        final BinDetailRecord record = interned.get(0);
+        final PrepaidIndicator prepaid = record.getPrepaidIndicator() == PrepaidIndicator.PREPAID_CARD
+                ? PrepaidIndicator.DEFAULT : PrepaidIndicator.PREPAID_CARD;
+        final long before = record.getFlags();
+        record.setPrepaidIndicator(prepaid);
+        assertThat(BinFlag.PREPAID_INDICATOR.valueOf(record.getFlags())).isSameAs(prepaid);
+        assertThat(record.getFlags() & ~BinFlag.PREPAID_INDICATOR.mask()).isEqualTo(before & ~BinFlag.PREPAID_INDICATOR.mask());
+        assertThat(records.get(0).getFlags()).isEqualTo(before);
+
+        assertThat(BinFlag.TOKEN_INDICATOR.bits(null)).isEqualTo(0L);
+        assertThatThrownBy(() -> BinFlag.PREPAID_INDICATOR.bits(YesNoAnswer.Y)).isInstanceOf(IllegalArgumentException.class);
+        long masks = 0;
+        for (final BinFlag flag : BinFlag.values()) {
+            assertThat(masks & flag.mask()).isEqualTo(0L);
+            masks |= flag.mask();
+        }
+        assertThat(masks).isGreaterThan(0L);
+    }
+
+    @Test
+    public void findChecksTheFlagsOfTheMatch() throws Exception {
+        final RadixTree tree = new RadixTree(4);
+        for (final BinDetailRecord record : IntervalIndexTests.readDetailRecords()) {
+            tree.insertBinRange(10000, record);
+        }
+        final long mask = BinFlag.REGULATOR_INDICATOR.mask() | BinFlag.FAST_FUNDS.mask() | BinFlag.ORIGINAL_CREDIT_TRANSACTION_INDICATOR.mask();
+        int found = 0;
+        for (final RegulatorIndicator regulator : RegulatorIndicator.values()) {
+            for (final FastFunds fastFunds : FastFunds.values()) {
+                final long expected = BinFlag.REGULATOR_INDICATOR.bits(regulator) | BinFlag.FAST_FUNDS.bits(fastFunds)
+                        | BinFlag.ORIGINAL_CREDIT_TRANSACTION_INDICATOR.bits(OriginalCreditIndicator.DEFAULT);
+                for (long bin = 100000L; bin < 1000000L; bin += 7) {
+                    final BinDetailRecord record = tree.get(bin, 6);
+                    final boolean matches = record != null && record.getRegulatorIndicator() == regulator
+                            && record.getFastFunds() == fastFunds
+                            && record.getOriginalCreditTransactionIndicator() == OriginalCreditIndicator.DEFAULT;
+                    assertThat(tree.get(bin, 6, mask, expected)).isSameAs(matches ? record : null);
+                    assertThat(tree.get(String.valueOf(bin), mask, expected)).isSameAs(matches ? record : null);
+                    found += matches ? 1 : 0;
+                }
+            }
+        }
+        assertThat(found).isGreaterThan(0);
+        final SearchTree frozen = tree.freeze();
+        final BinDetailRecord record = frozen.get("305997");
+        assertThat(frozen.find("305997", BinFlag.PREPAID_INDICATOR.mask(), BinFlag.PREPAID_INDICATOR.bits(record.getPrepaidIndicator())).get())
+                .isSameAs(record);
+        assertThat(frozen.find("305997", BinFlag.PREPAID_INDICATOR.mask(), 0L).isPresent()).isFalse();
+        assertThat(frozen.find("673040", 0L, 0L).isPresent()).isFalse();
+    }
+}
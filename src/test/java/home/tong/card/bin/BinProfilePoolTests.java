@@ -0,0 +1,135 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.file.parser.BinProfile;
+import home.tong.card.bin.file.parser.BinProfilePool;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BinProfilePoolTests {
+    private static final int COPIES = 20;
+
+    @Test
+    public void internedRecordsKeepTheirAttributesAndLines() throws Exception {
+        final List<BinDetailRecord> plain = IntervalIndexTests.readDetailRecords();
+        final List<BinDetailRecord> interned = IntervalIndexTests.readDetailRecords();
+        final List<String> lines = new ArrayList<>();
+        for (final BinDetailRecord record : plain) {
+            lines.add(record.getRecord());
+        }
+        final BinProfilePool pool = new BinProfilePool();
+        interned.forEach(pool::intern);
+        assertThat(pool.interned()).isEqualTo(plain.size());
+        assertThat(pool.size()).isLessThan(plain.size() / 2);
+
+        for (int i = 0; i < plain.size(); i++) {
+            final BinDetailRecord expected = plain.get(i);
+            final BinDetailRecord actual = interned.get(i);
+            assertThat(actual.getProfile().isShared()).isTrue();
+            assertThat(actual.getRecord()).isEqualTo(lines.get(i));
+            assertThat(actual.getLowBin()).isEqualTo(expected.getLowBin());
+            assertThat(actual.getHighBinValue()).isEqualTo(expected.getHighBinValue());
+            for (final Method getter : BinProfile.class.getMethods()) {
+                if (getter.getName().startsWith("get") && getter.getParameterCount() == 0 && getter.getDeclaringClass() == BinProfile.class) {
+                    assertThat(getter.invoke(actual.getProfile())).isEqualTo(getter.invoke(expected.getProfile()));
+                }
+            }
+        }
+
+        // a setter gives the record a profile of its own
+        final Map<BinProfile, BinDetailRecord> firsts = new IdentityHashMap<>();
+        int next = 0;
+        while (!firsts.containsKey(interned.get(next).getProfile())) {
+            firsts.put(interned.get(next).getProfile(), interned.get(next));
+            next++;
+        }
+        final BinDetailRecord first = firsts.get(interned.get(next).getProfile());
+        final BinDetailRecord other = interned.get(next);
+        final String bankName = first.getIssuerBankName();
+        first.setIssuerBankName("OTHER BANK");
+        assertThat(first.getProfile().isShared()).isFalse();
+        assertThat(other.getIssuerBankName()).isEqualTo(bankName);
+        assertThat(pool.intern(first).getIssuerBankName()).isEqualTo("OTHER BANK");
+
+        final BinDetailRecord unparsed = new BinDetailRecord();
+        unparsed.setLowBin("401318");
+        assertThat(pool.intern(unparsed).getProfile().isShared()).isFalse();
+    }
+
+    @Test
+    public void linesAreReadWhileRecordsAreInterned() throws Exception {
+        final BinProfilePool pool = new BinProfilePool();
+        final BlockingQueue<BinDetailRecord> interned = new LinkedBlockingQueue<>();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // the store grows by several chunks while the lines of the records interned so far are read
+            final Future<?> interning = executor.submit(() -> {
+                for (int i = 0; i < 10; i++) {
+                    for (final BinDetailRecord record : IntervalIndexTests.readDetailRecords()) {
+                        interned.add(pool.intern(record));
+                    }
+                }
+                return null;
+            });
+            final List<BinDetailRecord> expected = IntervalIndexTests.readDetailRecords();
+            for (int i = 0; i < 10 * expected.size(); i++) {
+                final BinDetailRecord record = interned.take();
+                assertThat(record.getProfile().isShared()).isTrue();
+                assertThat(record.getRecord()).isEqualTo(expected.get(i % expected.size()).getRecord());
+            }
+            interning.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(pool.storeSize()).isGreaterThan(1 << 16);
+    }
+
+    @Test
+    public void internedRecordsTakeLessHeap() throws Exception {
+        final long plain = retainedHeap(null);
+        final long interned = retainedHeap(new BinProfilePool());
+        System.out.println("Plain records take " + plain + " bytes a record, interned records " + interned);
+        assertThat(interned * 3).isLessThan(plain);
+    }
+
+    /**
+     * Heap taken a record by the records of the sample file, read {@link #COPIES} times
+     */
+    private static long retainedHeap(final BinProfilePool pool) throws Exception {
+        final long before = usedHeap();
+        final List<List<BinDetailRecord>> copies = new ArrayList<>();
+        int records = 0;
+        for (int i = 0; i < COPIES; i++) {
+            final List<BinDetailRecord> copy = IntervalIndexTests.readDetailRecords();
+            if (pool != null) {
+                copy.forEach(pool::intern);
+            }
+            copies.add(copy);
+            records += copy.size();
+        }
+        final long used = usedHeap() - before;
+        assertThat(copies).hasSize(COPIES);
+        return used / records;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
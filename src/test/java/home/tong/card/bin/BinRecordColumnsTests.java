@@ -0,0 +1,78 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.file.parser.BinRecordColumns;
+import home.tong.card.bin.file.parser.BinRecordView;
+import home.tong.card.bin.search.tree.RadixTree;
+import home.tong.card.bin.search.tree.SearchTree;
+import home.tong.card.bin.search.tree.SearchTreeBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BinRecordColumnsTests {
+    private static List<BinDetailRecord> records;
+    private static BinRecordColumns columns;
+
+    @BeforeAll
+    public static void beforeAll() throws Exception {
+        records = IntervalIndexTests.readDetailRecords();
+        columns = BinRecordColumns.of(records);
+    }
+
+    @Test
+    public void viewsHaveTheAttributesOfTheRecords() throws Exception {
+        assertThat(columns.size()).isEqualTo(records.size());
+        assertThat(columns.dictionarySize()).isLessThan(records.size());
+        for (int row = 0; row < records.size(); row++) {
+            final BinDetailRecord record = records.get(row);
+            final BinRecordView view = columns.view(row);
+            assertThat(view.getRow()).isEqualTo(row);
+            for (final Method getter : BinDetailRecord.class.getMethods()) {
+                if (getter.getName().startsWith("get") && getter.getParameterCount() == 0
+                        && !getter.getName().equals("getClass") && !getter.getName().equals("getRecord") && !getter.getName().equals("getProfile")) {
+                    assertThat(getter.invoke(view)).isEqualTo(getter.invoke(record));
+                }
+            }
+            assertThat(view.getProfile().getIssuerBankName()).isEqualTo(record.getIssuerBankName());
+            assertThat(columns.getPrepaidIndicator(row)).isEqualTo(record.getPrepaidIndicator());
+            assertThat(columns.getIssuingNetwork(row)).isEqualTo(record.getIssuingNetwork());
+        }
+    }
+
+    @Test
+    public void treeOfViewsFindsRows() {
+        final Map<BinDetailRecord, Integer> rows = new IdentityHashMap<>();
+        final RadixTree radixTree = new RadixTree(4);
+        for (int row = 0; row < records.size(); row++) {
+            rows.put(records.get(row), row);
+            radixTree.insertBinRange(10000, records.get(row));
+        }
+        final RadixTree views = new SearchTreeBuilder().build(new RadixTree(4), columns.views());
+        for (final SearchTree tree : new SearchTree[]{views, views.freeze()}) {
+            for (long bin = 100000L; bin < 2000000L; ++bin) {
+                final BinDetailRecord expected = radixTree.get(bin, 7);
+                final int row = columns.row(tree.get(bin, 7));
+                assertThat(row).isEqualTo(expected == null ? -1 : rows.get(expected));
+            }
+        }
+    }
+
+    @Test
+    public void viewsAreReadOnly() {
+        final BinRecordView view = columns.view(0);
+        assertThatThrownBy(() -> view.setIssuerBankName("OTHER BANK")).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> view.setLowBin("401318")).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> columns.view(records.size())).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(columns.row(records.get(0))).isEqualTo(-1);
+        assertThat(columns.row(null)).isEqualTo(-1);
+        assertThat(BinRecordColumns.of(records).row(view)).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,161 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.search.tree.ConcurrentRadixTree;
+import home.tong.card.bin.search.tree.RadixTree;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConcurrentRadixTreeTests {
+    private static List<BinDetailRecord> records;
+
+    @BeforeAll
+    public static void beforeAll() throws Exception {
+        records = IntervalIndexTests.readDetailRecords();
+    }
+
+    @Test
+    public void sameAnswersAsRadixTree() {
+        final RadixTree radixTree = new RadixTree(4);
+        final ConcurrentRadixTree concurrentTree = new ConcurrentRadixTree(4);
+        for (final BinDetailRecord record : records) {
+            radixTree.insertBinRange(10000, record);
+            assertThat(concurrentTree.insertBinRange(10000, record)).isTrue();
+        }
+        assertThat(concurrentTree.insertBinRange(10000, records.get(10))).isFalse();
+        assertThat(concurrentTree.insert("12a", records.get(0))).isFalse();
+        for (int round = 0; round < 2; round++) {
+            assertThat(concurrentTree.size()).isEqualTo(radixTree.size());
+            for (long bin = 0; bin < 2000000L; ++bin) {
+                assertThat(concurrentTree.get(bin, 7)).isSameAs(radixTree.get(bin, 7));
+            }
+            for (final BinDetailRecord record : records) {
+                assertThat(concurrentTree.get(record.getLowBin())).isSameAs(radixTree.get(record.getLowBin()));
+            }
+            for (int i = round; i < records.size(); i += 3) {
+                final String lowBin = records.get(i).getLowBin();
+                assertThat(concurrentTree.delete(lowBin)).isEqualTo(radixTree.delete(lowBin));
+            }
+        }
+        assertThat(concurrentTree.delete("1234567890")).isFalse();
+    }
+
+    @Test
+    public void rangesAreDeletedLikeRadixTree() {
+        final RadixTree radixTree = new RadixTree(4);
+        final ConcurrentRadixTree concurrentTree = new ConcurrentRadixTree(4);
+        for (final BinDetailRecord record : records) {
+            radixTree.insertBinRange(10000, record);
+            concurrentTree.insertBinRange(10000, record);
+        }
+        for (int i = 0; i < records.size(); i += 2) {
+            assertThat(concurrentTree.deleteBinRange(10000, records.get(i))).isEqualTo(radixTree.deleteBinRange(10000, records.get(i)));
+        }
+        assertThat(concurrentTree.deleteBinRange(10000, records.get(0))).isFalse();
+        assertThat(concurrentTree.size()).isEqualTo(radixTree.size());
+        for (long bin = 0; bin < 2000000L; ++bin) {
+            assertThat(concurrentTree.get(bin, 7)).isSameAs(radixTree.get(bin, 7));
+        }
+
+        // a range across two top-level digits loses the keys under both
+        final BinDetailRecord wide = new BinDetailRecord();
+        wide.setLowBin("19990000");
+        wide.setHighBin("20009999");
+        final int size = concurrentTree.size();
+        assertThat(concurrentTree.insertBinRange(10000, wide)).isTrue();
+        assertThat(concurrentTree.get("20005000")).isSameAs(wide);
+        assertThat(concurrentTree.deleteBinRange(10000, wide)).isTrue();
+        assertThat(concurrentTree.get("19995000")).isNotSameAs(wide);
+        assertThat(concurrentTree.get("20005000")).isNotSameAs(wide);
+        assertThat(concurrentTree.size()).isEqualTo(size);
+    }
+
+    @Test
+    public void lookupsSeeConsistentTreeDuringWrites() throws Exception {
+        final ConcurrentRadixTree tree = new ConcurrentRadixTree(4);
+        for (final BinDetailRecord record : records) {
+            tree.insertBinRange(10000, record);
+        }
+        final int initialSize = tree.size();
+        // no sample BIN starts with 9, so writes under 9 do not change the answers for the sample BINs
+        final List<BinDetailRecord> expected = new ArrayList<>();
+        for (final BinDetailRecord record : records) {
+            expected.add(tree.get(record.getHighBin()));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            final List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < 2; w++) {
+                final List<BinDetailRecord> ranges = IntervalIndexTests.readDetailRecords().subList(0, 300);
+                for (int n = 0; n < ranges.size(); n++) {
+                    // every third range is wide enough to be expanded to several keys
+                    final long lowBin = 90000000L + w * 1000000L + n * 1000L;
+                    ranges.get(n).setLowBin(String.valueOf(lowBin));
+                    ranges.get(n).setHighBin(String.valueOf(lowBin + (n % 3 == 0 ? 999 : 0)));
+                }
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    for (int round = 0; round < 20; round++) {
+                        for (final BinDetailRecord range : ranges) {
+                            assertThat(tree.insertBinRange(100, range)).isTrue();
+                        }
+                        for (final BinDetailRecord range : ranges) {
+                            if (round % 2 == 0) {
+                                final long lowBin = Long.parseLong(range.getLowBin());
+                                for (long bin = lowBin; bin <= Long.parseLong(range.getHighBin()); bin += 100) {
+                                    assertThat(tree.delete(String.valueOf(bin))).isTrue();
+                                }
+                            } else {
+                                assertThat(tree.deleteBinRange(100, range)).isTrue();
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            final List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < 2; r++) {
+                readers.add(executor.submit(() -> {
+                    start.await();
+                    do {
+                        for (int i = 0; i < records.size(); i++) {
+                            assertThat(tree.get(records.get(i).getHighBin())).isSameAs(expected.get(i));
+                        }
+                        for (long bin = 90000000L; bin < 92000000L; bin += 333) {
+                            final BinDetailRecord found = tree.get(String.valueOf(bin));
+                            if (found != null) {
+                                assertThat(found.getLowBin()).startsWith("9");
+                            }
+                        }
+                    } while (writing.get());
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (final Future<?> writer : writers) {
+                writer.get();
+            }
+            writing.set(false);
+            for (final Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(tree.size()).isEqualTo(initialSize);
+        assertThat(tree.get("90000000")).isNull();
+    }
+}
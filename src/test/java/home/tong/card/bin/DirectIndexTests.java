@@ -0,0 +1,82 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.search.tree.DirectIndex;
+import home.tong.card.bin.search.tree.RadixTree;
+import home.tong.card.bin.search.tree.SearchTreeBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DirectIndexTests {
+    private static List<BinDetailRecord> records;
+    private static RadixTree radixTree;
+
+    @BeforeAll
+    public static void beforeAll() throws Exception {
+        records = IntervalIndexTests.readDetailRecords();
+        radixTree = new RadixTree(4);
+        for (final BinDetailRecord record : records) {
+            radixTree.insertBinRange(10000, record);
+        }
+    }
+
+    @Test
+    public void sameAnswersAsRadixTree() {
+        final DirectIndex index = new SearchTreeBuilder().build(new DirectIndex(4), records.stream());
+        assertThat(index.size()).isEqualTo(radixTree.size());
+        for (long bin = 0; bin < 2000000L; ++bin) {
+            assertThat(index.get(bin, 7)).isSameAs(radixTree.get(bin, 7));
+            assertThat(index.get(String.valueOf(bin))).isSameAs(radixTree.get(String.valueOf(bin)));
+        }
+        for (final BinDetailRecord record : records) {
+            for (final String bin : new String[]{record.getLowBin(), record.getHighBin()}) {
+                for (int length = 1; length <= bin.length(); length++) {
+                    assertThat(index.get(bin.substring(0, length))).isSameAs(radixTree.get(bin.substring(0, length)));
+                }
+            }
+        }
+        final Random random = new Random(3);
+        for (int i = 0; i < 100000; i++) {
+            final BinDetailRecord record = records.get(random.nextInt(records.size()));
+            final long low = Long.parseLong(record.getLowBin());
+            final long bin = low + (long) (random.nextDouble() * (Long.parseLong(record.getHighBin()) - low + 1));
+            final String key = String.valueOf(bin) + random.nextInt(1000);
+            assertThat(index.get(key)).isSameAs(radixTree.get(key));
+        }
+        assertThat(index.mightMatch("673040")).isFalse();
+    }
+
+    @Test
+    public void editsRecompileTheTable() throws Exception {
+        final DirectIndex index = new DirectIndex(4);
+        for (final BinDetailRecord record : records) {
+            assertThat(index.insertBinRange(10000, record)).isTrue();
+        }
+        final BinDetailRecord record = records.get(0);
+        assertThat(index.get(record.getLowBin())).isSameAs(radixTree.get(record.getLowBin()));
+        final long version = index.version();
+
+        final BinDetailRecord wide = IntervalIndexTests.readDetailRecords().get(0);
+        wide.setLowBin("99000000");
+        wide.setHighBin("99499999");
+        assertThat(index.insertBinRange(10000, wide)).isTrue();
+        assertThat(index.version()).isGreaterThan(version);
+        assertThat(index.get("992345")).isSameAs(wide);
+        assertThat(index.get(99234567L, 8)).isSameAs(wide);
+        assertThat(index.get("992345678")).isNull();
+        assertThat(index.get("995")).isNull();
+
+        for (long bin = 99000000L; bin <= 99499999L; bin += 10000) {
+            assertThat(index.delete(String.valueOf(bin))).isTrue();
+        }
+        assertThat(index.get("992345")).isNull();
+        assertThat(index.size()).isEqualTo(radixTree.size());
+        assertThatThrownBy(() -> new DirectIndex(4, 7)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
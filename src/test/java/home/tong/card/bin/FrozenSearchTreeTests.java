@@ -0,0 +1,68 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.search.tree.FrozenSearchTree;
+import home.tong.card.bin.search.tree.RadixTree;
+import home.tong.card.bin.search.tree.SearchTree;
+import home.tong.card.bin.search.tree.Trie;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FrozenSearchTreeTests {
+    private static List<BinDetailRecord> records;
+    private static Trie trie;
+    private static RadixTree radixTree;
+
+    @BeforeAll
+    public static void beforeAll() throws Exception {
+        records = IntervalIndexTests.readDetailRecords();
+        trie = new Trie(4);
+        radixTree = new RadixTree(4);
+        for (final BinDetailRecord record : records) {
+            trie.insertBinRange(10000, record);
+            radixTree.insertBinRange(10000, record);
+        }
+    }
+
+    @Test
+    public void sameAnswersAsMutableTree() {
+        final FrozenSearchTree[] frozen = {radixTree.freeze(), radixTree.freeze(true), trie.freeze(), trie.freeze(true)};
+        final SearchTree[] mutable = {radixTree, radixTree, trie, trie};
+        for (int i = 0; i < frozen.length; i++) {
+            assertThat(frozen[i].size()).isEqualTo(mutable[i].size());
+            assertThat(frozen[i].isOffHeap()).isEqualTo(i % 2 == 1);
+            for (long bin = 0; bin < 2000000L; ++bin) {
+                final String key = String.valueOf(bin);
+                assertThat(frozen[i].get(key)).isSameAs(mutable[i].get(key));
+                assertThat(frozen[i].get(bin, 7)).isSameAs(mutable[i].get(bin, 7));
+            }
+            for (final BinDetailRecord record : records) {
+                assertThat(frozen[i].get(record.getLowBin())).isSameAs(mutable[i].get(record.getLowBin()));
+                assertThat(frozen[i].get(record.getHighBin())).isSameAs(mutable[i].get(record.getHighBin()));
+            }
+        }
+    }
+
+    @Test
+    public void recordsAreStoredOnce() {
+        final FrozenSearchTree frozen = radixTree.freeze();
+        assertThat(frozen.getRecordCount()).isEqualTo(records.size());
+        assertThat(frozen.get("305997").getLowBin()).isEqualTo("305992");
+        assertThat(frozen.find("673040").isPresent()).isFalse();
+    }
+
+    @Test
+    public void frozenTreeIsReadOnly() {
+        final FrozenSearchTree frozen = trie.freeze();
+        assertThat(frozen.isEmpty()).isFalse();
+        assertThatThrownBy(() -> frozen.insert("123456", records.get(0))).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> frozen.delete(records.get(0).getLowBin())).isInstanceOf(UnsupportedOperationException.class);
+        assertThat(new RadixTree(4).freeze().isEmpty()).isTrue();
+        assertThat(new Trie(4).freeze(true).get("123456")).isNull();
+    }
+}
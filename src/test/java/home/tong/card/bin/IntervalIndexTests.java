@@ -0,0 +1,127 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.search.tree.IntervalIndex;
+import home.tong.card.bin.search.tree.RadixTree;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IntervalIndexTests {
+    private static final String BIN_FILE = "/sample-bin-file.txt";
+
+    static List<BinDetailRecord> readDetailRecords() throws Exception {
+        final List<BinDetailRecord> records = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                IntervalIndexTests.class.getResourceAsStream(BIN_FILE), StandardCharsets.ISO_8859_1))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.charAt(0) == 'D') {
+                    records.add(new BinDetailRecord(line));
+                }
+            }
+        }
+        return records;
+    }
+
+    private static BinDetailRecord record(final String lowBin, final String highBin) {
+        final BinDetailRecord record = new BinDetailRecord();
+        record.setLowBin(lowBin);
+        record.setHighBin(highBin);
+        return record;
+    }
+
+    @Test
+    public void wideRangeIsOneEntry() {
+        final IntervalIndex index = new IntervalIndex(4);
+        assertThat(index.isEmpty()).isTrue();
+        final BinDetailRecord wide = record("443931001000000", "443931999996998");
+        assertThat(index.insertBinRange(10000, wide)).isTrue();
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.insertBinRange(10000, wide)).isFalse();
+
+        assertThat(index.find("443931500").get()).isSameAs(wide);
+        assertThat(index.find("443931999996998").get()).isSameAs(wide);
+        assertThat(index.find("443931999996999").isPresent()).isFalse();
+        assertThat(index.find("443931000999999").isPresent()).isFalse();
+        // prefix of the low BIN
+        assertThat(index.find("4439310").get()).isSameAs(wide);
+        assertThat(index.find("4439310019999999").isPresent()).isFalse();
+
+        assertThat(index.delete("443931001000000")).isTrue();
+        assertThat(index.delete("443931001000000")).isFalse();
+        assertThat(index.isEmpty()).isTrue();
+        assertThat(index.find("443931500").isPresent()).isFalse();
+    }
+
+    @Test
+    public void rangeWinsOverPrefix() {
+        final IntervalIndex index = new IntervalIndex(4);
+        final BinDetailRecord r1 = record("2228030", "2228034");
+        final BinDetailRecord r2 = record("2228980", "2228994");
+        final BinDetailRecord r3 = record("2228995", "2228999");
+        index.insert(r3.getLowBin(), r3);
+        index.insert(r1.getLowBin(), r1);
+        index.insert(r2.getLowBin(), r2);
+
+        assertThat(index.find("222899").get()).isSameAs(r2);
+        assertThat(index.find("2228996").get()).isSameAs(r3);
+        assertThat(index.find("2228032").get()).isSameAs(r1);
+        assertThat(index.find("22280").get()).isSameAs(r1);
+        assertThat(index.find("2228035").isPresent()).isFalse();
+        assertThat(index.find("22280301").isPresent()).isFalse();
+        assertThat(index.find("12x").isPresent()).isFalse();
+    }
+
+    @Test
+    public void wideRangeBeforeTheKeyIsPassedOver() {
+        final IntervalIndex index = new IntervalIndex(4);
+        final BinDetailRecord wide = record("400000", "499999");
+        index.insert(wide.getLowBin(), wide);
+        final List<BinDetailRecord> narrow = new ArrayList<>();
+        for (int bin = 410000; bin < 490000; bin += 10) {
+            final BinDetailRecord record = record(String.valueOf(bin), String.valueOf(bin + 4));
+            index.insert(record.getLowBin(), record);
+            narrow.add(record);
+        }
+        // a longer range ahead of the wide one, which a shorter key does not match
+        final BinDetailRecord longer = record("4200001000", "4200001999");
+        index.insert(longer.getLowBin(), longer);
+
+        assertThat(index.find("410002").get()).isSameAs(narrow.get(0));
+        assertThat(index.find("489994").get()).isSameAs(narrow.get(narrow.size() - 1));
+        assertThat(index.find("410007").get()).isSameAs(wide);
+        assertThat(index.find("400000").get()).isSameAs(wide);
+        assertThat(index.find("499999").get()).isSameAs(wide);
+        assertThat(index.find("4200001500").get()).isSameAs(longer);
+        assertThat(index.find("420000").get()).isSameAs(narrow.get(1000));
+        assertThat(index.find("500000").isPresent()).isFalse();
+        assertThat(index.find("399999").isPresent()).isFalse();
+    }
+
+    @Test
+    public void sameAnswersAsRadixTree() throws Exception {
+        final IntervalIndex index = new IntervalIndex(4);
+        final RadixTree radixTree = new RadixTree(4);
+        for (final BinDetailRecord record : readDetailRecords()) {
+            index.insertBinRange(10000, record);
+            radixTree.insertBinRange(10000, record);
+        }
+        assertThat(index.size()).isLessThan(radixTree.size());
+
+        for (long bin = 100000L; bin < 1000000L; ++bin) {
+            final String key = String.valueOf(bin);
+            assertThat(index.find(key).orElse(null)).isSameAs(radixTree.find(key).orElse(null));
+        }
+        for (final String key : new String[]{"10489", "305997", "3090", "340016", "2228032", "401318", "401319601",
+                "02150201", "673040", "1234567890123456"}) {
+            assertThat(index.find(key).orElse(null)).isSameAs(radixTree.find(key).orElse(null));
+        }
+    }
+}
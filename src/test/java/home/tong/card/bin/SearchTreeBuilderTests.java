@@ -0,0 +1,105 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.search.tree.RadixTree;
+import home.tong.card.bin.search.tree.SearchTree;
+import home.tong.card.bin.search.tree.SearchTreeBuilder;
+import home.tong.card.bin.search.tree.Trie;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SearchTreeBuilderTests {
+    private static List<BinDetailRecord> records;
+
+    @BeforeAll
+    public static void beforeAll() throws Exception {
+        records = IntervalIndexTests.readDetailRecords();
+    }
+
+    @Test
+    public void sameTreeAsInsertBinRange() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // 10^2 expands to enough keys to build the subtrees in parallel
+            for (final int compressExponent : new int[]{4, 2}) {
+                final SearchTreeBuilder builder = new SearchTreeBuilder(pool);
+                final SearchTree[] built = {
+                        builder.build(new RadixTree(compressExponent), records.stream()),
+                        builder.build(new Trie(compressExponent), records.stream())};
+                final SearchTree[] inserted = {new RadixTree(compressExponent), new Trie(compressExponent)};
+                for (final SearchTree tree : inserted) {
+                    for (final BinDetailRecord record : records) {
+                        tree.insertBinRange((int) Math.pow(10, compressExponent), record);
+                    }
+                }
+                for (int i = 0; i < built.length; i++) {
+                    assertThat(built[i].size()).isEqualTo(inserted[i].size());
+                    for (long bin = 0; bin < 2000000L; ++bin) {
+                        assertThat(built[i].get(bin, 7)).isSameAs(inserted[i].get(bin, 7));
+                    }
+                    for (final BinDetailRecord record : records) {
+                        assertThat(built[i].get(record.getLowBin())).isSameAs(inserted[i].get(record.getLowBin()));
+                        assertThat(built[i].get(record.getHighBin())).isSameAs(inserted[i].get(record.getHighBin()));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void sharedKeyKeepsFirstRecord() throws Exception {
+        final List<BinDetailRecord> copies = IntervalIndexTests.readDetailRecords();
+        final BinDetailRecord first = copies.get(100);
+        final BinDetailRecord again = copies.get(101);
+        again.setLowBin(first.getLowBin());
+        again.setHighBin(first.getHighBin());
+        final RadixTree tree = new SearchTreeBuilder().build(new RadixTree(4), Arrays.asList(first, again).stream());
+        assertThat(tree.get(first.getLowBin())).isSameAs(first);
+        assertThat(tree.size()).isEqualTo(2);
+        assertThatThrownBy(() -> new SearchTreeBuilder().build(tree, records.stream()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void keysOfOverlappingRangesAreMergedInOrder() throws Exception {
+        final List<BinDetailRecord> copies = IntervalIndexTests.readDetailRecords();
+        // a wide range, ranges nested in it between its keys and one that starts in it and ends after it
+        final String[][] ranges = {{"400000", "499999"}, {"400500", "400600"}, {"425000", "425999"}, {"495000", "520000"},
+                {"512000", "512099"}};
+        final List<BinDetailRecord> overlapping = new ArrayList<>();
+        final RadixTree inserted = new RadixTree(4);
+        for (int i = 0; i < ranges.length; i++) {
+            final BinDetailRecord record = copies.get(i);
+            record.setLowBin(ranges[i][0]);
+            record.setHighBin(ranges[i][1]);
+            overlapping.add(record);
+            inserted.insertBinRange(10000, record);
+        }
+        final RadixTree built = new SearchTreeBuilder().build(new RadixTree(4), overlapping.stream());
+        assertThat(built.size()).isEqualTo(inserted.size());
+        for (long bin = 300000L; bin < 600000L; ++bin) {
+            assertThat(built.get(bin, 6)).isSameAs(inserted.get(bin, 6));
+        }
+        assertThat(built.get("425500")).isSameAs(overlapping.get(2));
+    }
+
+    @Test
+    public void recordsMustBeSortedByLowBin() {
+        final RadixTree tree = new RadixTree(4);
+        // the low BIN of the first record was taken before the last record came
+        assertThatThrownBy(() -> new SearchTreeBuilder().build(tree, Stream.of(records.get(1), records.get(2), records.get(0))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(tree.isEmpty()).isTrue();
+    }
+}
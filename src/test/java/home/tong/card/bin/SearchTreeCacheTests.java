@@ -0,0 +1,90 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.search.tree.RadixTree;
+import home.tong.card.bin.search.tree.SearchTree;
+import home.tong.card.bin.search.tree.SearchTreeCache;
+import home.tong.card.bin.search.tree.Trie;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SearchTreeCacheTests {
+    private static List<BinDetailRecord> records;
+    private static RadixTree radixTree;
+
+    @BeforeAll
+    public static void beforeAll() throws Exception {
+        records = IntervalIndexTests.readDetailRecords();
+        radixTree = new RadixTree(4);
+        for (final BinDetailRecord record : records) {
+            radixTree.insertBinRange(10000, record);
+        }
+    }
+
+    @Test
+    public void sameAnswersAsTree() {
+        final SearchTreeCache cache = new SearchTreeCache(radixTree, 1000);
+        for (int round = 0; round < 3; round++) {
+            for (long bin = 100000L; bin < 200000L; bin += 7) {
+                assertThat(cache.get(String.valueOf(bin))).isSameAs(radixTree.get(String.valueOf(bin)));
+            }
+            assertThat(cache.find("673040").isPresent()).isFalse();
+            assertThat(cache.get(305997L, 6)).isSameAs(radixTree.get("305997"));
+            assertThat(cache.get(1234567L, 6)).isNull();
+        }
+        assertThat(cache.size()).isLessThanOrEqualTo(1000);
+        assertThat(cache.getHitCount()).isGreaterThan(0);
+        assertThat(cache.getMissCount()).isGreaterThan(0);
+        assertThat(cache.getEvictionCount()).isGreaterThan(0);
+        assertThat(cache.getHitCount() + cache.getMissCount()).isEqualTo(3 * (100000 / 7 + 1 + 2));
+    }
+
+    @Test
+    public void hotKeysSurviveScans() {
+        final SearchTreeCache cache = new SearchTreeCache(radixTree, 1000);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 500; i++) {
+                cache.get(records.get(i).getLowBin());
+            }
+        }
+        // a scan of keys that are looked up once, like full PANs
+        for (long pan = 4000000000000000L; pan < 4000000000100000L; pan += 3) {
+            cache.get(String.valueOf(pan));
+        }
+        final long misses = cache.getMissCount();
+        for (int i = 0; i < 500; i++) {
+            cache.get(records.get(i).getLowBin());
+        }
+        assertThat(cache.getMissCount() - misses).isLessThan(50);
+    }
+
+    @Test
+    public void editsAndReloadsInvalidate() throws Exception {
+        final Trie trie = new Trie(4);
+        final AtomicReference<SearchTree> current = new AtomicReference<>(trie);
+        final SearchTreeCache cache = new SearchTreeCache(current::get, 100);
+        final BinDetailRecord record = records.get(0);
+        assertThat(cache.get(record.getLowBin())).isNull();
+        assertThat(cache.get(record.getLowBin())).isNull();
+        assertThat(cache.getHitCount()).isEqualTo(1);
+
+        trie.insertBinRange(10000, record);
+        assertThat(cache.get(record.getLowBin())).isSameAs(record);
+        assertThat(cache.getInvalidationCount()).isEqualTo(1);
+
+        current.set(radixTree);
+        assertThat(cache.get(record.getLowBin())).isSameAs(radixTree.get(record.getLowBin()));
+        assertThat(cache.getInvalidationCount()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(1);
+
+        trie.delete(record.getLowBin());
+        current.set(trie);
+        assertThat(cache.get(record.getLowBin())).isNull();
+        assertThat(cache.getInvalidationCount()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,118 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.search.tree.RadixTree;
+import home.tong.card.bin.search.tree.SearchTree;
+import home.tong.card.bin.search.tree.SearchTreeHolder;
+import home.tong.card.bin.search.tree.SearchTreeLoader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SearchTreeHolderTests {
+    private static final String BIN_FILE = "/sample-bin-file.txt";
+
+    @Test
+    public void reloadSwapsTree() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final SearchTreeHolder holder = new SearchTreeHolder(() -> new RadixTree(4), new SearchTreeLoader(), executor);
+            final SearchTree empty = holder.get();
+            assertThat(empty.isEmpty()).isTrue();
+            assertThat(holder.find("10489").isPresent()).isFalse();
+
+            final SearchTree loaded = holder.reload(() -> SearchTreeHolderTests.class.getResourceAsStream(BIN_FILE),
+                    Arrays.asList("10489", "305997", "673040")).get();
+            assertThat(holder.get()).isSameAs(loaded);
+            assertThat(loaded).isNotSameAs(empty);
+            assertThat(holder.find("10489").get().getHighBin()).isEqualTo("10489");
+            assertThat(holder.find("305997").get().getLowBin()).isEqualTo("305992");
+            // the old tree was never touched
+            assertThat(empty.isEmpty()).isTrue();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void failedReloadKeepsServing() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final SearchTreeHolder holder = new SearchTreeHolder(() -> new RadixTree(4), new SearchTreeLoader(), executor);
+            final SearchTree loaded = holder.reload(() -> SearchTreeHolderTests.class.getResourceAsStream(BIN_FILE),
+                    Collections.emptyList()).get();
+
+            CompletableFuture<SearchTree> failed = holder.reload(() -> {
+                throw new FileNotFoundException("missing.txt");
+            }, Collections.emptyList());
+            assertThat(failed.handle((tree, e) -> e).get()).isNotNull();
+            assertThat(holder.get()).isSameAs(loaded);
+
+            final String badFile = "H2022-03-13\nD10489  bad detail record\nT0000000001\n";
+            failed = holder.reload(() -> new ByteArrayInputStream(badFile.getBytes(StandardCharsets.ISO_8859_1)),
+                    Collections.emptyList());
+            assertThat(failed.handle((tree, e) -> e).get()).isNotNull();
+            assertThat(holder.get()).isSameAs(loaded);
+            assertThat(holder.find("10489").isPresent()).isTrue();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void reloadReportsProgressInBytesOfTheSuppliedSize() throws Exception {
+        final Path file = Files.createTempFile("bin-file", ".txt");
+        try (InputStream inputStream = SearchTreeHolderTests.class.getResourceAsStream(BIN_FILE)) {
+            Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final SearchTreeLoader loader = new SearchTreeLoader();
+            final SearchTreeHolder holder = new SearchTreeHolder(() -> new RadixTree(4), loader, executor);
+            final SearchTreeHolder.InputStreamSupplier fromFile = SearchTreeHolder.InputStreamSupplier.of(file);
+            assertThat(fromFile.size()).isEqualTo(Files.size(file));
+
+            final List<Integer> progress = new ArrayList<>();
+            holder.reload(new SearchTreeHolder.InputStreamSupplier() {
+                @Override
+                public InputStream get() throws IOException {
+                    return new FilterInputStream(fromFile.get()) {
+                        @Override
+                        public int read(final byte[] b, final int off, final int len) throws IOException {
+                            progress.add(loader.getProgressRatio());
+                            return super.read(b, off, len);
+                        }
+                    };
+                }
+
+                @Override
+                public long size() throws IOException {
+                    return fromFile.size();
+                }
+            }, Collections.emptyList()).get();
+
+            assertThat(progress.get(progress.size() - 1)).isGreaterThan(50).isLessThan(100);
+            assertThat(loader.getProgressRatio()).isEqualTo(100);
+            assertThat(holder.find("10489").isPresent()).isTrue();
+        } finally {
+            executor.shutdown();
+            Files.delete(file);
+        }
+    }
+}
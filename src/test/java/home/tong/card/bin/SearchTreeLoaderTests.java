@@ -0,0 +1,169 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.search.tree.ConcurrentRadixTree;
+import home.tong.card.bin.search.tree.RadixTree;
+import home.tong.card.bin.search.tree.SearchTree;
+import home.tong.card.bin.search.tree.SearchTreeBuilder;
+import home.tong.card.bin.search.tree.SearchTreeLoader;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SearchTreeLoaderTests {
+    private static final String BIN_FILE = "/sample-bin-file.txt";
+    private static final int BANK_NAME_START = 37;
+    private static final int BANK_NAME_LENGTH = 60;
+    private static List<String> lines;
+
+    @BeforeAll
+    public static void beforeAll() throws Exception {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                SearchTreeLoaderTests.class.getResourceAsStream(BIN_FILE), StandardCharsets.ISO_8859_1))) {
+            lines = br.lines().collect(Collectors.toList());
+        }
+    }
+
+    private static InputStream stream(final List<String> file) {
+        return new ByteArrayInputStream((String.join("\n", file) + "\n").getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void parallelParsingKeepsTheOrderOfTheFile() throws Exception {
+        // every record comes twice, the copy under another bank name, and the first one has to win its keys
+        final List<String> file = new ArrayList<>();
+        file.add(lines.get(0));
+        for (int i = 1; i < lines.size() - 1; i++) {
+            final String line = lines.get(i);
+            file.add(line);
+            file.add(line.substring(0, BANK_NAME_START) + StringUtils.rightPad("COPY " + i, BANK_NAME_LENGTH)
+                    + line.substring(BANK_NAME_START + BANK_NAME_LENGTH));
+        }
+        file.add(lines.get(lines.size() - 1));
+
+        final List<BinDetailRecord> records = IntervalIndexTests.readDetailRecords();
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            final SearchTreeLoader loader = new SearchTreeLoader(new SearchTreeBuilder(pool), pool);
+            for (final SearchTree tree : new SearchTree[]{new RadixTree(4), new ConcurrentRadixTree(4)}) {
+                loader.loadFromStream(tree, stream(file));
+                for (final BinDetailRecord record : records) {
+                    final BinDetailRecord loaded = tree.get(record.getLowBin());
+                    assertThat(loaded.getRecord()).isEqualTo(record.getRecord());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void badRecordInAnyChunkFailsTheLoad() {
+        final List<String> file = new ArrayList<>(lines);
+        file.set(lines.size() - 10, "D10489  bad detail record");
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            final SearchTreeLoader loader = new SearchTreeLoader(new SearchTreeBuilder(pool), pool);
+            assertThatThrownBy(() -> loader.loadFromStream(new RadixTree(4), stream(file))).isInstanceOf(RuntimeException.class);
+            assertThat(loader.isLoadingFromStream()).isFalse();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void fileIsReadOnceWithProgressInBytes() {
+        final byte[] file = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.ISO_8859_1);
+        final SearchTreeLoader loader = new SearchTreeLoader();
+        final List<Integer> progress = new ArrayList<>();
+        final long[] read = new long[1];
+        final InputStream inputStream = new FilterInputStream(new ByteArrayInputStream(file)) {
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                progress.add(loader.getProgressRatio());
+                final int n = super.read(b, off, len);
+                read[0] += Math.max(0, n);
+                return n;
+            }
+        };
+        final RadixTree tree = new RadixTree(4);
+        loader.loadFromStream(tree, inputStream, file.length);
+
+        assertThat(read[0]).isEqualTo(file.length);
+        assertThat(progress.get(progress.size() - 1)).isGreaterThan(50).isLessThan(100);
+        for (int i = 1; i < progress.size(); i++) {
+            assertThat(progress.get(i)).isGreaterThanOrEqualTo(progress.get(i - 1));
+        }
+        assertThat(loader.getProgressRatio()).isEqualTo(100);
+        assertThat(loader.getLoadedRecords()).isEqualTo(lines.size() - 2);
+        // the trailer of the sample file is one short of its detail records, which is logged
+        assertThat(loader.getTrailerTotal()).isEqualTo(4999);
+        assertThat(tree.get("401318")).isNotNull();
+    }
+
+    @Test
+    public void progressOfAStreamOfUnknownSizeIsUnknownUntilItIsLoaded() {
+        final byte[] file = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.ISO_8859_1);
+        final SearchTreeLoader loader = new SearchTreeLoader();
+        final List<Integer> progress = new ArrayList<>();
+        // a stream that has nothing available up front, which is no hint of its size
+        final InputStream inputStream = new FilterInputStream(new ByteArrayInputStream(file)) {
+            @Override
+            public int available() {
+                return 0;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                progress.add(loader.getProgressRatio());
+                return super.read(b, off, len);
+            }
+        };
+        final RadixTree tree = new RadixTree(4);
+        loader.loadFromStream(tree, inputStream);
+
+        assertThat(progress).isNotEmpty();
+        for (final int ratio : progress) {
+            assertThat(ratio).isEqualTo(SearchTreeLoader.UNKNOWN_PROGRESS);
+        }
+        assertThat(loader.getProgressRatio()).isEqualTo(100);
+        assertThat(loader.getLoadedRecords()).isEqualTo(lines.size() - 2);
+    }
+
+    @Test
+    public void fileMustStartWithAHeader() {
+        final SearchTreeLoader loader = new SearchTreeLoader();
+        final List<String> file = new ArrayList<>(lines.subList(1, lines.size()));
+        assertThatThrownBy(() -> loader.loadFromStream(new RadixTree(4), stream(file)))
+                .hasCauseInstanceOf(IOException.class);
+        file.add(0, lines.get(0).replace("-03-", "-XX-"));
+        assertThatThrownBy(() -> loader.loadFromStream(new RadixTree(4), stream(file)))
+                .hasCauseInstanceOf(IOException.class);
+        file.set(0, "H2022-03");
+        assertThatThrownBy(() -> loader.loadFromStream(new RadixTree(4), stream(file)))
+                .hasCauseInstanceOf(IOException.class);
+        assertThat(loader.everLoadedTreeFromStream()).isFalse();
+
+        // a file without a trailer is loaded all the same
+        file.set(0, lines.get(0));
+        file.remove(file.size() - 1);
+        loader.loadFromStream(new RadixTree(4), stream(file));
+        assertThat(loader.getLoadedRecords()).isEqualTo(lines.size() - 2);
+        assertThat(loader.getTrailerTotal()).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,310 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.search.tree.BinBounds;
+import home.tong.card.bin.search.tree.FrozenSearchTree;
+import home.tong.card.bin.search.tree.IntervalIndex;
+import home.tong.card.bin.search.tree.RadixTree;
+import home.tong.card.bin.search.tree.RadixTreeNode;
+import home.tong.card.bin.search.tree.SearchTree;
+import home.tong.card.bin.search.tree.SearchTreeBuilder;
+import home.tong.card.bin.search.tree.SearchTreeSnapshot;
+import home.tong.card.bin.search.tree.Trie;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SearchTreeLookupTests {
+    private static Trie trie;
+    private static RadixTree radixTree;
+
+    @BeforeAll
+    public static void beforeAll() throws Exception {
+        trie = new Trie(4);
+        radixTree = new RadixTree(4);
+        for (final BinDetailRecord record : IntervalIndexTests.readDetailRecords()) {
+            trie.insertBinRange(10000, record);
+            radixTree.insertBinRange(10000, record);
+        }
+    }
+
+    @Test
+    public void getMatchesFind() {
+        final StringBuilder key = new StringBuilder();
+        for (long bin = 100000L; bin < 1000000L; ++bin) {
+            key.setLength(0);
+            key.append(bin);
+            final String binStr = String.valueOf(bin);
+            assertThat(radixTree.get(key)).isSameAs(radixTree.find(binStr).orElse(null));
+            assertThat(trie.get(key)).isSameAs(trie.find(binStr).orElse(null));
+        }
+        assertThat(radixTree.get("305997").getLowBin()).isEqualTo("305992");
+        assertThat(trie.get("3090").getLowBin()).isEqualTo("3088");
+        assertThat(radixTree.get("673040")).isNull();
+        assertThat(trie.get("1234567890123456")).isNull();
+    }
+
+    @Test
+    public void findByNumber() throws Exception {
+        final IntervalIndex index = new IntervalIndex(4);
+        for (final BinDetailRecord record : IntervalIndexTests.readDetailRecords()) {
+            index.insertBinRange(10000, record);
+        }
+        for (final SearchTree tree : new SearchTree[]{radixTree, trie, index}) {
+            for (long bin = 100000L; bin < 2000000L; ++bin) {
+                assertThat(tree.get(bin, bin < 1000000L ? 6 : 7)).isSameAs(tree.get(String.valueOf(bin)));
+            }
+            for (int bin = 0; bin < 100000; ++bin) {
+                assertThat(tree.get(bin, 5)).isSameAs(tree.get(String.format("%05d", bin)));
+            }
+            assertThat(tree.find(2150201L, 8).get().getLowBin()).isEqualTo("02150201");
+            assertThat(tree.find(401319601L, 9).get().getLowBin()).isEqualTo("401319301");
+            assertThat(tree.find(1234567890123456L, 16).isPresent()).isFalse();
+            assertThat(tree.find(1234567L, 6).isPresent()).isFalse();
+            assertThat(tree.find(-10489L, 5).isPresent()).isFalse();
+            assertThat(tree.find(10489L, 20).isPresent()).isFalse();
+        }
+    }
+
+    @Test
+    public void deleteAndInsertAgainGivesSameAnswers() throws Exception {
+        final List<BinDetailRecord> records = IntervalIndexTests.readDetailRecords();
+        for (final SearchTree tree : new SearchTree[]{new RadixTree(4), new Trie(4)}) {
+            for (final BinDetailRecord record : records) {
+                tree.insertBinRange(10000, record);
+            }
+            // deletes merge and empty nodes, the inserts split and add them again
+            for (int i = 0; i < records.size(); i += 3) {
+                assertThat(tree.delete(records.get(i).getLowBin())).isTrue();
+            }
+            for (int i = 0; i < records.size(); i += 3) {
+                assertThat(tree.insert(records.get(i).getLowBin(), records.get(i))).isTrue();
+            }
+            final SearchTree expected = tree instanceof RadixTree ? radixTree : trie;
+            assertThat(tree.size()).isEqualTo(expected.size());
+            for (long bin = 0; bin < 2000000L; ++bin) {
+                final BinDetailRecord expectedRecord = expected.get(bin, 7);
+                final BinDetailRecord actual = tree.get(bin, 7);
+                if (expectedRecord == null) {
+                    assertThat(actual).isNull();
+                } else {
+                    assertThat(actual.getLowBin()).isEqualTo(expectedRecord.getLowBin());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findAllMatchesGet() {
+        final CharSequence[] keys = new CharSequence[200000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = String.valueOf(100000L + i * 97L);
+        }
+        keys[7] = null;
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (final SearchTree tree : new SearchTree[]{radixTree, trie, radixTree.freeze(), trie.freeze()}) {
+                final BinDetailRecord[] results = new BinDetailRecord[keys.length];
+                tree.findAll(keys, results, pool);
+                for (int i = 0; i < keys.length; i++) {
+                    assertThat(results[i]).isSameAs(keys[i] == null ? null : tree.get(keys[i]));
+                }
+                final BinDetailRecord[] streamed = tree.findAll(Arrays.stream(keys, 100, 200), pool);
+                assertThat(streamed.length).isEqualTo(100);
+                for (int i = 0; i < streamed.length; i++) {
+                    assertThat(streamed[i]).isSameAs(results[100 + i]);
+                }
+            }
+            assertThatThrownBy(() -> trie.findAll(keys, new BinDetailRecord[10], pool)).isInstanceOf(IllegalArgumentException.class);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void sortedLookupsMatchGet() {
+        final List<String> sorted = new ArrayList<>();
+        for (long bin = 100000L; bin < 700000L; bin += 7) {
+            sorted.add(String.valueOf(bin));
+            sorted.add(bin + "5");
+            sorted.add(bin + "49");
+        }
+        sorted.add("30");
+        sorted.add("1234567890123456");
+        Collections.sort(sorted);
+        final CharSequence[] keys = sorted.toArray(new CharSequence[0]);
+        final BinDetailRecord[] results = new BinDetailRecord[keys.length];
+        radixTree.findAllSorted(keys, results);
+        for (int i = 0; i < keys.length; i++) {
+            assertThat(results[i]).isSameAs(radixTree.get(keys[i]));
+        }
+
+        // any order gives the same answers, only slower
+        final RadixTree.Cursor cursor = radixTree.cursor();
+        final Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            final CharSequence key = keys[random.nextInt(keys.length)];
+            assertThat(cursor.get(key)).isSameAs(radixTree.get(key));
+        }
+    }
+
+    @Test
+    public void prefixFilterHasNoFalseNegatives() throws Exception {
+        final List<BinDetailRecord> records = IntervalIndexTests.readDetailRecords();
+        final IntervalIndex index = new IntervalIndex(4);
+        for (final BinDetailRecord record : records) {
+            index.insertBinRange(10000, record);
+        }
+        final SearchTree[] trees = {radixTree, trie, index, radixTree.freeze(), trie.freeze()};
+        for (final BinDetailRecord record : records) {
+            for (final String bin : new String[]{record.getLowBin(), record.getHighBin()}) {
+                for (int length = 1; length <= bin.length(); length++) {
+                    for (final SearchTree tree : trees) {
+                        assertThat(tree.mightMatch(bin.substring(0, length))).isTrue();
+                    }
+                }
+            }
+        }
+
+        final Random random = new Random(7);
+        int rejected = 0;
+        for (int i = 0; i < 20000; i++) {
+            final String key = String.valueOf(1000000000000000L + (long) (random.nextDouble() * 8999999999999999L)).substring(0, 6 + random.nextInt(11));
+            if (!radixTree.mightMatch(key)) {
+                rejected++;
+                for (final BinDetailRecord record : records) {
+                    assertThat(radixTree.isInRange(key, record) || radixTree.isPrefix(key, record)).isFalse();
+                }
+            }
+            for (final SearchTree tree : trees) {
+                assertThat(tree.mightMatch(key)).isEqualTo(radixTree.mightMatch(key));
+            }
+        }
+        assertThat(rejected).isGreaterThan(10000);
+        assertThat(radixTree.mightMatch("673040")).isFalse();
+        assertThat(radixTree.mightMatch("67304")).isTrue();
+        assertThat(radixTree.mightMatch("12a4567")).isTrue();
+
+        // ranges inserted later are added to the filter
+        final RadixTree tree = new RadixTree(4);
+        for (final BinDetailRecord record : records) {
+            tree.insertBinRange(10000, record);
+        }
+        final BinDetailRecord record = records.get(0);
+        record.setLowBin("99999100");
+        record.setHighBin("99999199");
+        assertThat(tree.get("9999915")).isNull();
+        assertThat(tree.mightMatch("9999915")).isFalse();
+        assertThat(tree.insertBinRange(10000, record)).isTrue();
+        assertThat(tree.get("9999915")).isSameAs(record);
+        assertThat(tree.get(9999915L, 7)).isSameAs(record);
+    }
+
+    @Test
+    public void boundsAreReadThroughTheAccessor() throws Exception {
+        final List<BinDetailRecord> records = IntervalIndexTests.readDetailRecords();
+        // every range moved under a leading 9, the records themselves are not changed
+        final BinBounds<BinDetailRecord> shifted = new BinBounds<BinDetailRecord>() {
+            @Override
+            public String lowBin(final BinDetailRecord value) {
+                return "9" + value.getLowBin();
+            }
+
+            @Override
+            public String highBin(final BinDetailRecord value) {
+                return "9" + value.getHighBin();
+            }
+        };
+        final SearchTree[] trees = {new RadixTree(4, shifted), new Trie(4, shifted), new IntervalIndex(4, shifted),
+                new SearchTreeBuilder().build(new RadixTree(4, shifted), records.stream())};
+        for (final SearchTree tree : trees) {
+            if (tree.isEmpty()) {
+                for (final BinDetailRecord record : records) {
+                    tree.insertBinRange(10000, record);
+                }
+            }
+        }
+        // the same ranges stored in the records
+        final RadixTree expected = new RadixTree(4);
+        for (final BinDetailRecord record : IntervalIndexTests.readDetailRecords()) {
+            record.setLowBin("9" + record.getLowBin());
+            record.setHighBin("9" + record.getHighBin());
+            expected.insertBinRange(10000, record);
+        }
+        final SearchTree frozen = ((RadixTree) trees[0]).freeze();
+        for (long bin = 9100000L; bin < 9700000L; ++bin) {
+            final BinDetailRecord expectedRecord = expected.get(bin, 7);
+            for (final SearchTree tree : new SearchTree[]{trees[0], trees[1], trees[2], trees[3], frozen}) {
+                final BinDetailRecord actual = tree.get(bin, 7);
+                if (expectedRecord == null) {
+                    assertThat(actual).isNull();
+                } else {
+                    assertThat("9" + actual.getLowBin()).isEqualTo(expectedRecord.getLowBin());
+                }
+            }
+            assertThat(frozen.get(String.valueOf(bin - 9000000L))).isNull();
+        }
+        assertThat(SearchTree.isInRange("9305997", records.get(0), shifted)).isEqualTo(radixTree.isInRange("305997", records.get(0)));
+        assertThatThrownBy(() -> SearchTreeSnapshot.write((FrozenSearchTree) frozen, "2022-03-13", Paths.get("unused.snapshot")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void keysThatAreNotAllDigitsAreRejected() throws Exception {
+        final BinDetailRecord record = IntervalIndexTests.readDetailRecords().get(0);
+        final Trie localTrie = new Trie(4);
+        assertThat(localTrie.insert(record.getLowBin() + "abc", record)).isFalse();
+        assertThat(localTrie.insert("4x4", record)).isFalse();
+        assertThat(localTrie.isEmpty()).isTrue();
+        assertThat(localTrie.insert(record.getLowBin(), record)).isTrue();
+        assertThat(localTrie.get(record.getLowBin())).isSameAs(record);
+
+        // a child index outside the digits would corrupt the bitmap of the node
+        final RadixTreeNode node = new RadixTreeNode("");
+        assertThatThrownBy(() -> node.addChild('a')).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> node.addChild('/')).isInstanceOf(IllegalArgumentException.class);
+        assertThat(node.isLeaf()).isTrue();
+    }
+
+    @Test
+    public void getDoesNotAllocate() {
+        final String[] keys = new String[100000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = String.valueOf(100000L + i * 37L);
+        }
+        for (final SearchTree tree : new SearchTree[]{radixTree, trie}) {
+            for (int run = 0; run < 10; run++) {
+                for (int i = 0; i < keys.length; i++) {
+                    tree.get(keys[i]);
+                    tree.get(100000L + i * 37L, 9);
+                }
+            }
+            final long before = allocatedBytes();
+            for (final String key : keys) {
+                tree.get(key);
+            }
+            for (int i = 0; i < keys.length; i++) {
+                tree.get(100000L + i * 37L, 9);
+            }
+            final long allocated = allocatedBytes() - before;
+            System.out.println(tree.getClass().getSimpleName() + " allocated " + allocated + " bytes in " + 2 * keys.length + " lookups");
+            assertThat(allocated).isLessThan(keys.length);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,83 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.search.tree.FrozenSearchTree;
+import home.tong.card.bin.search.tree.RadixTree;
+import home.tong.card.bin.search.tree.SearchTreeLoader;
+import home.tong.card.bin.search.tree.SearchTreeSnapshot;
+import home.tong.card.bin.search.tree.Trie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SearchTreeSnapshotTests {
+    private Path binFile;
+    private Path snapshotFile;
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        final Path dir = Files.createTempDirectory("snapshot");
+        binFile = dir.resolve("bin-file.txt");
+        snapshotFile = dir.resolve("bin-file.snapshot");
+        try (InputStream inputStream = SearchTreeSnapshotTests.class.getResourceAsStream("/sample-bin-file.txt")) {
+            Files.copy(inputStream, binFile);
+        }
+    }
+
+    @Test
+    public void snapshotGivesSameAnswers() throws Exception {
+        final SearchTreeLoader loader = new SearchTreeLoader();
+        final FrozenSearchTree[] loaded = {
+                loader.loadWithSnapshot(() -> new RadixTree(4), binFile, snapshotFile),
+                loader.loadWithSnapshot(() -> new Trie(4), binFile, snapshotFile.resolveSibling("trie.snapshot"))};
+        final FrozenSearchTree[] opened = {
+                SearchTreeSnapshot.open(snapshotFile, "2022-03-13").get(),
+                SearchTreeSnapshot.open(snapshotFile.resolveSibling("trie.snapshot"), "2022-03-13").get()};
+        for (int i = 0; i < loaded.length; i++) {
+            assertThat(opened[i].getClass()).isEqualTo(loaded[i].getClass());
+            assertThat(opened[i].size()).isEqualTo(loaded[i].size());
+            assertThat(opened[i].isOffHeap()).isTrue();
+            for (long bin = 0; bin < 2000000L; ++bin) {
+                final BinDetailRecord expected = loaded[i].get(bin, 7);
+                final BinDetailRecord actual = opened[i].get(bin, 7);
+                if (expected == null) {
+                    assertThat(actual).isNull();
+                } else {
+                    assertThat(actual.getLowBin()).isEqualTo(expected.getLowBin());
+                    assertThat(actual.getRecord()).isEqualTo(expected.getRecord());
+                }
+            }
+        }
+        assertThat(opened[0].get("305997")).isSameAs(opened[0].get("305997"));
+        assertThat(loader.loadWithSnapshot(() -> {
+            throw new AssertionError("BIN file is loaded again");
+        }, binFile, snapshotFile).size()).isEqualTo(loaded[0].size());
+    }
+
+    @Test
+    public void staleOrCorruptSnapshotIsNotOpened() throws Exception {
+        final FrozenSearchTree tree = new SearchTreeLoader().loadWithSnapshot(() -> new RadixTree(4), binFile, snapshotFile);
+        assertThat(SearchTreeLoader.readHeaderDate(binFile)).isEqualTo("2022-03-13");
+        assertThat(SearchTreeSnapshot.open(snapshotFile, "2022-03-14").isPresent()).isFalse();
+        assertThat(SearchTreeSnapshot.open(snapshotFile.resolveSibling("missing"), "2022-03-13").isPresent()).isFalse();
+
+        final byte[] bytes = Files.readAllBytes(snapshotFile);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(snapshotFile, bytes);
+        assertThat(SearchTreeSnapshot.open(snapshotFile, "2022-03-13").isPresent()).isFalse();
+
+        bytes[bytes.length / 2] ^= 1;
+        bytes[4] = 99; // format version
+        Files.write(snapshotFile, bytes);
+        assertThat(SearchTreeSnapshot.open(snapshotFile, "2022-03-13").isPresent()).isFalse();
+
+        // the BIN file is loaded again and the snapshot replaced
+        assertThat(new SearchTreeLoader().loadWithSnapshot(() -> new RadixTree(4), binFile, snapshotFile).size()).isEqualTo(tree.size());
+        assertThat(SearchTreeSnapshot.open(snapshotFile, "2022-03-13").isPresent()).isTrue();
+    }
+}
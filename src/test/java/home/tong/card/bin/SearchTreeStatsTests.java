@@ -0,0 +1,128 @@
+package home.tong.card.bin;
+
+import home.tong.card.bin.file.parser.BinDetailRecord;
+import home.tong.card.bin.search.tree.ConcurrentRadixTree;
+import home.tong.card.bin.search.tree.DirectIndex;
+import home.tong.card.bin.search.tree.IntervalIndex;
+import home.tong.card.bin.search.tree.RadixTree;
+import home.tong.card.bin.search.tree.SearchTree;
+import home.tong.card.bin.search.tree.SearchTreeStats;
+import home.tong.card.bin.search.tree.Trie;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SearchTreeStatsTests {
+    private static List<BinDetailRecord> records;
+
+    @BeforeAll
+    public static void beforeAll() throws Exception {
+        records = IntervalIndexTests.readDetailRecords();
+    }
+
+    private static <T extends SearchTree> T load(final Supplier<T> factory) {
+        final T tree = factory.get();
+        for (final BinDetailRecord record : records) {
+            tree.insertBinRange(10000, record);
+        }
+        return tree;
+    }
+
+    @Test
+    public void frozenTreesHaveTheShapeOfTheirTrees() {
+        final RadixTree radixTree = load(() -> new RadixTree(4));
+        final Trie trie = load(() -> new Trie(4));
+        final SearchTreeStats radix = radixTree.stats();
+        final SearchTreeStats trieStats = trie.stats();
+        assertThat(radix.getType()).isEqualTo("RadixTree");
+        assertThat(radix.getRecordCount()).isEqualTo(records.size());
+        assertThat(trieStats.getRecordCount()).isEqualTo(records.size());
+        assertThat(trieStats.getKeyCount()).isEqualTo(radix.getKeyCount());
+        assertThat(radix.getKeyCount()).isGreaterThan(radix.getRecordCount());
+        assertThat(Arrays.stream(radix.getKeysPerRecord()).sum()).isEqualTo(records.size());
+        assertThat(Arrays.stream(radix.getNodesByDepth()).sum()).isEqualTo(radix.getNodeCount());
+        assertThat(Arrays.stream(radix.getNodesByFanOut()).sum()).isEqualTo(radix.getNodeCount());
+        assertThat(Arrays.stream(radix.getLabelLengths()).sum()).isEqualTo(radix.getNodeCount());
+        assertThat(radix.getNodeCount()).isLessThan(trieStats.getNodeCount());
+        // a trie node stands for one digit, every node but the root has a label of one digit
+        assertThat(trieStats.getLabelLengths()).containsExactly(1, trieStats.getNodeCount() - 1);
+        assertThat(radix.getEstimatedBytes()).containsKeys("nodes", "labels", "prefix filter");
+
+        for (final SearchTreeStats[] pair : new SearchTreeStats[][]{{radix, radixTree.freeze().stats()},
+                {trieStats, trie.freeze().stats()}, {radix, radixTree.freeze(true).stats()}}) {
+            final SearchTreeStats mutable = pair[0];
+            final SearchTreeStats frozen = pair[1];
+            assertThat(frozen.getNodeCount()).isEqualTo(mutable.getNodeCount());
+            assertThat(frozen.getKeyCount()).isEqualTo(mutable.getKeyCount());
+            assertThat(frozen.getRecordCount()).isEqualTo(mutable.getRecordCount());
+            assertThat(frozen.getMaxKeysPerRecord()).isEqualTo(mutable.getMaxKeysPerRecord());
+            assertThat(frozen.getKeysPerRecord()).containsExactly(mutable.getKeysPerRecord());
+            assertThat(frozen.getNodesByDepth()).containsExactly(mutable.getNodesByDepth());
+            assertThat(frozen.getNodesByFanOut()).containsExactly(mutable.getNodesByFanOut());
+            assertThat(frozen.getLabelLengths()).containsExactly(mutable.getLabelLengths());
+            assertThat(frozen.getEstimatedTotalBytes()).isLessThan(mutable.getEstimatedTotalBytes());
+        }
+    }
+
+    @Test
+    public void everyTreeCountsItsKeys() {
+        final SearchTreeStats radix = load(() -> new RadixTree(4)).stats();
+        final SearchTreeStats concurrent = load(() -> new ConcurrentRadixTree(4)).stats();
+        assertThat(concurrent.getKeyCount()).isEqualTo(radix.getKeyCount());
+        assertThat(concurrent.getRecordCount()).isEqualTo(radix.getRecordCount());
+        assertThat(concurrent.getNodeCount()).isEqualTo(radix.getNodeCount());
+
+        final DirectIndex directIndex = load(() -> new DirectIndex(4));
+        assertThat(directIndex.stats().getKeyCount()).isEqualTo(radix.getKeyCount());
+        assertThat(directIndex.stats().getEstimatedBytes()).doesNotContainKey("table");
+        directIndex.get("401318");
+        assertThat(directIndex.stats().getEstimatedBytes()).containsKey("table");
+        // the table answers misses, the index has no prefix filter
+        assertThat(directIndex.stats().getEstimatedBytes().get("prefix filter")).isZero();
+        assertThat(radix.getEstimatedBytes().get("prefix filter")).isPositive();
+
+        // a range is one entry of an interval index
+        final IntervalIndex intervalIndex = load(() -> new IntervalIndex(4));
+        final SearchTreeStats interval = intervalIndex.stats();
+        assertThat(interval.getKeyCount()).isEqualTo(records.size());
+        assertThat(interval.getRecordCount()).isEqualTo(records.size());
+        assertThat(interval.getMaxKeysPerRecord()).isEqualTo(1);
+        assertThat(interval.getNodeCount()).isZero();
+        intervalIndex.get("401318");
+        assertThat(intervalIndex.stats().getEstimatedTotalBytes()).isGreaterThan(interval.getEstimatedTotalBytes());
+
+        final SearchTreeStats empty = new RadixTree(4).stats();
+        assertThat(empty.getNodeCount()).isEqualTo(1);
+        assertThat(empty.getKeyCount()).isZero();
+        assertThat(empty.getRecordCount()).isZero();
+        // the filter is only allocated by the first range
+        assertThat(empty.getEstimatedBytes().get("prefix filter")).isZero();
+    }
+
+    @Test
+    public void childArraysHoldOnlyTheChildren() {
+        for (final SearchTree tree : new SearchTree[]{load(() -> new RadixTree(4)), load(() -> new Trie(4))}) {
+            final SearchTreeStats stats = tree.stats();
+            final int[] nodesByFanOut = stats.getNodesByFanOut();
+            long expected = 0;
+            for (int fanOut = 1; fanOut < nodesByFanOut.length; fanOut++) {
+                // array header and a compressed reference a child, aligned to 8 bytes
+                expected += nodesByFanOut[fanOut] * ((16 + 4L * fanOut + 7) / 8 * 8);
+            }
+            assertThat(stats.getEstimatedBytes().get("child arrays")).isEqualTo(expected);
+
+            // the arrays shrink as the children go
+            for (final BinDetailRecord record : records) {
+                tree.delete(record.getLowBin());
+            }
+            assertThat(tree.find(records.get(0).getLowBin()).isPresent()).isFalse();
+            assertThat(tree.stats().getKeyCount()).isLessThan(stats.getKeyCount());
+            assertThat(tree.stats().getEstimatedBytes().get("child arrays")).isLessThan(expected);
+        }
+    }
+}